@@ -2,8 +2,8 @@ package net.ripe.rpki.ripencc.services.impl;
 
 import net.ripe.ipresource.ImmutableResourceSet;
 import net.ripe.rpki.TestRpkiBootApplication;
+import net.ripe.rpki.server.api.ports.ResourceServicesClient.CertifiableMemberResources;
 import net.ripe.rpki.server.api.ports.ResourceServicesClient.MemberResourceResponse;
-import net.ripe.rpki.server.api.ports.ResourceServicesClient.MemberResources;
 import net.ripe.rpki.server.api.support.objects.CaName;
 import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.BeforeEach;
@@ -46,7 +46,7 @@ public class RestResourceServicesClientIT {
         final long membershipId = 1104L;
         final CaName ripeNccTsMemberId = CaName.fromMembershipId(membershipId);
 
-        final MemberResources allResources = subject.fetchAllResources().getAllMembersResources();
+        final CertifiableMemberResources allResources = subject.fetchAllResources().getAllMembersResources();
 
         // Now fetch for individual membershipID
         final MemberResourceResponse memberResources = subject.fetchMemberResources(membershipId);
@@ -0,0 +1,113 @@
+package net.ripe.rpki.bgpris;
+
+import net.ripe.ipresource.Asn;
+import net.ripe.ipresource.IpRange;
+import net.ripe.ipresource.Ipv4Address;
+import net.ripe.ipresource.etree.IpResourceIntervalStrategy;
+import net.ripe.ipresource.etree.NestedIntervalMap;
+import net.ripe.rpki.server.api.dto.BgpRisEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link NestedIntervalMap} of entry lists (as previously used by {@link BgpRisEntryRepositoryBean}) with
+ * {@link BgpRisIndex} for building the index from a RIS dump sized set of entries and for lookups. Run with
+ * {@code -prof gc} to compare the allocations as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class BgpRisIndexBenchmark {
+
+    @Param({"1000000"})
+    public int entryCount;
+
+    private static final int LOOKUP_COUNT = 10_000;
+
+    private List<BgpRisEntry> entries;
+    private List<IpRange> lookups;
+
+    private NestedIntervalMap<IpRange, List<BgpRisEntry>> intervalMap;
+    private BgpRisIndex index;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        entries = new ArrayList<>(entryCount);
+        for (int i = 0; i < entryCount; i++) {
+            int length = 8 + random.nextInt(17);
+            entries.add(new BgpRisEntry(new Asn(1 + random.nextInt(400_000)), randomPrefix(random, length), 1 + random.nextInt(400)));
+        }
+        lookups = new ArrayList<>(LOOKUP_COUNT);
+        for (int i = 0; i < LOOKUP_COUNT; i++) {
+            lookups.add(randomPrefix(random, 12 + random.nextInt(21)));
+        }
+        intervalMap = buildIntervalMap();
+        index = buildIndex();
+    }
+
+    private static IpRange randomPrefix(Random random, int length) {
+        long start = (random.nextLong() & 0xFFFFFFFFL) & (0xFFFFFFFFL << (32 - length));
+        return IpRange.prefix(new Ipv4Address(start & 0xFFFFFFFFL), length);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public NestedIntervalMap<IpRange, List<BgpRisEntry>> buildIntervalMap() {
+        NestedIntervalMap<IpRange, List<BgpRisEntry>> result = new NestedIntervalMap<>(IpResourceIntervalStrategy.getInstance());
+        for (BgpRisEntry entry : entries) {
+            List<BgpRisEntry> exact = result.findExact(entry.getPrefix());
+            if (exact == null) {
+                exact = new ArrayList<>();
+                result.put(entry.getPrefix(), exact);
+            }
+            if (!exact.contains(entry)) {
+                exact.add(entry);
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public BgpRisIndex buildIndex() {
+        BgpRisIndex.Builder builder = BgpRisIndex.builder();
+        entries.forEach(builder::add);
+        return builder.build();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void lookupIntervalMap(Blackhole blackhole) {
+        for (IpRange prefix : lookups) {
+            blackhole.consume(intervalMap.findExactAndAllMoreSpecific(prefix));
+            blackhole.consume(intervalMap.findFirstLessSpecific(prefix));
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void lookupIndex(Blackhole blackhole) {
+        for (IpRange prefix : lookups) {
+            blackhole.consume(index.findExactAndAllMoreSpecific(prefix));
+            blackhole.consume(index.findFirstLessSpecific(prefix));
+        }
+    }
+}
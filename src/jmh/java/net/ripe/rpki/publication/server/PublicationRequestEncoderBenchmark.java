@@ -0,0 +1,86 @@
+package net.ripe.rpki.publication.server;
+
+import com.jamesmurty.utils.XMLBuilder;
+import net.ripe.rpki.publication.api.PublicationMessage;
+import net.ripe.rpki.publication.api.PublicationMessage.PublishRequest;
+import net.ripe.rpki.publication.api.PublicationMessage.WithdrawRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the DOM based request encoding (as previously used by {@link ExternalPublishingServer}) with the streaming
+ * {@link PublicationRequestEncoder}. Run with {@code -prof gc} to compare the allocation rates as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PublicationRequestEncoderBenchmark {
+
+    @Param({"100000"})
+    public int objectCount;
+
+    @Param({"2048"})
+    public int objectSize;
+
+    private List<PublicationMessage> messages;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        messages = new ArrayList<>(objectCount);
+        for (int i = 0; i < objectCount; i++) {
+            URI uri = URI.create("rsync://rpki.example.org/repository/" + i + "/object-" + i + ".roa");
+            if (i % 10 == 0) {
+                messages.add(new WithdrawRequest(uri, "%064x".formatted(i)));
+            } else {
+                byte[] content = new byte[objectSize];
+                random.nextBytes(content);
+                messages.add(new PublishRequest(uri, content, i % 3 == 0 ? Optional.of("%064x".formatted(i)) : Optional.empty()));
+            }
+        }
+    }
+
+    @Benchmark
+    public void xmlBuilder() throws Exception {
+        final XMLBuilder xml = XMLBuilder
+            .create("msg", PublicationRequestEncoder.PUBLICATION_NAMESPACE)
+            .a("version", "3")
+            .a("type", "query");
+        for (PublicationMessage message : messages) {
+            if (message instanceof PublishRequest publish) {
+                final XMLBuilder elem = xml.e("publish").a("uri", publish.getUri().toString());
+                publish.hashToReplace.ifPresent(s -> elem.a("hash", s));
+                elem.t(publish.getBase64Content());
+            } else if (message instanceof WithdrawRequest withdraw) {
+                xml.e("withdraw").a("uri", withdraw.getUri().toString()).a("hash", withdraw.hash);
+            }
+        }
+        OutputStream.nullOutputStream().write(xml.asString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public void streaming() throws Exception {
+        PublicationRequestEncoder.write(messages, OutputStream.nullOutputStream());
+    }
+}
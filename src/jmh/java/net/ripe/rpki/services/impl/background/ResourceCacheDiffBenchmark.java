@@ -0,0 +1,105 @@
+package net.ripe.rpki.services.impl.background;
+
+import net.ripe.ipresource.Asn;
+import net.ripe.ipresource.ImmutableResourceSet;
+import net.ripe.ipresource.IpRange;
+import net.ripe.ipresource.IpResource;
+import net.ripe.ipresource.Ipv4Address;
+import net.ripe.rpki.server.api.support.objects.CaName;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares looking up every range in the other set (as previously done by {@link ResourceCacheService}) with the
+ * sorted walk of {@link ResourceCacheService#resourcesSetDiff} for a registry sized set of member CAs, where a small
+ * fraction of the members has changed resources.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ResourceCacheDiffBenchmark {
+
+    @Param({"40000"})
+    public int memberCount;
+
+    @Param({"25"})
+    public int rangesPerMember;
+
+    private Map<CaName, ImmutableResourceSet> registryResources;
+    private Map<CaName, ImmutableResourceSet> localResources;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        registryResources = new HashMap<>(memberCount);
+        localResources = new HashMap<>(memberCount);
+        for (int i = 0; i < memberCount; i++) {
+            ImmutableResourceSet.Builder builder = new ImmutableResourceSet.Builder();
+            for (int j = 0; j < rangesPerMember; j++) {
+                builder.add(random.nextInt(4) == 0 ? new Asn(1 + random.nextInt(400_000)) : randomPrefix(random));
+            }
+            ImmutableResourceSet resources = builder.build();
+            CaName caName = CaName.fromMembershipId(i);
+            localResources.put(caName, resources);
+            // About one in a hundred members has an additional or a removed resource
+            switch (random.nextInt(200)) {
+                case 0 -> registryResources.put(caName, resources.union(ImmutableResourceSet.of(randomPrefix(random))));
+                case 1 -> registryResources.put(caName, resources.difference(ImmutableResourceSet.of(resources.iterator().next())));
+                default -> registryResources.put(caName, resources);
+            }
+        }
+    }
+
+    private static IpRange randomPrefix(Random random) {
+        int length = 16 + random.nextInt(9);
+        long start = (random.nextLong() & 0xFFFFFFFFL) & (0xFFFFFFFFL << (32 - length));
+        return IpRange.prefix(new Ipv4Address(start & 0xFFFFFFFFL), length);
+    }
+
+    @Benchmark
+    public int containsDiff() {
+        int mutations = 0;
+        for (Map.Entry<CaName, ImmutableResourceSet> entry : registryResources.entrySet()) {
+            ImmutableResourceSet registry = entry.getValue();
+            ImmutableResourceSet local = localResources.get(entry.getKey());
+            for (IpResource r : local) {
+                if (!registry.contains(r)) {
+                    mutations++;
+                }
+            }
+            for (IpResource r : registry) {
+                if (!local.contains(r)) {
+                    mutations++;
+                }
+            }
+        }
+        return mutations;
+    }
+
+    @Benchmark
+    public int sortedDiff() {
+        int mutations = 0;
+        for (Map.Entry<CaName, ImmutableResourceSet> entry : registryResources.entrySet()) {
+            ResourceCacheService.SetDiff diff = ResourceCacheService.resourcesSetDiff(entry.getValue(), localResources.get(entry.getKey()));
+            mutations += diff.added() + diff.deleted();
+        }
+        return mutations;
+    }
+}
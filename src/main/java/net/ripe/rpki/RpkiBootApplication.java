@@ -1,5 +1,6 @@
 package net.ripe.rpki;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import net.ripe.rpki.domain.CertificationProviderConfigurationData;
 import net.ripe.rpki.domain.HardwareKeyPairFactory;
@@ -35,8 +36,10 @@ public class RpkiBootApplication {
     }
 
     @Bean
-    public SingleUseKeyPairFactory singleUseKeyPairFactory() {
-        return new SingleUseKeyPairFactory();
+    public SingleUseKeyPairFactory singleUseKeyPairFactory(@Value("${keypair.single-use.pool.size:256}") int poolSize,
+                                                           @Value("${keypair.single-use.pool.threads:2}") int poolThreads,
+                                                           MeterRegistry meterRegistry) {
+        return new SingleUseKeyPairFactory(poolSize, poolThreads, meterRegistry);
     }
 
 
@@ -6,9 +6,6 @@ import net.ripe.ipresource.IpAddress;
 import net.ripe.ipresource.IpRange;
 import net.ripe.ipresource.IpResource;
 import net.ripe.ipresource.ImmutableResourceSet;
-import net.ripe.ipresource.etree.IntervalMap;
-import net.ripe.ipresource.etree.IpResourceIntervalStrategy;
-import net.ripe.ipresource.etree.NestedIntervalMap;
 import net.ripe.rpki.server.api.dto.BgpRisEntry;
 import net.ripe.rpki.server.api.services.read.BgpRisEntryViewService;
 import org.springframework.stereotype.Component;
@@ -20,7 +17,6 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.concurrent.atomic.AtomicReference;
 
 @Component
@@ -31,7 +27,7 @@ public class BgpRisEntryRepositoryBean implements BgpRisEntryViewService {
     /*
      * All BgpRisEntries that have enough visibility.
      */
-    private final AtomicReference<IntervalMap<IpRange, ArrayList<BgpRisEntry>>> entries = new AtomicReference<>(emptyEntries());
+    private final AtomicReference<BgpRisIndex> entries = new AtomicReference<>(BgpRisIndex.empty());
 
     @Getter
     @Setter
@@ -44,13 +40,11 @@ public class BgpRisEntryRepositoryBean implements BgpRisEntryViewService {
 
     @Override
     public Collection<BgpRisEntry> findMostSpecificOverlapping(ImmutableResourceSet resources) {
-        IntervalMap<IpRange, ArrayList<BgpRisEntry>> current = this.entries.get();
+        BgpRisIndex current = this.entries.get();
 
         Collection<BgpRisEntry> result = new HashSet<>();
         for (IpRange prefix : getPrefixes(resources)) {
-            final List<BgpRisEntry> exactAndMoreSpecific = current.findExactAndAllMoreSpecific(prefix)
-                    .stream()
-                    .flatMap(Collection::stream).toList();
+            final List<BgpRisEntry> exactAndMoreSpecific = current.findExactAndAllMoreSpecific(prefix);
             result.addAll(exactAndMoreSpecific);
 
             final ImmutableResourceSet remaining = findResourcesNotCovered(prefix, exactAndMoreSpecific);
@@ -61,14 +55,12 @@ public class BgpRisEntryRepositoryBean implements BgpRisEntryViewService {
 
     @Override
     public Map<Boolean, Collection<BgpRisEntry>> findMostSpecificContainedAndNotContained(ImmutableResourceSet resources) {
-        IntervalMap<IpRange, ArrayList<BgpRisEntry>> current = this.entries.get();
+        BgpRisIndex current = this.entries.get();
 
         Collection<BgpRisEntry> containedEntries = new HashSet<>();
         Collection<BgpRisEntry> notContainedEntries = new HashSet<>();
         for (IpRange prefix : getPrefixes(resources)) {
-            final List<BgpRisEntry> exactAndMoreSpecific = current.findExactAndAllMoreSpecific(prefix)
-                    .stream()
-                    .flatMap(Collection::stream).toList();
+            final List<BgpRisEntry> exactAndMoreSpecific = current.findExactAndAllMoreSpecific(prefix);
             containedEntries.addAll(exactAndMoreSpecific);
             final ImmutableResourceSet remaining = findResourcesNotCovered(prefix, exactAndMoreSpecific);
             addLessSpecificAnnouncements(current, notContainedEntries, remaining);
@@ -79,11 +71,10 @@ public class BgpRisEntryRepositoryBean implements BgpRisEntryViewService {
         return result;
     }
 
-    private void addLessSpecificAnnouncements(IntervalMap<IpRange, ArrayList<BgpRisEntry>> current, Collection<BgpRisEntry> result, ImmutableResourceSet remaining) {
+    private void addLessSpecificAnnouncements(BgpRisIndex current, Collection<BgpRisEntry> result, ImmutableResourceSet remaining) {
         if (!remaining.isEmpty()) {
             getPrefixes(remaining).stream()
                     .map(current::findFirstLessSpecific)
-                    .filter(Objects::nonNull)
                     .forEach(result::addAll);
         }
     }
@@ -97,21 +88,24 @@ public class BgpRisEntryRepositoryBean implements BgpRisEntryViewService {
     }
 
     @Override
-    public void resetEntries(Collection<BgpRisEntry> entries) {
-        IntervalMap<IpRange, ArrayList<BgpRisEntry>> copy = emptyEntries();
-        for (BgpRisEntry entry : entries) {
+    public EntriesUpdate startUpdate() {
+        return new IndexUpdate();
+    }
+
+    private class IndexUpdate implements EntriesUpdate {
+        private final BgpRisIndex.Builder builder = BgpRisIndex.builder();
+
+        @Override
+        public void accept(BgpRisEntry entry) {
             if (keepEntry(entry)) {
-                ArrayList<BgpRisEntry> exact = copy.findExact(entry.getPrefix());
-                if (exact == null) {
-                    exact = new ArrayList<>();
-                    copy.put(entry.getPrefix(), exact);
-                }
-                if (!exact.contains(entry)) {
-                    exact.add(entry);
-                }
+                builder.add(entry);
             }
         }
-        this.entries.set(copy);
+
+        @Override
+        public void commit() {
+            entries.set(builder.build());
+        }
     }
 
     private boolean keepEntry(BgpRisEntry entry) {
@@ -145,8 +139,4 @@ public class BgpRisEntryRepositoryBean implements BgpRisEntryViewService {
         }
         return result;
     }
-
-    private NestedIntervalMap<IpRange, ArrayList<BgpRisEntry>> emptyEntries() {
-        return new NestedIntervalMap<>(IpResourceIntervalStrategy.getInstance());
-    }
 }
@@ -0,0 +1,390 @@
+package net.ripe.rpki.bgpris;
+
+import net.ripe.ipresource.Asn;
+import net.ripe.ipresource.IpAddress;
+import net.ripe.ipresource.IpRange;
+import net.ripe.ipresource.IpResourceType;
+import net.ripe.ipresource.Ipv4Address;
+import net.ripe.ipresource.Ipv6Address;
+import net.ripe.rpki.server.api.dto.BgpRisEntry;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable index of BGP RIS entries by prefix, stored in primitive arrays.
+ * <p>
+ * Every address family has a table of the distinct prefixes sorted by start address and prefix length, so the
+ * prefixes more specific than a query prefix are a contiguous range and the less specific prefixes are found by
+ * following the (precomputed) index of the closest containing prefix. Origin ASN and visibility of the entries of a
+ * prefix are stored in parallel arrays and only turned into {@link BgpRisEntry} objects for query results.
+ */
+public final class BgpRisIndex {
+
+    private static final BgpRisIndex EMPTY = new Builder().build();
+
+    private final PrefixTable ipv4;
+    private final PrefixTable ipv6;
+
+    private BgpRisIndex(PrefixTable ipv4, PrefixTable ipv6) {
+        this.ipv4 = ipv4;
+        this.ipv6 = ipv6;
+    }
+
+    public static BgpRisIndex empty() {
+        return EMPTY;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public boolean isEmpty() {
+        return ipv4.size() == 0 && ipv6.size() == 0;
+    }
+
+    /**
+     * @return the number of (distinct) entries in this index
+     */
+    public int size() {
+        return ipv4.entryCount() + ipv6.entryCount();
+    }
+
+    /**
+     * @return the entries with a prefix equal to or more specific than <code>prefix</code>
+     */
+    public List<BgpRisEntry> findExactAndAllMoreSpecific(IpRange prefix) {
+        List<BgpRisEntry> result = new ArrayList<>();
+        tableFor(prefix).findExactAndAllMoreSpecific(prefix, result);
+        return result;
+    }
+
+    /**
+     * @return the entries of the closest prefix that is strictly less specific than <code>prefix</code>, or an empty
+     * list when there is no such prefix
+     */
+    public List<BgpRisEntry> findFirstLessSpecific(IpRange prefix) {
+        List<BgpRisEntry> result = new ArrayList<>();
+        tableFor(prefix).findFirstLessSpecific(prefix, result);
+        return result;
+    }
+
+    private PrefixTable tableFor(IpRange prefix) {
+        return switch (prefix.getType()) {
+            case IPv4 -> ipv4;
+            case IPv6 -> ipv6;
+            default -> throw new IllegalArgumentException("not an IP prefix: " + prefix);
+        };
+    }
+
+    /**
+     * Sorted table of distinct prefixes of a single address family. Addresses are stored as two unsigned 64-bit
+     * halves, IPv4 addresses use the lower 32 bits of <code>low</code> only.
+     */
+    private static final class PrefixTable {
+        private final IpResourceType type;
+        private final int addressBits;
+
+        // Per distinct prefix, sorted by (start address, prefix length)
+        private final long[] high;
+        private final long[] low;
+        // Prefix length as unsigned byte
+        private final byte[] length;
+        // Index of the closest prefix containing this prefix, or -1
+        private final int[] parent;
+        // Entries of prefix i are at [firstEntry[i], firstEntry[i + 1])
+        private final int[] firstEntry;
+
+        // Per entry
+        private final int[] origin;
+        private final int[] visibility;
+
+        private PrefixTable(IpResourceType type, long[] high, long[] low, byte[] length, int[] firstEntry, int[] origin, int[] visibility) {
+            this.type = type;
+            this.addressBits = type == IpResourceType.IPv4 ? 32 : 128;
+            this.high = high;
+            this.low = low;
+            this.length = length;
+            this.firstEntry = firstEntry;
+            this.origin = origin;
+            this.visibility = visibility;
+            this.parent = computeParents();
+        }
+
+        int size() {
+            return length.length;
+        }
+
+        int entryCount() {
+            return origin.length;
+        }
+
+        private int[] computeParents() {
+            int[] result = new int[size()];
+            int[] stack = new int[129];
+            int depth = 0;
+            for (int i = 0; i < size(); i++) {
+                while (depth > 0 && !contains(stack[depth - 1], high[i], low[i], prefixLength(i))) {
+                    depth--;
+                }
+                result[i] = depth > 0 ? stack[depth - 1] : -1;
+                stack[depth++] = i;
+            }
+            return result;
+        }
+
+        void findExactAndAllMoreSpecific(IpRange prefix, List<BgpRisEntry> result) {
+            long startHigh = high(prefix.getStart());
+            long startLow = low(prefix.getStart());
+            long endHigh = high(prefix.getEnd());
+            long endLow = low(prefix.getEnd());
+            int prefixLength = prefix.getPrefixLength();
+            for (int i = lowerBound(startHigh, startLow, prefixLength); i < size() && compare(high[i], low[i], endHigh, endLow) <= 0; i++) {
+                addEntries(i, result);
+            }
+        }
+
+        void findFirstLessSpecific(IpRange prefix, List<BgpRisEntry> result) {
+            long startHigh = high(prefix.getStart());
+            long startLow = low(prefix.getStart());
+            int prefixLength = prefix.getPrefixLength();
+            // The closest containing prefix is the last prefix sorted before the query prefix, or one of its parents
+            int i = lowerBound(startHigh, startLow, prefixLength) - 1;
+            while (i >= 0 && !(prefixLength(i) < prefixLength && contains(i, startHigh, startLow, prefixLength))) {
+                i = parent[i];
+            }
+            if (i >= 0) {
+                addEntries(i, result);
+            }
+        }
+
+        private void addEntries(int prefixIndex, List<BgpRisEntry> result) {
+            IpRange prefix = toPrefix(prefixIndex);
+            for (int e = firstEntry[prefixIndex]; e < firstEntry[prefixIndex + 1]; e++) {
+                result.add(new BgpRisEntry(new Asn(Integer.toUnsignedLong(origin[e])), prefix, visibility[e]));
+            }
+        }
+
+        private IpRange toPrefix(int prefixIndex) {
+            IpAddress start = type == IpResourceType.IPv4
+                ? new Ipv4Address(low[prefixIndex])
+                : new Ipv6Address(toBigInteger(high[prefixIndex], low[prefixIndex]));
+            return IpRange.prefix(start, prefixLength(prefixIndex));
+        }
+
+        private int prefixLength(int i) {
+            return Byte.toUnsignedInt(length[i]);
+        }
+
+        /**
+         * @return true when prefix <code>i</code> contains (or is equal to) the given prefix
+         */
+        private boolean contains(int i, long otherHigh, long otherLow, int otherLength) {
+            int prefixLength = prefixLength(i);
+            if (prefixLength > otherLength) {
+                return false;
+            }
+            int bits = prefixLength + (128 - addressBits);
+            return (otherHigh & highMask(bits)) == high[i] && (otherLow & lowMask(bits)) == low[i];
+        }
+
+        /**
+         * @return the index of the first prefix that is sorted at or after the given prefix
+         */
+        private int lowerBound(long keyHigh, long keyLow, int keyLength) {
+            int lo = 0;
+            int hi = size();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                int c = compare(high[mid], low[mid], keyHigh, keyLow);
+                if (c < 0 || (c == 0 && prefixLength(mid) < keyLength)) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+
+    private static long highMask(int bits) {
+        if (bits <= 0) {
+            return 0;
+        }
+        return bits >= 64 ? -1L : -1L << (64 - bits);
+    }
+
+    private static long lowMask(int bits) {
+        if (bits <= 64) {
+            return 0;
+        }
+        return bits >= 128 ? -1L : -1L << (128 - bits);
+    }
+
+    private static int compare(long high1, long low1, long high2, long low2) {
+        int c = Long.compareUnsigned(high1, high2);
+        return c != 0 ? c : Long.compareUnsigned(low1, low2);
+    }
+
+    private static long high(IpAddress address) {
+        return address.getValue().shiftRight(64).longValue();
+    }
+
+    private static long low(IpAddress address) {
+        return address.getValue().longValue();
+    }
+
+    private static BigInteger toBigInteger(long high, long low) {
+        byte[] bytes = new byte[17];
+        for (int i = 0; i < 8; i++) {
+            bytes[1 + i] = (byte) (high >>> (56 - 8 * i));
+            bytes[9 + i] = (byte) (low >>> (56 - 8 * i));
+        }
+        return new BigInteger(bytes);
+    }
+
+    /**
+     * Collects entries in primitive arrays. Duplicate entries are only added to the index once.
+     */
+    public static final class Builder {
+        private final FamilyBuilder ipv4 = new FamilyBuilder(IpResourceType.IPv4);
+        private final FamilyBuilder ipv6 = new FamilyBuilder(IpResourceType.IPv6);
+
+        private Builder() {
+        }
+
+        public Builder add(BgpRisEntry entry) {
+            IpRange prefix = entry.getPrefix();
+            FamilyBuilder family = switch (prefix.getType()) {
+                case IPv4 -> ipv4;
+                case IPv6 -> ipv6;
+                default -> throw new IllegalArgumentException("not an IP prefix: " + prefix);
+            };
+            family.add(high(prefix.getStart()), low(prefix.getStart()), prefix.getPrefixLength(), entry.getOrigin().longValue(), entry.getVisibility());
+            return this;
+        }
+
+        public BgpRisIndex build() {
+            return new BgpRisIndex(ipv4.build(), ipv6.build());
+        }
+    }
+
+    private static final class FamilyBuilder {
+        private final IpResourceType type;
+        private int size = 0;
+        private long[] high = new long[16];
+        private long[] low = new long[16];
+        private byte[] length = new byte[16];
+        private int[] origin = new int[16];
+        private int[] visibility = new int[16];
+
+        private FamilyBuilder(IpResourceType type) {
+            this.type = type;
+        }
+
+        void add(long startHigh, long startLow, int prefixLength, long originAsn, int entryVisibility) {
+            if (size == length.length) {
+                int capacity = size * 2;
+                high = Arrays.copyOf(high, capacity);
+                low = Arrays.copyOf(low, capacity);
+                length = Arrays.copyOf(length, capacity);
+                origin = Arrays.copyOf(origin, capacity);
+                visibility = Arrays.copyOf(visibility, capacity);
+            }
+            high[size] = startHigh;
+            low[size] = startLow;
+            length[size] = (byte) prefixLength;
+            origin[size] = (int) originAsn;
+            visibility[size] = entryVisibility;
+            size++;
+        }
+
+        PrefixTable build() {
+            int[] order = sortedOrder();
+
+            long[] prefixHigh = new long[size];
+            long[] prefixLow = new long[size];
+            byte[] prefixLength = new byte[size];
+            int[] firstEntry = new int[size + 1];
+            int[] entryOrigin = new int[size];
+            int[] entryVisibility = new int[size];
+            int prefixes = 0;
+            int entries = 0;
+            int previous = -1;
+            for (int i : order) {
+                boolean samePrefix = previous >= 0 && high[i] == high[previous] && low[i] == low[previous] && length[i] == length[previous];
+                if (samePrefix && origin[i] == origin[previous] && visibility[i] == visibility[previous]) {
+                    continue;
+                }
+                if (!samePrefix) {
+                    prefixHigh[prefixes] = high[i];
+                    prefixLow[prefixes] = low[i];
+                    prefixLength[prefixes] = length[i];
+                    firstEntry[prefixes++] = entries;
+                }
+                entryOrigin[entries] = origin[i];
+                entryVisibility[entries] = visibility[i];
+                entries++;
+                previous = i;
+            }
+            firstEntry[prefixes] = entries;
+
+            return new PrefixTable(
+                type,
+                Arrays.copyOf(prefixHigh, prefixes),
+                Arrays.copyOf(prefixLow, prefixes),
+                Arrays.copyOf(prefixLength, prefixes),
+                Arrays.copyOf(firstEntry, prefixes + 1),
+                Arrays.copyOf(entryOrigin, entries),
+                Arrays.copyOf(entryVisibility, entries)
+            );
+        }
+
+        /**
+         * @return the indexes of the entries sorted by (start address, prefix length, origin, visibility), using a
+         * bottom-up merge sort on primitive arrays so no object is allocated per entry
+         */
+        private int[] sortedOrder() {
+            int[] order = new int[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            int[] source = order;
+            int[] target = new int[size];
+            for (int width = 1; width < size; width *= 2) {
+                for (int lo = 0; lo < size; lo += 2 * width) {
+                    int mid = Math.min(lo + width, size);
+                    int hi = Math.min(lo + 2 * width, size);
+                    int left = lo;
+                    int right = mid;
+                    int k = lo;
+                    while (left < mid && right < hi) {
+                        target[k++] = compareEntries(source[left], source[right]) <= 0 ? source[left++] : source[right++];
+                    }
+                    System.arraycopy(source, left, target, k, mid - left);
+                    System.arraycopy(source, right, target, k + mid - left, hi - right);
+                }
+                int[] sorted = target;
+                target = source;
+                source = sorted;
+            }
+            return source;
+        }
+
+        private int compareEntries(int a, int b) {
+            int c = compare(high[a], low[a], high[b], low[b]);
+            if (c == 0) {
+                c = Integer.compare(Byte.toUnsignedInt(length[a]), Byte.toUnsignedInt(length[b]));
+            }
+            if (c == 0) {
+                c = Integer.compareUnsigned(origin[a], origin[b]);
+            }
+            if (c == 0) {
+                c = Integer.compare(visibility[a], visibility[b]);
+            }
+            return c;
+        }
+    }
+}
@@ -1,16 +1,18 @@
 package net.ripe.rpki.bgpris.riswhois;
 
-import org.apache.commons.io.IOUtils;
+import net.ripe.rpki.server.api.dto.BgpRisEntry;
 import org.apache.commons.lang3.tuple.Pair;
 import org.joda.time.DateTimeConstants;
 import org.springframework.stereotype.Component;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.URI;
-import java.net.URL;
 import java.net.URLConnection;
 import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
 import java.util.zip.GZIPInputStream;
 
 @Component
@@ -18,10 +20,15 @@ public class RisWhoisFetcher {
 
     private static final int HTTP_TIMEOUT = 30 * DateTimeConstants.MILLIS_PER_SECOND;
 
-    public Pair<String, Long> fetch(String url) throws IOException {
+    /**
+     * Fetches and parses the RIS whois dump at <code>url</code> while it is being downloaded.
+     *
+     * @return the number of entries passed to <code>consumer</code> and the last modified time of the dump
+     */
+    public Pair<Integer, Long> fetch(String url, Consumer<BgpRisEntry> consumer) throws IOException {
         var content = getContent(url);
-        try (InputStream unzipped = new GZIPInputStream(content.getLeft())) {
-            return Pair.of(IOUtils.toString(unzipped, StandardCharsets.UTF_8), content.getRight());
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(content.getLeft()), StandardCharsets.UTF_8))) {
+            return Pair.of(RisWhoisParser.parse(reader, consumer), content.getRight());
         }
     }
 
@@ -5,35 +5,48 @@ import net.ripe.ipresource.Asn;
 import net.ripe.ipresource.IpRange;
 import net.ripe.rpki.server.api.dto.BgpRisEntry;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.function.Consumer;
 
 @Slf4j
 public final class RisWhoisParser {
-    /*
-     * This regular expression doesn't match prefixes originating from AS SETS. The RPKI doesn't
-     * support these anyway. Maybe in the future we should warn ROA administrators when they have
-     * resources using AS SETS...
-     */
-    private static final Pattern ENTRY_PATTERN = Pattern.compile("^([0-9]+)\t([0-9a-fA-F.:/]+)\t([0-9]+)$", Pattern.MULTILINE);
 
     private RisWhoisParser() {
     }
 
     public static List<BgpRisEntry> parse(String risWhoisDump) {
         ArrayList<BgpRisEntry> result = new ArrayList<>();
+        try {
+            parse(new BufferedReader(new StringReader(risWhoisDump)), result::add);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return result;
+    }
 
-        Matcher matcher = ENTRY_PATTERN.matcher(risWhoisDump);
+    /**
+     * Parses the dump line by line and passes the entries to <code>consumer</code>, so the dump never needs to be kept
+     * in memory as a whole.
+     *
+     * @return the number of entries passed to the consumer
+     */
+    public static int parse(BufferedReader risWhoisDump, Consumer<BgpRisEntry> consumer) throws IOException {
+        int entries = 0;
         int rejectedLines = 0;
-        while (matcher.find()) {
+        String line;
+        while ((line = risWhoisDump.readLine()) != null) {
             try {
-                Asn origin = Asn.parse(matcher.group(1));
-                IpRange prefix = IpRange.parse(matcher.group(2));
-                int visibility = Integer.parseInt(matcher.group(3));
-                result.add(new BgpRisEntry(origin, prefix, visibility));
-            } catch(IllegalArgumentException e) {
+                BgpRisEntry entry = parseLine(line);
+                if (entry != null) {
+                    consumer.accept(entry);
+                    entries++;
+                }
+            } catch (IllegalArgumentException e) {
                 log.error("Unable to parse BGP dump entry", e);
                 rejectedLines++;
             } catch (ArrayIndexOutOfBoundsException e) {
@@ -45,6 +58,55 @@ public final class RisWhoisParser {
             log.error("RisWhoisParser rejected {} lines (incomplete/invalid)", rejectedLines);
         }
 
-        return result;
+        return entries;
+    }
+
+    /**
+     * Parses a line of the form <code>origin\tprefix\tvisibility</code>. Lines that do not have this form (comments,
+     * but also prefixes originating from AS SETS, which the RPKI does not support anyway) are skipped.
+     *
+     * @return the entry, or null when the line is skipped
+     */
+    private static BgpRisEntry parseLine(String line) {
+        int firstTab = line.indexOf('\t');
+        int secondTab = firstTab < 0 ? -1 : line.indexOf('\t', firstTab + 1);
+        if (secondTab < 0 || line.indexOf('\t', secondTab + 1) >= 0) {
+            return null;
+        }
+        if (!isDigits(line, 0, firstTab) || !isPrefix(line, firstTab + 1, secondTab) || !isDigits(line, secondTab + 1, line.length())) {
+            return null;
+        }
+
+        Asn origin = new Asn(Long.parseLong(line, 0, firstTab, 10));
+        IpRange prefix = IpRange.parse(line.substring(firstTab + 1, secondTab));
+        int visibility = Integer.parseInt(line, secondTab + 1, line.length(), 10);
+        return new BgpRisEntry(origin, prefix, visibility);
+    }
+
+    private static boolean isDigits(String s, int start, int end) {
+        if (start >= end) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isPrefix(String s, int start, int end) {
+        if (start >= end) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            boolean valid = (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F') || c == '.' || c == ':' || c == '/';
+            if (!valid) {
+                return false;
+            }
+        }
+        return true;
     }
 }
@@ -3,6 +3,7 @@ package net.ripe.rpki.config;
 import net.ripe.rpki.hsm.Keys;
 import net.ripe.rpki.hsm.api.KeyStoreParameters;
 import net.ripe.rpki.ripencc.ui.daemon.health.checks.CryptoChecker;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Lazy;
@@ -23,8 +24,9 @@ public class HsmConfig {
      */
     @Lazy(false)
     @Bean
-    public Keys keys(Optional<KeyStoreParameters> keyStoreParameters) {
-        final Keys keys = Keys.initialize(keyStoreParameters);
+    public Keys keys(Optional<KeyStoreParameters> keyStoreParameters,
+                     @Value("${keypair.decoded.cache.size:10000}") long decodedKeyPairCacheSize) {
+        final Keys keys = Keys.initialize(keyStoreParameters, decodedKeyPairCacheSize);
         cryptoChecker.checkCryptoWorks();
         return keys;
     }
@@ -8,6 +8,7 @@ import jakarta.persistence.TypedQuery;
 import net.ripe.rpki.commons.crypto.util.KeyPairUtil;
 import net.ripe.rpki.commons.provisioning.identity.PublisherRequest;
 import net.ripe.rpki.commons.provisioning.identity.RepositoryResponse;
+import net.ripe.rpki.commons.util.VersionedId;
 import net.ripe.rpki.domain.*;
 import net.ripe.rpki.domain.audit.CommandAuditService;
 import net.ripe.rpki.ripencc.provisioning.ProvisioningAuditLogService;
@@ -84,6 +85,54 @@ public class CertificateAuthorityViewServiceImpl implements CertificateAuthority
         return List.of();
     }
 
+    @Override
+    public List<CertificateAuthorityReference> findAllChildReferencesForCa(X500Principal parentCaName) {
+        return findChildReferences(parentCaName, "");
+    }
+
+    /**
+     * Both the cache and the certificate store the canonical text form of the resource set, so equal resources have
+     * equal text. A hosted child without a cache entry has no certifiable resources, so its current certificate
+     * differs unless there is none.
+     */
+    @Override
+    public List<CertificateAuthorityReference> findChildReferencesWithResourcesDifferentFromCache(X500Principal parentCaName) {
+        return findChildReferences(parentCaName, """
+               AND (child.type <> 'HOSTED'
+                    OR EXISTS (SELECT 1 FROM certificateauthority grandchild WHERE grandchild.parent_id = child.id)
+                    OR EXISTS (
+                        SELECT 1
+                          FROM resourcecertificate rc
+                         WHERE rc.requesting_ca_id = child.id AND rc.type = 'OUTGOING' AND rc.status = 'CURRENT'
+                           AND rc.resources IS DISTINCT FROM (SELECT cached.resources FROM resource_cache cached WHERE cached.name = child.name))
+                    OR (NOT EXISTS (
+                            SELECT 1
+                              FROM resourcecertificate rc
+                             WHERE rc.requesting_ca_id = child.id AND rc.type = 'OUTGOING' AND rc.status = 'CURRENT')
+                        AND EXISTS (SELECT 1 FROM resource_cache cached WHERE cached.name = child.name AND cached.resources <> '')))
+            """);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<CertificateAuthorityReference> findChildReferences(X500Principal parentCaName, String condition) {
+        Stream<Object[]> rows = entityManager.createNativeQuery("""
+                SELECT child.id, child.version, child.name, child.type
+                  FROM certificateauthority child
+                  JOIN certificateauthority parent ON parent.id = child.parent_id
+                 WHERE parent.name = :parentName
+                """ + condition + """
+                 ORDER BY child.id
+                """)
+            .setParameter("parentName", parentCaName.getName())
+            .getResultStream();
+        return rows.map(row -> new CertificateAuthorityReference(
+                new VersionedId(((Number) row[0]).longValue(), ((Number) row[1]).longValue()),
+                new X500Principal((String) row[2]),
+                CertificateAuthorityType.valueOf((String) row[3])
+            ))
+            .toList();
+    }
+
     @Override
     public Optional<CertificateAuthorityData> findSmallestIntermediateCa(X500Principal productionCaName) {
         return certificateAuthorityRepository.findSmallestIntermediateCA(productionCaName).map(CertificateAuthority::toData);
@@ -17,9 +17,11 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.Callable;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
 import static net.ripe.rpki.server.api.security.RunAsUser.ADMIN;
@@ -37,6 +39,9 @@ public abstract class BackgroundServiceWithAdminPrivilegesOnActiveNode implement
     /** Internal lock to protect <code>state</code> and <code>waitingForLockSince</code>. */
     private final Lock lock = new ReentrantLock(true);
 
+    /** Signalled when the state changes to <code>IDLE</code>. */
+    private final Condition idle = lock.newCondition();
+
     /**
      * The current state of this service. The state always transitions from <code>IDLE -> WAITING -> RUNNING</code> and
      * then back to <code>IDLE</code>.
@@ -175,6 +180,26 @@ public abstract class BackgroundServiceWithAdminPrivilegesOnActiveNode implement
         try {
             this.state = state;
             this.stateChangedAt = Instant.now();
+            if (state == State.IDLE) {
+                idle.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean awaitIdle(Duration timeout) throws InterruptedException {
+        lock.lock();
+        try {
+            long remainingNanos = timeout.toNanos();
+            while (state != State.IDLE) {
+                if (remainingNanos <= 0) {
+                    return false;
+                }
+                remainingNanos = idle.awaitNanos(remainingNanos);
+            }
+            return true;
         } finally {
             lock.unlock();
         }
@@ -184,6 +209,14 @@ public abstract class BackgroundServiceWithAdminPrivilegesOnActiveNode implement
         return backgroundTaskRunner.runParallel(tasks);
     }
 
+    protected <T> List<T> runParallel(List<BackgroundTaskRunner.Task<T>> tasks, int maxConcurrency) {
+        return backgroundTaskRunner.runParallel(tasks, maxConcurrency);
+    }
+
+    protected <K, T> List<T> runParallelAfterDependencies(Map<K, BackgroundTaskRunner.Task<T>> tasks, Function<K, Optional<K>> dependency) {
+        return backgroundTaskRunner.runParallelAfterDependencies(tasks, dependency);
+    }
+
     protected BackgroundTaskRunner.Task<Void> task(Runnable task, Consumer<Exception> onError) {
         return backgroundTaskRunner.task(() -> {
             task.run();
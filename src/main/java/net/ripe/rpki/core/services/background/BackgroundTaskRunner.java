@@ -8,14 +8,21 @@ import net.ripe.rpki.server.api.services.system.ActiveNodeService;
 import org.springframework.context.SmartLifecycle;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -86,6 +93,76 @@ public class BackgroundTaskRunner implements SmartLifecycle {
         return result;
     }
 
+    /**
+     * Runs the tasks with at most <code>maxConcurrency</code> tasks executing at the same time (and no more than the
+     * parallelism of the pool). Tasks are taken from the list in order by a fixed number of workers, so no pool
+     * thread waits for other tasks.
+     *
+     * @return the non-null results of the successful tasks, in the order of the tasks
+     */
+    public <T> List<T> runParallel(List<Task<T>> tasks, int maxConcurrency) {
+        MaxExceptionsTemplate maxExceptionsTemplate = new MaxExceptionsTemplate(MAX_ALLOWED_EXCEPTIONS);
+        AtomicInteger nextTask = new AtomicInteger();
+        AtomicReferenceArray<T> results = new AtomicReferenceArray<>(tasks.size());
+        Runnable worker = () -> {
+            int i;
+            while ((i = nextTask.getAndIncrement()) < tasks.size()) {
+                int index = i;
+                maxExceptionsTemplate.wrap(tasks.get(index)).ifPresent(value -> results.set(index, value));
+            }
+        };
+
+        int workerCount = Math.min(Math.max(1, maxConcurrency), tasks.size());
+        List<ForkJoinTask<?>> workers = new ArrayList<>(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(forkJoinPool.submit(worker));
+        }
+        workers.forEach(ForkJoinTask::join);
+
+        if (maxExceptionsTemplate.maxExceptionsOccurred()) {
+            throw new BackgroundServiceException("Too many exceptions encountered, suspecting problems that affect ALL CAs.");
+        }
+        List<T> result = new ArrayList<>(tasks.size());
+        for (int i = 0; i < results.length(); i++) {
+            T value = results.get(i);
+            if (value != null) {
+                result.add(value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Runs the tasks in parallel, but starts a task only after the task it depends on completed (successfully or
+     * not). Tasks without a dependency, or with a dependency that is not part of <code>tasks</code>, can start right
+     * away. A task must come after its dependency in the iteration order of <code>tasks</code>.
+     *
+     * @return the non-null results of the successful tasks, in the iteration order of the tasks
+     */
+    public <K, T> List<T> runParallelAfterDependencies(Map<K, Task<T>> tasks, Function<K, Optional<K>> dependency) {
+        MaxExceptionsTemplate maxExceptionsTemplate = new MaxExceptionsTemplate(MAX_ALLOWED_EXCEPTIONS);
+        Map<K, CompletableFuture<Optional<T>>> futures = new LinkedHashMap<>();
+        tasks.forEach((key, task) -> {
+            CompletableFuture<?> dependencyCompleted = dependency.apply(key)
+                .filter(tasks::containsKey)
+                .<CompletableFuture<?>>map(dependencyKey -> {
+                    CompletableFuture<?> future = futures.get(dependencyKey);
+                    if (future == null) {
+                        throw new IllegalArgumentException("task " + key + " precedes the task it depends on " + dependencyKey);
+                    }
+                    return future;
+                })
+                .orElse(CompletableFuture.completedFuture(null));
+            futures.put(key, dependencyCompleted.handleAsync((ignored, exception) -> maxExceptionsTemplate.wrap(task), forkJoinPool));
+        });
+        CompletableFuture.allOf(futures.values().toArray(CompletableFuture<?>[]::new)).join();
+
+        if (maxExceptionsTemplate.maxExceptionsOccurred()) {
+            throw new BackgroundServiceException("Too many exceptions encountered, suspecting problems that affect ALL CAs.");
+        }
+        return futures.values().stream().map(CompletableFuture::join).flatMap(Optional::stream).toList();
+    }
+
     public <T> Task<T> task(Callable<T> task, Consumer<Exception> onException) {
         return new Task<>() {
             @Override
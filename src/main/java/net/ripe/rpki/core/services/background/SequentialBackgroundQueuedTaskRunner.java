@@ -6,7 +6,12 @@ import org.apache.commons.lang3.tuple.Pair;
 import org.springframework.context.SmartLifecycle;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
@@ -14,7 +19,11 @@ import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 /**
- * Runs background tasks sequentially while holding the global services lock.
+ * Runs background tasks sequentially, in submission order, while holding the global services lock.
+ * <p>
+ * When the task cannot run yet (another execution of this service is in progress, or this is not the active node) the
+ * runner waits instead of retrying immediately. Tasks submitted with {@link #submitMerging} are coalesced with a
+ * pending (not yet started) task with the same description.
  */
 @Service
 @Slf4j
@@ -22,8 +31,13 @@ public class SequentialBackgroundQueuedTaskRunner extends SequentialBackgroundSe
     implements SmartLifecycle
 {
 
+    private static final Duration RETRY_INTERVAL = Duration.ofSeconds(5);
+
     private ExecutorService executor;
 
+    /** Merging tasks that have been submitted but did not start yet, by description. Guarded by itself. */
+    private final Map<String, MergingTask<?>> pendingMergingTasks = new HashMap<>();
+
     public SequentialBackgroundQueuedTaskRunner(BackgroundTaskRunner backgroundTaskRunner) {
         super(backgroundTaskRunner);
     }
@@ -45,6 +59,37 @@ public class SequentialBackgroundQueuedTaskRunner extends SequentialBackgroundSe
         executor.execute(() -> executeTask(description, task(action, onException)));
     }
 
+    /**
+     * Submits a task that acts on a set of items. If a task with the same description is still pending the items are
+     * added to that task instead, so that a single execution handles all of them. Tasks with the same description
+     * must therefore have the same item type and equivalent actions.
+     */
+    public <T> void submitMerging(@NonNull String description, @NonNull Collection<? extends T> items, @NonNull Consumer<Set<T>> action, @NonNull Consumer<Exception> onException) {
+        synchronized (pendingMergingTasks) {
+            if (!isRunning()) {
+                throw new RejectedExecutionException("execution has been stopped, tasks can no longer be submitted");
+            }
+
+            @SuppressWarnings("unchecked")
+            MergingTask<T> pending = (MergingTask<T>) pendingMergingTasks.get(description);
+            if (pending != null) {
+                pending.items.addAll(items);
+                log.info("merged {} items into pending task: {}", items.size(), description);
+                return;
+            }
+
+            MergingTask<T> task = new MergingTask<>(new HashSet<>(items));
+            executor.execute(() -> {
+                // Items submitted from now on are handled by a new task
+                synchronized (pendingMergingTasks) {
+                    pendingMergingTasks.remove(description, task);
+                }
+                executeTask(description, task(() -> action.accept(task.items), onException));
+            });
+            pendingMergingTasks.put(description, task);
+        }
+    }
+
     @Override
     public boolean isRunning() {
         return executor != null && !executor.isShutdown();
@@ -76,18 +121,43 @@ public class SequentialBackgroundQueuedTaskRunner extends SequentialBackgroundSe
     private void executeTask(String description, BackgroundTaskRunner.Task<?> task) {
         log.info("starting execution of task: {}", description);
 
+        Runnable runTask = () -> {
+            try {
+                task.execute();
+            } catch (Exception e) {
+                log.error("error running task {}", description, e);
+                task.onException(e);
+            }
+        };
+
         Pair<BackgroundServiceExecutionResult.Status, Long> result;
-        do {
-            result = doExecute(() -> {
-                try {
-                    task.execute();
-                } catch (Exception e) {
-                    log.error("error running task {}", description, e);
-                    task.onException(e);
-                }
-            });
-        } while (result.getLeft() == BackgroundServiceExecutionResult.Status.SKIPPED);
+        try {
+            while ((result = doExecute(runTask)).getLeft() == BackgroundServiceExecutionResult.Status.SKIPPED) {
+                awaitRetry();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("interrupted while waiting to execute task: {}", description);
+            return;
+        }
 
         log.info("finished execution of task: {} in {}ms", description, result.getRight());
     }
+
+    private void awaitRetry() throws InterruptedException {
+        if (isActive()) {
+            // Another execution of this service is waiting or running
+            awaitIdle(RETRY_INTERVAL);
+        } else {
+            Thread.sleep(RETRY_INTERVAL.toMillis());
+        }
+    }
+
+    private static final class MergingTask<T> {
+        private final Set<T> items;
+
+        private MergingTask(Set<T> items) {
+            this.items = items;
+        }
+    }
 }
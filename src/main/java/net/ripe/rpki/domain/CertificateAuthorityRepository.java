@@ -36,7 +36,27 @@ public interface CertificateAuthorityRepository extends Repository<CertificateAu
 
     List<ManagedCertificateAuthority> findAllWithManifestsExpiringBefore(DateTime notValidAfterCutoff, int maxResult);
 
-    Collection<ManagedCertificateAuthority> findAllWithOutdatedManifests(boolean includeUpdatedConfiguration, DateTime nextUpdateCutoff, int maxResults);
+    /**
+     * Queue the certificate authorities with a current manifest or CRL that expires before <code>nextUpdateCutoff</code>
+     * for publication. All other reasons to publish are queued by database triggers.
+     *
+     * @return the number of newly queued certificate authorities.
+     */
+    int queuePendingPublicationsForManifestsAndCrlsExpiringBefore(DateTime nextUpdateCutoff);
+
+    /**
+     * Claims the queued certificate authorities, so that a certificate authority that is queued again while it is
+     * processed stays queued. Certificate authorities claimed before, but not removed, are returned as well.
+     *
+     * @return the claimed certificate authorities, ordered by depth.
+     */
+    List<PendingPublication> findPendingPublications();
+
+    /**
+     * Remove the claimed entries of the certificate authority from the queue. Entries queued after it was returned by
+     * {@link #findPendingPublications()} are kept.
+     */
+    void removePendingPublication(PendingPublication pendingPublication);
 
     int deleteNonHostedPublicKeysWithoutSigningCertificates();
 
@@ -142,6 +142,7 @@ public class KeyPairEntity extends EntitySupport {
     public void revoke(KeyPairDeletionService keyPairDeletionService) {
         deleteIncomingResourceCertificate();
         keyPairDeletionService.deleteRevokedKey(this);
+        persistedKeyPair.evictDecodedKeyPair();
     }
 
     public boolean isRemovable() {
@@ -0,0 +1,26 @@
+package net.ripe.rpki.domain;
+
+import net.ripe.rpki.commons.util.VersionedId;
+
+import javax.security.auth.x500.X500Principal;
+import java.util.Optional;
+
+/**
+ * A managed certificate authority that is queued for a new manifest and CRL.
+ *
+ * @param generation        the latest claimed queue entry of the certificate authority. Entries queued later have a
+ *                          higher generation and are not removed with this one.
+ * @param depth             the number of parents of the certificate authority.
+ * @param pendingAncestorId the id of the closest ancestor that is queued as well, or <code>null</code>. The ancestor
+ *                          must be published first.
+ */
+public record PendingPublication(VersionedId caId, X500Principal caName, long generation, int depth, Long pendingAncestorId) {
+
+    public long id() {
+        return caId.getId();
+    }
+
+    public Optional<Long> findPendingAncestorId() {
+        return Optional.ofNullable(pendingAncestorId);
+    }
+}
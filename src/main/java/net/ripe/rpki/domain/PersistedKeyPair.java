@@ -45,6 +45,13 @@ public class PersistedKeyPair {
         keyStore = Keys.get().ksToBytes(keyPair, keyStoreProvider, signatureProvider, keyStoreType);
     }
 
+    /**
+     * Drops the decoded key pair from the process-wide cache, the key will not be used for signing anymore.
+     */
+    public void evictDecodedKeyPair() {
+        Keys.get().evictKeyPair(keyStore, keyStoreProvider, keyStoreType);
+    }
+
     @PostRemove
     public void removeKey() {
         Keys.get().clearKeyStore(keyStore, keyStoreProvider, keyStoreType);
@@ -60,7 +67,7 @@ public class PersistedKeyPair {
 
     public KeyPair getKeyPair() {
         if (keyPair == null) {
-            keyPair = Keys.get().getKeyPairFromKeyStore(keyStore, keyStoreProvider, keyStoreType);
+            keyPair = Keys.get().getCachedKeyPairFromKeyStore(keyStore, keyStoreProvider, keyStoreType);
         }
         return keyPair;
     }
@@ -14,9 +14,19 @@ public class PublishedObjectData {
 
     byte[] content;
 
+    /**
+     * The hex encoded SHA-256 hash of the content as stored in the database, or <code>null</code> when not known.
+     */
+    String sha256;
+
     public PublishedObjectData(Instant createdAt, URI uri, byte[] content) {
+        this(createdAt, uri, content, null);
+    }
+
+    public PublishedObjectData(Instant createdAt, URI uri, byte[] content, String sha256) {
         this.createdAt = createdAt;
         this.uri = uri;
         this.content = content;
+        this.sha256 = sha256;
     }
 }
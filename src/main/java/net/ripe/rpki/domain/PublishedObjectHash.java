@@ -0,0 +1,23 @@
+package net.ripe.rpki.domain;
+
+import lombok.Value;
+
+import java.net.URI;
+
+/**
+ * Location and stored content hash of a currently published object, without the content itself.
+ */
+@Value
+public class PublishedObjectHash {
+    /**
+     * Id of the {@link PublishedObject} or {@link TrustAnchorPublishedObject}. Both share the same id sequence.
+     */
+    long id;
+
+    URI uri;
+
+    /**
+     * <b>hex string</b> (not: bytes) of sha256.
+     */
+    String sha256;
+}
@@ -3,8 +3,10 @@ package net.ripe.rpki.domain;
 import net.ripe.rpki.ripencc.support.persistence.Repository;
 import org.joda.time.DateTime;
 
+import java.util.Collection;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface PublishedObjectRepository extends Repository<PublishedObject> {
 
@@ -16,13 +18,34 @@ public interface PublishedObjectRepository extends Repository<PublishedObject> {
     List<PublishedObject> findActiveManifestEntries(KeyPairEntity keyPair);
 
     /**
-     * Finds all objects that should be published in the public repository. All these objects are
+     * Counts the objects that {@link #streamCurrentlyPublishedObjects(int)} would return.
+     */
+    long countCurrentlyPublishedObjects();
+
+    /**
+     * Streams all objects that should be published in the public repository. All these objects are
      * a manifest or are included in a valid manifest. The objects include both {@link PublishedObject}s
      * and {@link TrustAnchorPublishedObject}s.
+     * <p>
+     * The stream is backed by a database cursor that fetches at most <code>fetchSize</code> rows at a time, so it
+     * must be consumed inside the transaction that created it and closed afterwards.
      *
-     * @return list of objects that should be part of the public repository
+     * @return stream of objects that should be part of the public repository
+     */
+    Stream<PublishedObjectData> streamCurrentlyPublishedObjects(int fetchSize);
+
+    /**
+     * Streams the location and stored SHA-256 hash of the objects returned by
+     * {@link #streamCurrentlyPublishedObjects(int)}, without reading their content. Like that method the stream must
+     * be consumed inside the transaction that created it.
+     */
+    Stream<PublishedObjectHash> streamCurrentlyPublishedObjectHashes(int fetchSize);
+
+    /**
+     * Loads the content of the given objects (as returned by {@link #streamCurrentlyPublishedObjectHashes(int)}).
+     * Callers should limit the number of objects passed in to bound the memory usage.
      */
-    List<PublishedObjectData> findCurrentlyPublishedObjects();
+    List<PublishedObjectData> findPublishedObjectData(Collection<PublishedObjectHash> objects);
 
     List<Long> findObjectIdsWithoutValidityPeriod();
 
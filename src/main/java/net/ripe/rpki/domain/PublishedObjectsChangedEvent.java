@@ -0,0 +1,10 @@
+package net.ripe.rpki.domain;
+
+/**
+ * Published when the set of currently published objects changed, that is when published objects transitioned
+ * between publication statuses. Listeners should only act after the transaction committed.
+ *
+ * @param count the number of published objects that changed status
+ */
+public record PublishedObjectsChangedEvent(int count) {
+}
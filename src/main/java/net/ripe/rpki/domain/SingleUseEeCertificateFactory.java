@@ -22,6 +22,20 @@ public class SingleUseEeCertificateFactory {
         CertificateIssuanceRequest request,
         ValidityPeriod validityPeriod,
         KeyPairEntity signingKeyPair
+    ) {
+        OutgoingResourceCertificate result = buildSingleUseEeResourceCertificate(request, validityPeriod, signingKeyPair);
+        addSingleUseEeResourceCertificate(result);
+        return result;
+    }
+
+    /**
+     * Builds and signs the EE certificate without adding it to the repository, so it can be used from a signing
+     * thread (see {@link net.ripe.rpki.domain.signing.SigningExecutor}).
+     */
+    public OutgoingResourceCertificate buildSingleUseEeResourceCertificate(
+        CertificateIssuanceRequest request,
+        ValidityPeriod validityPeriod,
+        KeyPairEntity signingKeyPair
     ) {
         IncomingResourceCertificate active = signingKeyPair.getCurrentIncomingCertificate();
         Validate.isTrue(active.getResources().contains(request.getResourceExtension().getResources()), "EE certificate resources MUST BE contained in the parent certificate");
@@ -39,8 +53,10 @@ public class SingleUseEeCertificateFactory {
         builder.withAuthorityInformationAccess(ias.aiaForCertificate(active));
         builder.withCrlDistributionPoints(signingKeyPair.crlLocationUri());
         builder.withSubjectInformationAccess(request.getSubjectInformationAccess());
-        OutgoingResourceCertificate result = builder.build();
-        resourceCertificateRepository.add(result);
-        return result;
+        return builder.build();
+    }
+
+    public void addSingleUseEeResourceCertificate(OutgoingResourceCertificate certificate) {
+        resourceCertificateRepository.add(certificate);
     }
 }
@@ -1,5 +1,6 @@
 package net.ripe.rpki.domain;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import net.ripe.rpki.commons.crypto.util.KeyPairFactory;
 
 import java.security.KeyPair;
@@ -9,23 +10,41 @@ import java.util.function.Supplier;
  * Key pair factory that generates keys using the software <code>SunRsaSign</code> algorithm. These keys should only
  * be used for single-use signing of CMS objects. See the {@link HardwareKeyPairFactory} for generating keys that
  * should be safely stored by the HSM in production.
+ * <p>
+ * Optionally the key pairs are taken from a {@link SingleUseKeyPairPool} that generates them in the background, so
+ * RSA key generation does not add to the latency of commands.
  */
-public final class SingleUseKeyPairFactory implements Supplier<KeyPair> {
+public final class SingleUseKeyPairFactory implements Supplier<KeyPair>, AutoCloseable {
     private static final String SINGLE_USE_KEY_PAIR_PROVIDER = "SunRsaSign";
 
     private final KeyPairFactory keyPairFactory;
+    private final SingleUseKeyPairPool pool;
 
     public SingleUseKeyPairFactory() {
         this.keyPairFactory = new KeyPairFactory(keyPairGeneratorProvider());
+        this.pool = null;
     }
 
     public SingleUseKeyPairFactory(KeyPairFactory keyPairFactory) {
         this.keyPairFactory = keyPairFactory.withProvider(keyPairGeneratorProvider());
+        this.pool = null;
+    }
+
+    public SingleUseKeyPairFactory(int poolSize, int poolThreads, MeterRegistry meterRegistry) {
+        this.keyPairFactory = new KeyPairFactory(keyPairGeneratorProvider());
+        this.pool = poolSize > 0 ? new SingleUseKeyPairPool(keyPairFactory::generate, poolSize, poolThreads, meterRegistry) : null;
     }
 
     @Override
     public KeyPair get() {
-        return keyPairFactory.generate();
+        return pool != null ? pool.get() : keyPairFactory.generate();
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.close();
+        }
     }
 
     public String keyPairGeneratorProvider() {
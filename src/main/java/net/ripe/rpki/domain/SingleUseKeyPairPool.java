@@ -0,0 +1,117 @@
+package net.ripe.rpki.domain;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.security.KeyPair;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Bounded pool of key pairs that are generated ahead of demand by background threads. Key pairs are taken from the
+ * pool without locking, when the pool is empty a key pair is generated by the caller. Every key pair is handed out
+ * only once.
+ */
+@Slf4j
+final class SingleUseKeyPairPool implements Supplier<KeyPair>, AutoCloseable {
+
+    private final Supplier<KeyPair> generator;
+    private final int capacity;
+    private final int threads;
+    private final ExecutorService executor;
+
+    private final Queue<KeyPair> pool = new ConcurrentLinkedQueue<>();
+    // Number of pooled key pairs plus the number of key pairs being generated for the pool
+    private final AtomicInteger reserved = new AtomicInteger();
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+
+    private final Counter hits;
+    private final Counter misses;
+
+    SingleUseKeyPairPool(Supplier<KeyPair> generator, int capacity, int threads, MeterRegistry meterRegistry) {
+        this.generator = generator;
+        this.capacity = capacity;
+        this.threads = threads;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "single-use-key-pair-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+
+        this.hits = Counter.builder("rpkicore.single.use.keypair.pool.requests")
+            .description("Number of single-use key pairs taken from the pool")
+            .tag("result", "hit")
+            .register(meterRegistry);
+        this.misses = Counter.builder("rpkicore.single.use.keypair.pool.requests")
+            .description("Number of single-use key pairs generated on demand because the pool was empty")
+            .tag("result", "miss")
+            .register(meterRegistry);
+        Gauge.builder("rpkicore.single.use.keypair.pool.depth", pool, Queue::size)
+            .description("Number of pre-generated single-use key pairs available")
+            .register(meterRegistry);
+
+        refill();
+    }
+
+    @Override
+    public KeyPair get() {
+        KeyPair keyPair = pool.poll();
+        if (keyPair != null) {
+            reserved.decrementAndGet();
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        refill();
+        return keyPair != null ? keyPair : generator.get();
+    }
+
+    private void refill() {
+        while (reserved.get() < capacity) {
+            int workers = activeWorkers.get();
+            if (workers >= threads) {
+                return;
+            }
+            if (activeWorkers.compareAndSet(workers, workers + 1)) {
+                try {
+                    executor.execute(this::fill);
+                } catch (RejectedExecutionException e) {
+                    // Pool is closed
+                    activeWorkers.decrementAndGet();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void fill() {
+        try {
+            while (reserved.incrementAndGet() <= capacity) {
+                try {
+                    pool.add(generator.get());
+                } catch (RuntimeException e) {
+                    reserved.decrementAndGet();
+                    log.error("Failed to pre-generate single-use key pair", e);
+                    return;
+                }
+            }
+            reserved.decrementAndGet();
+        } finally {
+            activeWorkers.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
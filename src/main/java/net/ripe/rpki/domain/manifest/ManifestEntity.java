@@ -142,6 +142,16 @@ public class ManifestEntity extends EntitySupport {
                        KeyPair eeCertificateKeyPair,
                        String signatureProvider,
                        Collection<PublishedObject> updatedEntries) {
+        update(eeCertificate, buildManifestCms(eeCertificate, updatedEntries, eeCertificateKeyPair, signatureProvider), updatedEntries);
+    }
+
+    /**
+     * Replaces the manifest with <code>manifestCms</code>, which must be built by {@link #buildManifestCms} for the
+     * same certificate and entries.
+     */
+    public void update(OutgoingResourceCertificate eeCertificate,
+                       ManifestCms manifestCms,
+                       Collection<PublishedObject> updatedEntries) {
         withdraw();
 
         this.certificate = eeCertificate;
@@ -159,22 +169,24 @@ public class ManifestEntity extends EntitySupport {
             entries.remove(removedEntry);
         }
 
-        ManifestCms manifestCms = buildManifestCms(entries, eeCertificateKeyPair, signatureProvider);
-
         publishedObject = new PublishedObject(keyPair, keyPair.getManifestFilename(), manifestCms.getEncoded(), false, keyPair.getCertificateRepositoryLocation(), manifestCms.getValidityPeriod(), manifestCms.getSigningTime());
 
         this.nextNumber++;
         this.needsReissuance = false;
     }
 
-    private ManifestCms buildManifestCms(Collection<PublishedObject> manifestEntries, KeyPair eeKeyPair, String signatureProvider) {
+    /**
+     * Builds and signs the next manifest for the given entries without modifying this entity, so the manifest can be
+     * signed on a signing thread.
+     */
+    public ManifestCms buildManifestCms(OutgoingResourceCertificate eeCertificate, Collection<PublishedObject> manifestEntries, KeyPair eeKeyPair, String signatureProvider) {
         ManifestCmsBuilder builder = new ManifestCmsBuilder();
-        for (PublishedObject manifestEntry : manifestEntries) {
+        for (PublishedObject manifestEntry : new HashSet<>(manifestEntries)) {
             builder.addFile(manifestEntry.getFilename(), manifestEntry.getContent());
         }
-        builder.withCertificate(certificate.getCertificate());
+        builder.withCertificate(eeCertificate.getCertificate());
         builder.withManifestNumber(BigInteger.valueOf(nextNumber));
-        builder.withValidityPeriod(certificate.getValidityPeriod());
+        builder.withValidityPeriod(eeCertificate.getValidityPeriod());
         builder.withSignatureProvider(signatureProvider);
         return builder.build(eeKeyPair.getPrivate());
     }
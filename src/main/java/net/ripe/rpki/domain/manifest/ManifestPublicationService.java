@@ -3,10 +3,12 @@ package net.ripe.rpki.domain.manifest;
 import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.MeterRegistry;
 import net.ripe.rpki.commons.crypto.ValidityPeriod;
+import net.ripe.rpki.commons.crypto.cms.manifest.ManifestCms;
 import net.ripe.rpki.domain.*;
 import net.ripe.rpki.domain.crl.CrlEntity;
 import net.ripe.rpki.domain.crl.CrlEntityRepository;
 import net.ripe.rpki.domain.interca.CertificateIssuanceRequest;
+import net.ripe.rpki.domain.signing.SigningExecutor;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.joda.time.Period;
@@ -14,7 +16,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.security.KeyPair;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 @Service
 public class ManifestPublicationService {
@@ -32,6 +36,7 @@ public class ManifestPublicationService {
     private final ManifestEntityRepository manifestEntityRepository;
     private final SingleUseKeyPairFactory singleUseKeyPairFactory;
     private final SingleUseEeCertificateFactory singleUseEeCertificateFactory;
+    private final SigningExecutor signingExecutor;
 
     private final DistributionSummary manifestSizeDistribution;
     private final DistributionSummary crlSizeDistribution;
@@ -44,6 +49,7 @@ public class ManifestPublicationService {
         ManifestEntityRepository manifestEntityRepository,
         SingleUseKeyPairFactory singleUseKeyPairFactory,
         SingleUseEeCertificateFactory singleUseEeCertificateFactory,
+        SigningExecutor signingExecutor,
         MeterRegistry meterRegistry
     ) {
         this.resourceCertificateRepository = resourceCertificateRepository;
@@ -52,6 +58,7 @@ public class ManifestPublicationService {
         this.manifestEntityRepository = manifestEntityRepository;
         this.singleUseKeyPairFactory = singleUseKeyPairFactory;
         this.singleUseEeCertificateFactory = singleUseEeCertificateFactory;
+        this.signingExecutor = signingExecutor;
         this.manifestSizeDistribution = DistributionSummary.builder(RPKI_CA_GENERATED_MANIFEST_SIZE_METRIC_NAME)
             .description("size in bytes of generated manifests")
             .baseUnit("byte")
@@ -69,8 +76,12 @@ public class ManifestPublicationService {
     }
 
     public long publishRpkiObjectsIfNeeded(ManagedCertificateAuthority certificateAuthority) {
+        // The manifests of all keys are signed in parallel, the CRLs and manifest entries are prepared (and the
+        // results persisted) on the command thread.
+        List<KeyPairEntity> keyPairs = new ArrayList<>(certificateAuthority.getKeyPairs());
+        updateManifestsAndCrlsIfNeeded(keyPairs);
         // Publish each key if needed. Use `count` here to ensure all keys are published (no early termination).
-        return certificateAuthority.getKeyPairs().stream().filter(this::publishRpkiObjectsIfNeeded).count();
+        return keyPairs.stream().filter(keyPair -> publishedObjectRepository.publishObjects(keyPair) > 0).count();
     }
 
     public boolean publishRpkiObjectsIfNeeded(KeyPairEntity keyPair) {
@@ -86,18 +97,46 @@ public class ManifestPublicationService {
      * Emit corresponding event, so that an update is sent to the publication server.
      */
     public boolean updateManifestAndCrlIfNeeded(KeyPairEntity keyPair) {
-        if (!keyPair.isPublishable()) {
-            return false;
-        }
+        return updateManifestsAndCrlsIfNeeded(List.of(keyPair)) > 0;
+    }
 
+    private int updateManifestsAndCrlsIfNeeded(List<KeyPairEntity> keyPairs) {
         DateTime now = DateTime.now(DateTimeZone.UTC);
+        List<ManifestUpdate> updates = keyPairs.stream()
+            .map(keyPair -> prepareManifestAndCrlUpdate(now, keyPair))
+            .flatMap(Optional::stream)
+            .toList();
+        if (updates.isEmpty()) {
+            return 0;
+        }
+
+        List<SignedManifest> signed = signingExecutor.sign("manifest", updates, this::signManifest);
+
+        return signingExecutor.persist("manifest", () -> {
+            for (SignedManifest manifest : signed) {
+                ManifestEntity manifestEntity = manifest.update().manifestEntity();
+                singleUseEeCertificateFactory.addSingleUseEeResourceCertificate(manifest.certificate());
+                manifestEntity.update(manifest.certificate(), manifest.manifestCms(), manifest.update().manifestEntries());
+                manifestEntityRepository.add(manifestEntity);
+
+                crlSizeDistribution.record(manifest.update().crlEntity().getEncoded().length);
+                manifestSizeDistribution.record(manifestEntity.getEncoded().length);
+            }
+            return signed.size();
+        });
+    }
+
+    private Optional<ManifestUpdate> prepareManifestAndCrlUpdate(DateTime now, KeyPairEntity keyPair) {
+        if (!keyPair.isPublishable()) {
+            return Optional.empty();
+        }
 
         CrlEntity crlEntity = crlEntityRepository.findOrCreateByKeyPair(keyPair);
         ManifestEntity manifestEntity = manifestEntityRepository.findOrCreateByKeyPairEntity(keyPair);
 
         boolean updateNeeded = crlEntity.isUpdateNeeded(now, resourceCertificateRepository) || isManifestUpdateNeeded(now, manifestEntity);
         if (!updateNeeded) {
-            return false;
+            return Optional.empty();
         }
 
         ValidityPeriod validityPeriod = new ValidityPeriod(now, now.plus(TIME_TO_NEXT_UPDATE));
@@ -112,19 +151,13 @@ public class ManifestPublicationService {
         crlEntity.update(validityPeriod, resourceCertificateRepository);
         crlEntityRepository.add(crlEntity);
 
-        // Issue the manifest with a one-time-use EE certificate. The validity times of the EE
-        // certificate MUST exactly match the 'thisUpdate' and 'nextUpdate' times in the manifest.
-        //
-        // This is implemented by first creating the EE certificate with the timings in
-        // 'validityPeriod'. Then the manifest is updated with the certificate, copying the timings
-        // into the manifest (see ManifestEntity#update).
-        issueManifest(manifestEntity, validityPeriod);
-        manifestEntityRepository.add(manifestEntity);
-
-        crlSizeDistribution.record(crlEntity.getEncoded().length);
-        manifestSizeDistribution.record(manifestEntity.getEncoded().length);
+        // Load the manifest entries (with their content) and the signing key on the command thread, the manifest
+        // is signed on a signing thread that does not access the database.
+        List<PublishedObject> manifestEntries = determineManifestEntries(publishedObjectRepository, keyPair);
+        manifestEntries.forEach(PublishedObject::getContent);
+        keyPair.getPrivateKey();
 
-        return true;
+        return Optional.of(new ManifestUpdate(manifestEntity, crlEntity, validityPeriod, manifestEntries));
     }
 
     private boolean isManifestUpdateNeeded(DateTime now, ManifestEntity manifestEntity) {
@@ -135,18 +168,33 @@ public class ManifestPublicationService {
         );
     }
 
-    private void issueManifest(ManifestEntity manifestEntity, ValidityPeriod validityPeriod) {
+    /**
+     * Issue the manifest with a one-time-use EE certificate. The validity times of the EE certificate MUST exactly
+     * match the 'thisUpdate' and 'nextUpdate' times in the manifest.
+     * <p>
+     * This is implemented by first creating the EE certificate with the timings in 'validityPeriod'. Then the
+     * manifest is built with the certificate, copying the timings into the manifest (see
+     * {@link ManifestEntity#buildManifestCms}).
+     */
+    private SignedManifest signManifest(ManifestUpdate update) {
+        ManifestEntity manifestEntity = update.manifestEntity();
         KeyPairEntity keyPair = manifestEntity.getKeyPair();
 
         KeyPair eeKeyPair = singleUseKeyPairFactory.get();
         CertificateIssuanceRequest request = manifestEntity.requestForManifestEeCertificate(eeKeyPair);
-        OutgoingResourceCertificate manifestCertificate = singleUseEeCertificateFactory.issueSingleUseEeResourceCertificate(request, validityPeriod, keyPair);
+        OutgoingResourceCertificate manifestCertificate = singleUseEeCertificateFactory.buildSingleUseEeResourceCertificate(request, update.validityPeriod(), keyPair);
 
-        List<PublishedObject> manifestEntries = determineManifestEntries(publishedObjectRepository, keyPair);
-        manifestEntity.update(manifestCertificate, eeKeyPair, singleUseKeyPairFactory.signatureProvider(), manifestEntries);
+        ManifestCms manifestCms = manifestEntity.buildManifestCms(manifestCertificate, update.manifestEntries(), eeKeyPair, singleUseKeyPairFactory.signatureProvider());
+        return new SignedManifest(update, manifestCertificate, manifestCms);
     }
 
     private static List<PublishedObject> determineManifestEntries(PublishedObjectRepository publishedObjectRepository, KeyPairEntity keyPair) {
         return publishedObjectRepository.findActiveManifestEntries(keyPair);
     }
+
+    private record ManifestUpdate(ManifestEntity manifestEntity, CrlEntity crlEntity, ValidityPeriod validityPeriod, List<PublishedObject> manifestEntries) {
+    }
+
+    private record SignedManifest(ManifestUpdate update, OutgoingResourceCertificate certificate, ManifestCms manifestCms) {
+    }
 }
@@ -13,6 +13,7 @@ import net.ripe.rpki.server.api.services.command.UnparseableRpkiObjectException;
 import org.apache.commons.lang.Validate;
 
 import jakarta.persistence.CascadeType;
+import jakarta.persistence.Embedded;
 import jakarta.persistence.Entity;
 import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
@@ -50,6 +51,13 @@ public class RoaEntity extends EntitySupport {
     @Getter
     private PublishedObject publishedObject;
 
+    /**
+     * Decoded attributes of the ROA, <code>null</code> for ROAs created before the summary was persisted (these
+     * are filled in from the CMS object on first use).
+     */
+    @Embedded
+    private RoaSummary summary;
+
     public RoaEntity() {
     }
 
@@ -60,6 +68,7 @@ public class RoaEntity extends EntitySupport {
         this.certificate = eeCertificate;
         this.publishedObject = new PublishedObject(
                 eeCertificate.getSigningKeyPair(), filename, roaCms.getEncoded(), true, directory, roaCms.getValidityPeriod(), roaCms.getSigningTime());
+        this.summary = new RoaSummary(roaCms);
     }
 
     @Transient
@@ -78,8 +87,20 @@ public class RoaEntity extends EntitySupport {
         return cms;
     }
 
+    /**
+     * @return the decoded ASN, prefixes, parent certificate URI and validity period of this ROA, without parsing the
+     * CMS object (unless the summary was not yet persisted)
+     * @throws UnparseableRpkiObjectException when the summary is missing and the CMS object cannot be parsed
+     */
+    public RoaSummary getSummary() {
+        if (summary == null) {
+            summary = new RoaSummary(getRoaCms());
+        }
+        return summary;
+    }
+
     public Asn getAsn() {
-        return getRoaCms().getAsn();
+        return getSummary().getAsn();
     }
 
     public boolean isRevoked() {
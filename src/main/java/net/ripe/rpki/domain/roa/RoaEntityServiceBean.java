@@ -25,6 +25,7 @@ import net.ripe.rpki.domain.SingleUseEeCertificateFactory;
 import net.ripe.rpki.domain.SingleUseKeyPairFactory;
 import net.ripe.rpki.domain.interca.CertificateIssuanceRequest;
 import net.ripe.rpki.domain.naming.RepositoryObjectNamingStrategy;
+import net.ripe.rpki.domain.signing.SigningExecutor;
 import net.ripe.rpki.server.api.commands.CommandContext;
 import net.ripe.rpki.server.api.services.command.UnparseableRpkiObjectException;
 import org.apache.commons.lang3.tuple.Pair;
@@ -53,17 +54,21 @@ public class RoaEntityServiceBean implements CertificateAuthorityEventVisitor, R
 
     private final SingleUseEeCertificateFactory singleUseEeCertificateFactory;
 
+    private final SigningExecutor signingExecutor;
+
     @Autowired
     public RoaEntityServiceBean(CertificateAuthorityRepository certificateAuthorityRepository,
                                 RoaConfigurationRepository roaConfigurationRepository,
                                 RoaEntityRepository repository,
                                 SingleUseKeyPairFactory singleUseKeyPairFactory,
-                                SingleUseEeCertificateFactory singleUseEeCertificateFactory) {
+                                SingleUseEeCertificateFactory singleUseEeCertificateFactory,
+                                SigningExecutor signingExecutor) {
         this.certificateAuthorityRepository = certificateAuthorityRepository;
         this.roaConfigurationRepository = roaConfigurationRepository;
         this.repository = repository;
         this.singleUseKeyPairFactory = singleUseKeyPairFactory;
         this.singleUseEeCertificateFactory = singleUseEeCertificateFactory;
+        this.signingExecutor = signingExecutor;
     }
 
     @Override
@@ -122,21 +127,20 @@ public class RoaEntityServiceBean implements CertificateAuthorityEventVisitor, R
         for (RoaEntity roaEntity : validated.getLeft()) {
             roaEntity.revokeAndRemove(repository);
         }
-        for (RoaSpecification specification : validated.getRight()) {
-            createRoaEntity(ca, specification);
-        }
+        createRoaEntities(ca, validated.getRight());
     }
 
     private boolean isValidRoaEntity(IncomingResourceCertificate incomingResourceCertificate, Map<Asn, RoaSpecification> specifications, RoaEntity roa) {
         try {
-            RoaCms roaCms = roa.getRoaCms();
-            RoaSpecification specification = specifications.get(roaCms.getAsn());
+            // Validate against the persisted summary, the CMS object is only parsed for ROAs without a summary
+            RoaSummary summary = roa.getSummary();
+            RoaSpecification specification = specifications.get(summary.getAsn());
 
             return roa.getCertificate().isValid()
                 && roa.getCertificate().getSigningKeyPair().isCurrent()
-                && Objects.equals(incomingResourceCertificate.getPublicationUri(), roaCms.getParentCertificateUri())
+                && Objects.equals(incomingResourceCertificate.getPublicationUri(), summary.getParentCertificateUri())
                 && specification != null
-                && specification.isSatisfiedBy(roaCms);
+                && specification.isSatisfiedBy(summary);
         } catch (UnparseableRpkiObjectException e) {
             return false;
         }
@@ -150,34 +154,56 @@ public class RoaEntityServiceBean implements CertificateAuthorityEventVisitor, R
 
     private boolean isUnsatisfiedSpecification(Map<Asn, List<RoaEntity>> validRoasByAsn, RoaSpecification specification) {
         return validRoasByAsn.getOrDefault(specification.getAsn(), Collections.emptyList()).stream()
-            .noneMatch(roa -> specification.isSatisfiedBy(roa.getRoaCms()));
+            .noneMatch(roa -> specification.isSatisfiedBy(roa.getSummary()));
     }
 
-    private void createRoaEntity(ManagedCertificateAuthority ca, RoaSpecification specification) {
-        if (!specification.hasResources()) {
-            return;
+    private void createRoaEntities(ManagedCertificateAuthority ca, List<RoaSpecification> specifications) {
+        List<Pair<RoaSpecification, ValidityPeriod>> issuable = new ArrayList<>();
+        for (RoaSpecification specification : specifications) {
+            if (specification.hasResources()) {
+                ValidityPeriod roaValidityPeriod = specification.calculateValidityPeriod();
+                if (roaValidityPeriod != null) {
+                    issuable.add(Pair.of(specification, roaValidityPeriod));
+                }
+            }
         }
-
-        ValidityPeriod roaValidityPeriod = specification.calculateValidityPeriod();
-        if (roaValidityPeriod == null) {
+        if (issuable.isEmpty()) {
             return;
         }
 
-        KeyPair eeKeyPair = singleUseKeyPairFactory.get();
-        OutgoingResourceCertificate endEntityCertificate = createEndEntityCertificateForRoa(specification, roaValidityPeriod, eeKeyPair, ca.getCurrentKeyPair());
-
-        RoaCms roaCms = generateRoaCms(specification, eeKeyPair, endEntityCertificate.getCertificate());
+        // Initialize the signing key and certificate on the command thread, the signing threads do not access the
+        // database.
+        KeyPairEntity signingKeyPair = ca.getCurrentKeyPair();
+        signingKeyPair.getPrivateKey();
         URI publicationDirectory = CertificateInformationAccessUtil.extractPublicationDirectory(
                 ca.getCurrentIncomingCertificate().getSia());
-        RoaEntity roaEntity = new RoaEntity(endEntityCertificate, roaCms,
-                informationAccessStrategy.roaFilename(endEntityCertificate), publicationDirectory);
-        repository.add(roaEntity);
+
+        List<Pair<OutgoingResourceCertificate, RoaCms>> signed = signingExecutor.sign("roa", issuable,
+            item -> signRoa(item.getLeft(), item.getRight(), signingKeyPair));
+
+        signingExecutor.persist("roa", () -> {
+            for (Pair<OutgoingResourceCertificate, RoaCms> roa : signed) {
+                OutgoingResourceCertificate endEntityCertificate = roa.getLeft();
+                singleUseEeCertificateFactory.addSingleUseEeResourceCertificate(endEntityCertificate);
+                RoaEntity roaEntity = new RoaEntity(endEntityCertificate, roa.getRight(),
+                        informationAccessStrategy.roaFilename(endEntityCertificate), publicationDirectory);
+                repository.add(roaEntity);
+            }
+            return signed.size();
+        });
+    }
+
+    private Pair<OutgoingResourceCertificate, RoaCms> signRoa(RoaSpecification specification, ValidityPeriod roaValidityPeriod, KeyPairEntity signingKeyPair) {
+        KeyPair eeKeyPair = singleUseKeyPairFactory.get();
+        OutgoingResourceCertificate endEntityCertificate = createEndEntityCertificateForRoa(specification, roaValidityPeriod, eeKeyPair, signingKeyPair);
+        RoaCms roaCms = generateRoaCms(specification, eeKeyPair, endEntityCertificate.getCertificate());
+        return Pair.of(endEntityCertificate, roaCms);
     }
 
     private OutgoingResourceCertificate createEndEntityCertificateForRoa(RoaSpecification specification,
                                                                          ValidityPeriod roaValidityPeriod, KeyPair eeKeyPair, KeyPairEntity signingKeyPair) {
         CertificateIssuanceRequest request = requestForRoaEeCertificate(specification.getNormalisedResources(), signingKeyPair, eeKeyPair);
-        return singleUseEeCertificateFactory.issueSingleUseEeResourceCertificate(
+        return singleUseEeCertificateFactory.buildSingleUseEeResourceCertificate(
             request, roaValidityPeriod, signingKeyPair);
     }
 
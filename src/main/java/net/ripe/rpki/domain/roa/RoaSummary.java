@@ -0,0 +1,104 @@
+package net.ripe.rpki.domain.roa;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import jakarta.persistence.Transient;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+import net.ripe.ipresource.Asn;
+import net.ripe.ipresource.IpRange;
+import net.ripe.rpki.commons.crypto.ValidityPeriod;
+import net.ripe.rpki.commons.crypto.cms.roa.Roa;
+import net.ripe.rpki.commons.crypto.cms.roa.RoaCms;
+import net.ripe.rpki.commons.crypto.cms.roa.RoaPrefix;
+import org.joda.time.DateTime;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The decoded attributes of a ROA CMS that are needed to validate a ROA against the current ROA configuration and
+ * incoming certificate, persisted alongside the ROA so that validation does not need to parse the CMS object.
+ * <p>
+ * Prefixes are stored as a comma separated list of <code>prefix</code> or <code>prefix-maxLength</code> values.
+ */
+@Embeddable
+@EqualsAndHashCode(exclude = "prefixList")
+public class RoaSummary implements Roa {
+
+    @Column(name = "roa_asn")
+    @Getter
+    private Asn asn;
+
+    @Column(name = "roa_prefixes")
+    private String prefixes;
+
+    @Column(name = "roa_parent_certificate_uri")
+    @Getter
+    private URI parentCertificateUri;
+
+    @Column(name = "roa_not_valid_before")
+    private DateTime notValidBefore;
+
+    @Column(name = "roa_not_valid_after")
+    private DateTime notValidAfter;
+
+    @Transient
+    private List<RoaPrefix> prefixList;
+
+    protected RoaSummary() {
+    }
+
+    public RoaSummary(@NonNull RoaCms roaCms) {
+        this.asn = roaCms.getAsn();
+        this.prefixes = formatPrefixes(roaCms.getPrefixes());
+        this.parentCertificateUri = roaCms.getParentCertificateUri();
+        this.notValidBefore = roaCms.getValidityPeriod().getNotValidBefore();
+        this.notValidAfter = roaCms.getValidityPeriod().getNotValidAfter();
+    }
+
+    @Override
+    public List<RoaPrefix> getPrefixes() {
+        if (prefixList == null) {
+            prefixList = parsePrefixes(prefixes);
+        }
+        return prefixList;
+    }
+
+    @Override
+    public ValidityPeriod getValidityPeriod() {
+        return new ValidityPeriod(notValidBefore, notValidAfter);
+    }
+
+    static String formatPrefixes(List<RoaPrefix> prefixes) {
+        return prefixes.stream()
+            .map(prefix -> prefix.getMaximumLength() == null
+                ? prefix.getPrefix().toString()
+                : prefix.getPrefix() + "-" + prefix.getMaximumLength())
+            .collect(Collectors.joining(","));
+    }
+
+    static List<RoaPrefix> parsePrefixes(String value) {
+        List<RoaPrefix> result = new ArrayList<>();
+        if (value == null || value.isEmpty()) {
+            return result;
+        }
+        for (String item : value.split(",")) {
+            int separator = item.indexOf('-');
+            if (separator < 0) {
+                result.add(new RoaPrefix(IpRange.parse(item), null));
+            } else {
+                result.add(new RoaPrefix(IpRange.parse(item.substring(0, separator)), Integer.valueOf(item.substring(separator + 1))));
+            }
+        }
+        return List.copyOf(result);
+    }
+
+    @Override
+    public String toString() {
+        return asn + " [" + prefixes + "] " + notValidBefore + " - " + notValidAfter;
+    }
+}
@@ -0,0 +1,110 @@
+package net.ripe.rpki.domain.signing;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Runs the signing steps (EE certificate issuance and CMS generation) of the objects issued by a command on a bounded
+ * number of threads. The results are joined on the command thread, which persists them in the command's
+ * transaction.
+ * <p>
+ * The signing steps must not access the database: all entities they use must be initialized by the command thread
+ * before signing starts.
+ */
+@Component
+@Slf4j
+public class SigningExecutor {
+
+    private static final String STAGE_SIGN = "sign";
+    private static final String STAGE_PERSIST = "persist";
+
+    private final ExecutorService executor;
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public SigningExecutor(@Value("${signing.threads:0}") int threads, MeterRegistry meterRegistry) {
+        int parallelism = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = parallelism > 1 ? Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "signing-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+        this.meterRegistry = meterRegistry;
+        log.info("Signing objects using {} threads", parallelism);
+    }
+
+    /**
+     * Signs all items, in parallel when there is more than one.
+     *
+     * @return the results in the order of the items
+     */
+    public <T, R> List<R> sign(String objectType, List<T> items, Function<T, R> signer) {
+        return stageTimer(objectType, STAGE_SIGN).record(() -> {
+            if (executor == null || items.size() <= 1) {
+                return items.stream().map(signer).toList();
+            }
+
+            List<Future<R>> futures = new ArrayList<>(items.size());
+            for (T item : items) {
+                futures.add(executor.submit(() -> signer.apply(item)));
+            }
+            try {
+                List<R> result = new ArrayList<>(items.size());
+                for (Future<R> future : futures) {
+                    result.add(future.get());
+                }
+                return result;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                } else if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw new IllegalStateException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while signing " + objectType + " objects", e);
+            } finally {
+                futures.forEach(future -> future.cancel(true));
+            }
+        });
+    }
+
+    /**
+     * Persists the signed objects on the calling thread, timed separately from signing.
+     */
+    public <R> R persist(String objectType, Supplier<R> persistence) {
+        return stageTimer(objectType, STAGE_PERSIST).record(persistence);
+    }
+
+    private Timer stageTimer(String objectType, String stage) {
+        return Timer.builder("rpkicore.signing.stage.duration")
+            .description("time spent per stage of issuing signed objects")
+            .tag("object", objectType)
+            .tag("stage", stage)
+            .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package net.ripe.rpki.hsm;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import net.ripe.rpki.commons.crypto.util.KeyStoreException;
 import net.ripe.rpki.commons.crypto.util.KeyStoreUtil;
 import net.ripe.rpki.hsm.api.KeyStoreParameters;
@@ -11,12 +15,25 @@ import java.security.KeyStore;
 import java.util.Optional;
 
 public class Keys {
+    public static final long DEFAULT_DECODED_KEY_PAIR_CACHE_SIZE = 10_000;
+
     private static Keys instance;
 
     private final Optional<KeyStoreParameters> keyStoreParameters;
 
+    /**
+     * Decoded key pairs by keystore content, so key pairs of entities that are loaded again in a new transaction do not
+     * need to be decoded (or loaded from the HSM) again.
+     */
+    private final Cache<DecodedKeyPairKey, KeyPair> decodedKeyPairs;
+
     public Keys(Optional<KeyStoreParameters> keyStoreParameters) {
+        this(keyStoreParameters, DEFAULT_DECODED_KEY_PAIR_CACHE_SIZE);
+    }
+
+    public Keys(Optional<KeyStoreParameters> keyStoreParameters, long decodedKeyPairCacheSize) {
         this.keyStoreParameters = keyStoreParameters;
+        this.decodedKeyPairs = CacheBuilder.newBuilder().maximumSize(decodedKeyPairCacheSize).build();
     }
 
     public static Keys get() {
@@ -27,7 +44,11 @@ public class Keys {
     }
 
     public static Keys initialize(Optional<KeyStoreParameters> keyStoreParameters) {
-        instance = new Keys(keyStoreParameters);
+        return initialize(keyStoreParameters, DEFAULT_DECODED_KEY_PAIR_CACHE_SIZE);
+    }
+
+    public static Keys initialize(Optional<KeyStoreParameters> keyStoreParameters, long decodedKeyPairCacheSize) {
+        instance = new Keys(keyStoreParameters, decodedKeyPairCacheSize);
         return instance;
     }
 
@@ -40,6 +61,7 @@ public class Keys {
     }
 
     public void clearKeyStore(byte[] keyStore, String keyStoreProvider, String keyStoreType) {
+        evictKeyPair(keyStore, keyStoreProvider, keyStoreType);
         if (isDbProvider(keyStoreProvider)) {
             KeyStoreUtil.clearKeyStore(keyStore, keyStoreProvider, keyStoreType, this::loadHsmDatabaseKeyStore);
         } else {
@@ -53,6 +75,27 @@ public class Keys {
             KeyStoreUtil.getKeyPairFromKeyStore(keyStore, keyStoreProvider, keyStoreType);
     }
 
+    /**
+     * Like {@link #getKeyPairFromKeyStore(byte[], String, String)}, but returns the previously decoded key pair when
+     * a keystore with the same content was decoded before.
+     */
+    public KeyPair getCachedKeyPairFromKeyStore(byte[] keyStore, String keyStoreProvider, String keyStoreType) {
+        DecodedKeyPairKey key = DecodedKeyPairKey.of(keyStore, keyStoreProvider, keyStoreType);
+        KeyPair keyPair = decodedKeyPairs.getIfPresent(key);
+        if (keyPair == null) {
+            keyPair = getKeyPairFromKeyStore(keyStore, keyStoreProvider, keyStoreType);
+            decodedKeyPairs.put(key, keyPair);
+        }
+        return keyPair;
+    }
+
+    /**
+     * Removes the decoded key pair of a revoked or deleted key from the cache.
+     */
+    public void evictKeyPair(byte[] keyStore, String keyStoreProvider, String keyStoreType) {
+        decodedKeyPairs.invalidate(DecodedKeyPairKey.of(keyStore, keyStoreProvider, keyStoreType));
+    }
+
     public boolean isDbProvider(String keyStoreProvider) {
         return "DBProvider".equals(keyStoreProvider);
     }
@@ -73,4 +116,9 @@ public class Keys {
         }
     }
 
+    private record DecodedKeyPairKey(HashCode keyStoreHash, String keyStoreProvider, String keyStoreType) {
+        static DecodedKeyPairKey of(byte[] keyStore, String keyStoreProvider, String keyStoreType) {
+            return new DecodedKeyPairKey(Hashing.sha256().hashBytes(keyStore), keyStoreProvider, keyStoreType);
+        }
+    }
 }
@@ -5,6 +5,7 @@ import com.google.common.io.BaseEncoding;
 import net.ripe.rpki.commons.util.EqualsSupport;
 
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Optional;
 import java.util.function.Predicate;
@@ -37,6 +38,17 @@ public interface PublicationMessage {
             return BaseEncoding.base64().encode(content);
         }
 
+        public int getContentLength() {
+            return content.length;
+        }
+
+        /**
+         * Read-only view of the content, for encoders that should not copy the (potentially large) object.
+         */
+        public ByteBuffer getContentBuffer() {
+            return ByteBuffer.wrap(content).asReadOnlyBuffer();
+        }
+
         @Override
         public String toString() {
             return String.format("PublishRequest [uri=%s, hash=%s]", uri, hashToReplace.orElse("<Absent>"));
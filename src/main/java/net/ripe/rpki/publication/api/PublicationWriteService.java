@@ -3,9 +3,9 @@ package net.ripe.rpki.publication.api;
 import net.ripe.rpki.domain.PublishedObjectData;
 
 import java.io.IOException;
-import java.util.List;
+import java.util.stream.Stream;
 
 
 public interface PublicationWriteService {
-    void writeAll(List<PublishedObjectData> publishedObjects) throws IOException;
+    void writeAll(Stream<PublishedObjectData> publishedObjects) throws IOException;
 }
@@ -1,8 +1,10 @@
 package net.ripe.rpki.publication.persistence.disk;
 
+import com.google.common.hash.Hashing;
 import net.ripe.rpki.commons.util.ConfigurationUtil;
 import net.ripe.rpki.domain.PublishedObjectData;
 import net.ripe.rpki.server.api.configuration.RepositoryConfiguration;
+import net.ripe.rpki.util.Streams;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.Validate;
 import org.joda.time.DateTime;
@@ -27,11 +29,12 @@ import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
@@ -51,11 +54,20 @@ public class FileSystemPublicationObjectPersistence {
     // have their creation time as last modified time, so rsync will copy these as needed.
     public static final FileTime INTERNAL_DIRECTORY_LAST_MODIFIED_TIME = FileTime.fromMillis(0);
 
+    // Number of objects that are written in parallel before the next objects are read from the stream.
+    private static final int WRITE_CHUNK_SIZE = 10_000;
+
     private final Map<URI, Path> baseUriToBaseDir;
 
+    // Index of the most recently published target directory per base directory. Used by incremental writes to
+    // hard-link unchanged objects from the previous target directory instead of writing their content again. The
+    // index is kept in memory only, so the first run after a restart always writes all objects.
+    private final Map<Path, PublishedTree> publishedTrees = new ConcurrentHashMap<>();
+
     private final ForkJoinPool fileWriterPool = new ForkJoinPool(2 * Runtime.getRuntime().availableProcessors());
     private final long targetDirectoryRetentionPeriodMs;
     private final long targetDirectoryRetentionCopiesCount;
+    private final boolean incrementalWriteEnabled;
 
     @Inject
     public FileSystemPublicationObjectPersistence(
@@ -64,7 +76,8 @@ public class FileSystemPublicationObjectPersistence {
         @Value("${" + RepositoryConfiguration.TA_REPOSITORY_BASE_URI + "}") URI taRepositoryBaseUri,
         @Value("${" + RepositoryConfiguration.TA_REPOSITORY_BASE_DIRECTORY + "}") String taRepositoryBaseDirectory,
         @Value("${" + RepositoryConfiguration.RSYNC_TARGET_DIRECTORY_RETENTION_PERIOD_MINUTES + ":120}") long targetDirectoryRetentionPeriodMinutes,
-        @Value("${" + RepositoryConfiguration.RSYNC_TARGET_DIRECTORY_RETENTION_COPIES_COUNT + ":8}") long targetDirectoryRetentionCopiesCount
+        @Value("${" + RepositoryConfiguration.RSYNC_TARGET_DIRECTORY_RETENTION_COPIES_COUNT + ":8}") long targetDirectoryRetentionCopiesCount,
+        @Value("${" + RepositoryConfiguration.RSYNC_INCREMENTAL_WRITE_ENABLED + ":true}") boolean incrementalWriteEnabled
     ) throws IOException {
 
         baseUriToBaseDir = new LinkedHashMap<>();
@@ -73,6 +86,7 @@ public class FileSystemPublicationObjectPersistence {
 
         targetDirectoryRetentionPeriodMs = TimeUnit.MINUTES.toMillis(targetDirectoryRetentionPeriodMinutes);
         this.targetDirectoryRetentionCopiesCount = Math.max(1, targetDirectoryRetentionCopiesCount);
+        this.incrementalWriteEnabled = incrementalWriteEnabled;
 
         initialize();
     }
@@ -90,81 +104,142 @@ public class FileSystemPublicationObjectPersistence {
         }
     }
 
-    public void writeAll(List<PublishedObjectData> publishedObjects) {
-        Map<Path, List<PublishedObjectData>> byBaseDirectory = publishedObjects.stream().collect(Collectors.groupingBy(po -> publicationBaseDirectory(po.getUri())));
-        byBaseDirectory.entrySet().parallelStream().forEach(entry -> writeAllForBaseDirectory(entry.getKey(), entry.getValue()));
-    }
-
-    private void writeAllForBaseDirectory(Path baseDirectory, List<PublishedObjectData> publishedObjects) {
-        LOG.info("publishing {} objects to publication base directory {}", publishedObjects.size(), baseDirectory);
-
+    /**
+     * Writes the published objects to new target directories and atomically replaces the <code>published</code>
+     * symlink of every base directory that received objects. The objects are consumed in chunks of
+     * {@link #WRITE_CHUNK_SIZE}, so the stream can be backed by a database cursor.
+     *
+     * @return the number of objects written
+     */
+    public long writeAll(Stream<PublishedObjectData> publishedObjects) {
         long now = DateTimeUtils.currentTimeMillis();
+        Map<Path, TargetDirectoryWriter> writers = new LinkedHashMap<>();
         try {
-            Path targetDirectory = writeObjectsToNewTargetDirectory(now, baseDirectory, publishedObjects);
+            Streams.chunked(publishedObjects, WRITE_CHUNK_SIZE).forEach(chunk -> {
+                // Determine base directories (and create target directory writers) on the calling thread, so
+                // that invalid URIs and existing target directories are reported directly to the caller.
+                List<TargetDirectoryWriter> chunkWriters = chunk.stream()
+                    .map(po -> writers.computeIfAbsent(publicationBaseDirectory(po.getUri()), baseDirectory -> new TargetDirectoryWriter(now, baseDirectory)))
+                    .toList();
+                fileWriterPool.submit(() -> IntStream.range(0, chunk.size()).parallel().forEach(i -> chunkWriters.get(i).write(chunk.get(i)))).join();
+            });
+
+            writers.values().parallelStream().forEach(writer -> {
+                try {
+                    PublishedTree publishedTree = writer.complete();
+
+                    atomicallyReplacePublishedSymlink(writer.baseDirectory, publishedTree.targetDirectory());
+                    if (incrementalWriteEnabled) {
+                        publishedTrees.put(writer.baseDirectory, publishedTree);
+                    }
 
-            atomicallyReplacePublishedSymlink(baseDirectory, targetDirectory);
+                    cleanupOldTargetDirectories(now, writer.baseDirectory);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
 
-            cleanupOldTargetDirectories(now, baseDirectory);
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
+            return writers.values().stream().mapToLong(writer -> writer.objectCount.get()).sum();
+        } finally {
+            writers.values().forEach(TargetDirectoryWriter::deleteTemporaryDirectory);
         }
     }
 
-    private Path writeObjectsToNewTargetDirectory(long now, Path baseDirectory, List<PublishedObjectData> publishedObjects) throws IOException {
-        String formattedNow = new DateTime(now, DateTimeZone.UTC).toString(ISODateTimeFormat.dateTime());
+    /**
+     * Writes the objects of a single base directory into a temporary directory that is renamed to the new target
+     * directory once all objects are written. {@link #write(PublishedObjectData)} is safe to call concurrently.
+     */
+    private class TargetDirectoryWriter {
+        private final long now;
+        private final Path baseDirectory;
+        private final Path targetDirectory;
+        private final Path temporaryDirectory;
+        private final PublishedTree linkSource;
+
+        private final Map<Path, Boolean> createdDirectories = new ConcurrentHashMap<>();
+        private final Map<String, ObjectFingerprint> index = new ConcurrentHashMap<>();
+        private final AtomicLong objectCount = new AtomicLong();
+        private final AtomicLong linkedCount = new AtomicLong();
+
+        TargetDirectoryWriter(long now, Path baseDirectory) {
+            this.now = now;
+            this.baseDirectory = baseDirectory;
+
+            String formattedNow = new DateTime(now, DateTimeZone.UTC).toString(ISODateTimeFormat.dateTime());
+            this.targetDirectory = baseDirectory.resolve("published-" + formattedNow);
+            if (Files.exists(targetDirectory)) {
+                throw new IllegalStateException("target directory " + targetDirectory + " already exists");
+            }
 
-        Path targetDirectory = baseDirectory.resolve("published-" + formattedNow);
-        if (Files.exists(targetDirectory)) {
-            throw new IllegalStateException("target directory " + targetDirectory + " already exists");
-        }
+            // Only link from the previous target directory when it is still present, it may have been removed by
+            // an operator or by the cleanup of old target directories.
+            PublishedTree previousTree = incrementalWriteEnabled ? publishedTrees.get(baseDirectory) : null;
+            this.linkSource = previousTree != null && Files.isDirectory(previousTree.targetDirectory()) ? previousTree : null;
 
-        Path temporaryDirectory = Files.createTempDirectory(baseDirectory, "tmp-" + formattedNow + "-");
-        try {
+            LOG.info("publishing objects to publication base directory {}", baseDirectory);
+            try {
+                this.temporaryDirectory = Files.createTempDirectory(baseDirectory, "tmp-" + formattedNow + "-");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
 
-            LOG.debug("Creating internal directories for {}", baseDirectory);
-            Set<Path> directories = publishedObjects.stream().map(po -> temporaryLocation(temporaryDirectory, po.getUri()).getParent()).collect(Collectors.toSet());
-            fileWriterPool.submit(() -> directories.parallelStream().forEach(directory -> {
-                try {
-                     Files.createDirectories(directory);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            })).join();
+        void write(PublishedObjectData object) {
+            try {
+                String relativeLocation = relativeLocation(object.getUri());
+                Path file = temporaryDirectory.resolve(relativeLocation);
+                createdDirectories.computeIfAbsent(file.getParent(), directory -> {
+                    try {
+                        Files.createDirectories(directory);
+                        return Boolean.TRUE;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
 
-            LOG.debug("writing {} published object files for {}", publishedObjects.size(), baseDirectory);
-            fileWriterPool.submit(() -> publishedObjects.parallelStream().forEach((object) -> {
-                try {
-                    Path file = temporaryLocation(temporaryDirectory, object.getUri());
+                ObjectFingerprint fingerprint = incrementalWriteEnabled ? ObjectFingerprint.of(object) : null;
+                if (linkSource != null && linkUnchangedObject(linkSource, relativeLocation, fingerprint, object, file)) {
+                    linkedCount.incrementAndGet();
+                } else {
                     Files.write(file, object.getContent());
                     // rsync relies on the correct timestamp for fast synchronization
                     Files.setLastModifiedTime(file, FileTime.fromMillis(object.getCreatedAt().toEpochMilli()));
-                } catch (IOException e) {
-                    throw new UncheckedIOException(e);
                 }
-            })).join();
+                if (fingerprint != null) {
+                    index.put(relativeLocation, fingerprint);
+                }
+                objectCount.incrementAndGet();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
 
+        PublishedTree complete() throws IOException {
             // Set all internal directory last modified times to epoch so that rsync does not see the directories
             // as changed, only the objects contained in the directories.
             LOG.debug("setting last modification time of internal directories of {} to {}", baseDirectory, INTERNAL_DIRECTORY_LAST_MODIFIED_TIME);
-            try (Stream<Path> paths = Files.walk(temporaryDirectory)) {
-                fileWriterPool.submit(() -> paths.parallel().filter(Files::isDirectory).forEach(directory -> {
+            fileWriterPool.submit(() -> createdDirectories.keySet().parallelStream().forEach(directory -> {
+                // Also include the intermediate directories created by `Files.createDirectories`
+                for (Path path = directory; !path.equals(temporaryDirectory); path = path.getParent()) {
                     try {
-                        Files.setLastModifiedTime(directory, INTERNAL_DIRECTORY_LAST_MODIFIED_TIME);
+                        Files.setLastModifiedTime(path, INTERNAL_DIRECTORY_LAST_MODIFIED_TIME);
                     } catch (IOException e) {
                         throw new UncheckedIOException(e);
                     }
-                })).join();
-            }
+                }
+            })).join();
 
             // Directory write is fully complete, rename temporary to target directory name
             Files.setLastModifiedTime(temporaryDirectory, FileTime.fromMillis(now));
             Files.setPosixFilePermissions(temporaryDirectory, PosixFilePermissions.fromString("rwxr-xr-x"));
             Files.move(temporaryDirectory, targetDirectory, ATOMIC_MOVE);
 
-            LOG.info("published {} objects to {}", publishedObjects.size(), targetDirectory);
+            LOG.info("published {} objects to {} ({} linked from previous target directory)", objectCount.get(), targetDirectory, linkedCount.get());
 
-            return targetDirectory;
-        } finally {
+            return new PublishedTree(targetDirectory, index);
+        }
+
+        void deleteTemporaryDirectory() {
             try {
                 FileUtils.deleteDirectory(temporaryDirectory.toFile());
             } catch (IOException ignored) {
@@ -172,6 +247,30 @@ public class FileSystemPublicationObjectPersistence {
         }
     }
 
+    /**
+     * Hard-links the object from the previous target directory when its content and creation time did not change.
+     * Published files are never modified in place (every write creates a new file), so sharing the inode between
+     * target directories is safe.
+     *
+     * @return true when the object was linked, false when the content must be written
+     */
+    private boolean linkUnchangedObject(PublishedTree previousTree, String relativeLocation, ObjectFingerprint fingerprint, PublishedObjectData object, Path file) {
+        if (!fingerprint.equals(previousTree.index().get(relativeLocation))) {
+            return false;
+        }
+        Path existing = previousTree.targetDirectory().resolve(relativeLocation);
+        try {
+            if (Files.size(existing) != object.getContent().length) {
+                return false;
+            }
+            Files.createLink(file, existing);
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            LOG.debug("could not link {} from previous target directory, writing content instead", existing, e);
+            return false;
+        }
+    }
+
     private void atomicallyReplacePublishedSymlink(Path baseDirectory, Path targetDirectory) throws IOException {
         Path targetSymlink = baseDirectory.resolve("published");
 
@@ -243,7 +342,7 @@ public class FileSystemPublicationObjectPersistence {
         throw new IllegalArgumentException("URI does not match known base locations: " + uri);
     }
 
-    private Path temporaryLocation(Path temporaryDirectory, URI uri) {
+    private String relativeLocation(URI uri) {
         if (!uri.isAbsolute()) {
             throw new IllegalArgumentException("URI must be relative: " + uri);
         }
@@ -251,10 +350,23 @@ public class FileSystemPublicationObjectPersistence {
         for (URI baseUri : baseUriToBaseDir.keySet()) {
             URI relative = baseUri.relativize(uri);
             if (!relative.isAbsolute()) {
-                return temporaryDirectory.resolve(relative.toString());
+                return relative.toString();
             }
         }
 
         throw new IllegalArgumentException("URI does not match known base locations: " + uri);
     }
+
+    private record PublishedTree(Path targetDirectory, Map<String, ObjectFingerprint> index) {
+    }
+
+    private record ObjectFingerprint(String sha256, long createdAtMillis) {
+        /**
+         * Uses the hash stored with the object when available, so the content of unchanged objects is not hashed.
+         */
+        static ObjectFingerprint of(PublishedObjectData object) {
+            String sha256 = object.getSha256() != null ? object.getSha256() : Hashing.sha256().hashBytes(object.getContent()).toString();
+            return new ObjectFingerprint(sha256, object.getCreatedAt().toEpochMilli());
+        }
+    }
 }
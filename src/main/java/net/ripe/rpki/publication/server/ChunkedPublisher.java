@@ -0,0 +1,162 @@
+package net.ripe.rpki.publication.server;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import net.ripe.rpki.publication.api.PublicationMessage;
+import net.ripe.rpki.publication.api.PublicationMessage.PublishRequest;
+import net.ripe.rpki.publication.api.PublicationMessage.WithdrawRequest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Sends publication messages to a single publication server in chunks that are limited by message count and
+ * (estimated) request size. Up to <code>maxInFlight</code> chunks are sent concurrently, adding messages blocks while
+ * this many chunks are in flight so that the number of messages held in memory stays bounded.
+ * <p>
+ * Every chunk is retried independently, so chunks that were already accepted by the publication server are not
+ * sent again when a later chunk fails. Messages are added from a single thread.
+ */
+@Slf4j
+public class ChunkedPublisher {
+
+    // Approximate size of the XML markup around a message (element name, attributes, hash)
+    private static final int MESSAGE_OVERHEAD_BYTES = 200;
+    private static final Duration RETRY_BACKOFF = Duration.ofSeconds(1);
+
+    private final ExternalPublishingServer externalPublishingServer;
+    private final String clientId;
+    private final Config config;
+    private final Executor executor;
+    private final Consumer<List<? extends PublicationMessage>> replyHandler;
+    private final Semaphore inFlight;
+
+    private final List<CompletableFuture<Void>> sentChunks = new ArrayList<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    private List<PublicationMessage> chunk = new ArrayList<>();
+    private long chunkBytes = 0;
+    @Getter
+    private int chunkCount = 0;
+    @Getter
+    private long messageCount = 0;
+
+    /**
+     * @param maxMessages maximum number of messages in a single request
+     * @param maxBytes    maximum (estimated) size of a single request in bytes
+     * @param maxInFlight maximum number of concurrent requests to the publication server
+     * @param maxAttempts maximum number of times a request is attempted before the publication fails
+     */
+    public record Config(int maxMessages, long maxBytes, int maxInFlight, int maxAttempts) {
+        public Config {
+            if (maxMessages <= 0 || maxBytes <= 0 || maxInFlight <= 0 || maxAttempts <= 0) {
+                throw new IllegalArgumentException("publication request chunking settings must be positive: " + this);
+            }
+        }
+    }
+
+    public ChunkedPublisher(ExternalPublishingServer externalPublishingServer, String clientId, Config config,
+                            Executor executor, Consumer<List<? extends PublicationMessage>> replyHandler) {
+        this.externalPublishingServer = externalPublishingServer;
+        this.clientId = clientId;
+        this.config = config;
+        this.executor = executor;
+        this.replyHandler = replyHandler;
+        this.inFlight = new Semaphore(config.maxInFlight());
+    }
+
+    /**
+     * Adds a message to the current chunk, sending the chunk when it is full. Messages are dropped once a chunk
+     * failed, the failure is reported by {@link #finish()}.
+     */
+    public void add(PublicationMessage message) {
+        if (isFailed()) {
+            return;
+        }
+        chunk.add(message);
+        chunkBytes += estimatedSize(message);
+        messageCount++;
+        if (chunk.size() >= config.maxMessages() || chunkBytes >= config.maxBytes()) {
+            sendChunk();
+        }
+    }
+
+    public boolean isFailed() {
+        return failure.get() != null;
+    }
+
+    /**
+     * Sends the last (partial) chunk and waits until all chunks are processed by the publication server.
+     *
+     * @throws java.util.concurrent.CompletionException when any chunk failed after all attempts
+     */
+    public void finish() {
+        if (!isFailed()) {
+            sendChunk();
+        }
+        CompletableFuture.allOf(sentChunks.toArray(new CompletableFuture[0])).join();
+    }
+
+    private void sendChunk() {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        List<PublicationMessage> messages = chunk;
+        int chunkNumber = ++chunkCount;
+        chunk = new ArrayList<>();
+        chunkBytes = 0;
+
+        inFlight.acquireUninterruptibly();
+        try {
+            sentChunks.add(CompletableFuture
+                .runAsync(() -> sendWithRetries(chunkNumber, messages), executor)
+                .whenComplete((result, throwable) -> {
+                    inFlight.release();
+                    if (throwable != null) {
+                        failure.compareAndSet(null, throwable);
+                    }
+                }));
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    private void sendWithRetries(int chunkNumber, List<PublicationMessage> messages) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                replyHandler.accept(externalPublishingServer.execute(messages, clientId));
+                return;
+            } catch (RuntimeException e) {
+                if (attempt >= config.maxAttempts() || isFailed()) {
+                    log.error("Sending chunk {} ({} messages) to {} failed after {} attempt(s)", chunkNumber, messages.size(), externalPublishingServer.getPublishingServerUrl(), attempt);
+                    throw e;
+                }
+                log.warn("Sending chunk {} ({} messages) to {} failed (attempt {} of {}), retrying: {}", chunkNumber, messages.size(), externalPublishingServer.getPublishingServerUrl(), attempt, config.maxAttempts(), e.toString());
+                try {
+                    Thread.sleep(RETRY_BACKOFF.multipliedBy(attempt).toMillis());
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private static long estimatedSize(PublicationMessage message) {
+        long size = MESSAGE_OVERHEAD_BYTES;
+        if (message instanceof PublishRequest publish) {
+            size += publish.getUri().toString().length() + 4L * ((publish.getContentLength() + 2) / 3);
+        } else if (message instanceof WithdrawRequest withdraw) {
+            size += withdraw.getUri().toString().length();
+        }
+        return size;
+    }
+}
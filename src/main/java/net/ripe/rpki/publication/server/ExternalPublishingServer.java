@@ -1,6 +1,6 @@
 package net.ripe.rpki.publication.server;
 
-import com.jamesmurty.utils.XMLBuilder;
+import com.google.common.io.CountingOutputStream;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
@@ -16,30 +16,27 @@ import net.ripe.rpki.publication.api.PublicationMessage.PublishReply;
 import net.ripe.rpki.publication.api.PublicationMessage.PublishRequest;
 import net.ripe.rpki.publication.api.PublicationMessage.WithdrawReply;
 import net.ripe.rpki.publication.api.PublicationMessage.WithdrawRequest;
+import org.springframework.core.io.buffer.DataBufferUtils;
 
-import javax.xml.namespace.QName;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.events.Characters;
-import javax.xml.stream.events.EndElement;
-import javax.xml.stream.events.StartElement;
-import javax.xml.stream.events.XMLEvent;
-import javax.xml.transform.TransformerException;
-import java.io.StringReader;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 @Slf4j
@@ -50,6 +47,11 @@ public class ExternalPublishingServer {
     private static final String OP_TAG_NAME_LIST = "list";
     private static final String OP_TAG_NAME_REPORT_ERROR = "report_error";
 
+    // Number of response buffers requested ahead of the parser
+    private static final int RESPONSE_BUFFER_DEMAND = 16;
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = createXmlInputFactory();
+
     private static final String METRIC_TAG_STATUS = "status";
     private static final String METRIC_TAG_PUBLICATION = "publication";
     private static final String METRIC_TAG_URI = "uri";
@@ -112,6 +114,14 @@ public class ExternalPublishingServer {
         failedPublishTime = createTimer(meterRegistry, "failure");
     }
 
+    private static XMLInputFactory createXmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newDefaultFactory();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
     private Counter createWithdrawCounter(MeterRegistry meterRegistry, ObjectType objectType) {
         return createCounter(meterRegistry, OP_TAG_NAME_WITHDRAW, objectType,
             "The number of withdraw messages sent to RRDP repository");
@@ -148,6 +158,36 @@ public class ExternalPublishingServer {
             log.warn("Publishing server client is not properly initialized.");
             return Collections.emptyList();
         }
+        final List<PublicationMessage> replies = new ArrayList<>();
+        send(messages, clientId, response -> parseResponse(response, replies::add, (uri, hash) -> replies.add(new ListReply(uri, hash))));
+        final long failureCount = replies.stream().filter(PublicationMessage.isErrorReply).count();
+        incrementCounters(replies.size() - failureCount, failureCount);
+        return replies;
+    }
+
+    /**
+     * Lists the objects on the publication server for the client. The list reply is parsed while it is received, so
+     * only the resulting map of URI to (hex encoded) hash is kept in memory.
+     *
+     * @throws IllegalStateException when the publication server replies with an error
+     */
+    public Map<URI, String> listObjects(String clientId) {
+        if (publishingServerClient == null) {
+            log.warn("Publishing server client is not properly initialized.");
+            return Collections.emptyMap();
+        }
+        final Map<URI, String> objects = new HashMap<>();
+        final List<PublicationMessage> otherReplies = new ArrayList<>();
+        send(Collections.singletonList(new ListRequest()), clientId, response -> parseResponse(response, otherReplies::add, objects::put));
+        final List<PublicationMessage> errors = otherReplies.stream().filter(PublicationMessage.isErrorReply).toList();
+        incrementCounters(objects.size(), errors.size());
+        if (!errors.isEmpty()) {
+            throw new IllegalStateException("Publishing server " + publishingServerUrl + " replied with errors to list request: " + errors);
+        }
+        return objects;
+    }
+
+    private void send(List<? extends PublicationMessage> messages, String clientId, ResponseHandler responseHandler) {
         final StringBuilder logMessage = new StringBuilder();
         if (log.isInfoEnabled()) {
             logMessage.append("Sending to publishing server [")
@@ -156,29 +196,18 @@ public class ExternalPublishingServer {
         }
 
         try {
-            final XMLBuilder xml = XMLBuilder
-                    .create("msg", "http://www.hactrn.net/uris/rpki/publication-spec/")
-                    .a("version", "3")
-                    .a("type", "query");
             for (PublicationMessage publicationMessage : messages) {
-                if (publicationMessage instanceof PublishRequest) {
-                    final PublishRequest publish = (PublishRequest) publicationMessage;
-                    final XMLBuilder elem = xml.e(OP_TAG_NAME_PUBLISH).a("uri", publish.getUri().toString());
-                    publish.hashToReplace.ifPresent(s -> elem.a("hash", s));
-                    elem.t(publish.getBase64Content());
+                if (publicationMessage instanceof PublishRequest publish) {
                     if (log.isInfoEnabled()) {
                         logMessage.append('\t').append(publish.toLogMessage()).append('\n');
                     }
                     oneMorePublish(publish.getUri());
-                } else if (publicationMessage instanceof WithdrawRequest) {
-                    final WithdrawRequest withdraw = (WithdrawRequest) publicationMessage;
-                    xml.e(OP_TAG_NAME_WITHDRAW).a("uri", withdraw.getUri().toString()).a("hash", withdraw.hash);
+                } else if (publicationMessage instanceof WithdrawRequest withdraw) {
                     if (log.isInfoEnabled()) {
                         logMessage.append('\t').append(withdraw).append('\n');
                     }
                     oneMoreWithdraw(withdraw.getUri());
                 } else if (publicationMessage instanceof ListRequest) {
-                    xml.e(OP_TAG_NAME_LIST);
                     if (log.isInfoEnabled()) {
                         logMessage.append('\t').append(publicationMessage).append('\n');
                     }
@@ -186,17 +215,25 @@ public class ExternalPublishingServer {
             }
 
             log.info(logMessage.toString());
-            String xmlRequest = xml.asString();
 
-            rrdpDataSent.increment(xmlRequest.getBytes(StandardCharsets.UTF_8).length);
+            final PublishingServerClient.RequestBody xmlRequest = out -> {
+                CountingOutputStream counting = new CountingOutputStream(out);
+                try {
+                    PublicationRequestEncoder.write(messages, counting);
+                } catch (XMLStreamException e) {
+                    throw new IOException(e);
+                }
+                rrdpDataSent.increment(counting.getCount());
+            };
 
             rrdpParallelPublishes.incrementAndGet();
             boolean succeeded = false;
 
-            final String postResponse;
             long begin = System.nanoTime();
-            try {
-                postResponse = publishingServerClient.publish(publishingServerUrl, xmlRequest, clientId).block();
+            try (InputStream response = DataBufferUtils.subscriberInputStream(
+                publishingServerClient.publish(publishingServerUrl, xmlRequest, clientId), RESPONSE_BUFFER_DEMAND)) {
+                log.debug("Parsing the publishing server response");
+                responseHandler.handle(response);
                 succeeded = true;
             } finally {
                 long end = System.nanoTime();
@@ -208,10 +245,7 @@ public class ExternalPublishingServer {
                 }
                 rrdpParallelPublishes.decrementAndGet();
             }
-
-            log.debug("Parsing the publishing server response");
-            return incrementCounters(parseResponse(postResponse));
-        } catch (ParserConfigurationException | TransformerException | XMLStreamException | URISyntaxException e) {
+        } catch (IOException | XMLStreamException | URISyntaxException e) {
             // consider all messages failed
             rrdpPublicationFailures.increment(messages.size());
             throw new RuntimeException(e);
@@ -243,60 +277,57 @@ public class ExternalPublishingServer {
         });
     }
 
-    private List<? extends PublicationMessage> incrementCounters(List<? extends PublicationMessage> replies) {
-        final long failureCount = replies.stream()
-            .filter(reply -> reply instanceof ErrorReply)
-            .count();
+    private void incrementCounters(long successCount, long failureCount) {
         rrdpPublicationFailures.increment(failureCount);
-        rrdpPublicationSuccesses.increment(replies.size() - failureCount);
-        return replies;
+        rrdpPublicationSuccesses.increment(successCount);
     }
 
-    private List<? extends PublicationMessage> parseResponse(String response) throws XMLStreamException, URISyntaxException {
-        final List<PublicationMessage> replies = new ArrayList<>();
-        final XMLEventReader reader = XMLInputFactory.newInstance().createXMLEventReader(new StringReader(response));
-        String errorCode = null;
-        final QName uriAttrName = new QName("uri");
-        final QName hashAttrName = new QName("hash");
-        final QName errorAttrName = new QName("error_code");
-
-        while (reader.hasNext()) {
-            final XMLEvent event = reader.nextEvent();
-            switch (event.getEventType()) {
-                case XMLStreamConstants.START_ELEMENT:
-                    StartElement startElement = event.asStartElement();
-                    if (OP_TAG_NAME_PUBLISH.equals(startElement.getName().getLocalPart())) {
-                        final String uri = startElement.getAttributeByName(uriAttrName).getValue();
-                        replies.add(new PublishReply(new URI(uri)));
-                    } else if (OP_TAG_NAME_WITHDRAW.equals(startElement.getName().getLocalPart())) {
-                        final String uri = startElement.getAttributeByName(uriAttrName).getValue();
-                        replies.add(new WithdrawReply(new URI(uri)));
-                    } else if (OP_TAG_NAME_LIST.equals(startElement.getName().getLocalPart())) {
-                        final String uri = startElement.getAttributeByName(uriAttrName).getValue();
-                        final String hash = startElement.getAttributeByName(hashAttrName).getValue();
-                        replies.add(new ListReply(new URI(uri), hash));
-                    } else if (OP_TAG_NAME_REPORT_ERROR.equals(startElement.getName().getLocalPart())) {
-                        errorCode = startElement.getAttributeByName(errorAttrName).getValue();
-                    }
-                    break;
-
-                case XMLStreamConstants.END_ELEMENT:
-                    EndElement endElement = event.asEndElement();
-                    if (OP_TAG_NAME_REPORT_ERROR.equals(endElement.getName().getLocalPart())) {
-                        errorCode = null;
-                    }
-                    break;
-
-                case XMLStreamConstants.CHARACTERS:
-                    Characters characters = event.asCharacters();
-                    final String tagContent = characters.getData().trim();
-                    if (errorCode != null) {
-                        replies.add(new ErrorReply(errorCode, tagContent));
-                    }
-                    break;
+    /**
+     * Parses the reply using a cursor, so no event objects are allocated per node. List replies are passed to the
+     * <code>listReplyHandler</code> as URI and hash, all other replies to the <code>replyHandler</code>.
+     */
+    private void parseResponse(InputStream response,
+                               Consumer<PublicationMessage> replyHandler,
+                               BiConsumer<URI, String> listReplyHandler) throws XMLStreamException, URISyntaxException {
+        final XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(response);
+        try {
+            String errorCode = null;
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        final String startElement = reader.getLocalName();
+                        if (OP_TAG_NAME_PUBLISH.equals(startElement)) {
+                            replyHandler.accept(new PublishReply(new URI(reader.getAttributeValue(null, "uri"))));
+                        } else if (OP_TAG_NAME_WITHDRAW.equals(startElement)) {
+                            replyHandler.accept(new WithdrawReply(new URI(reader.getAttributeValue(null, "uri"))));
+                        } else if (OP_TAG_NAME_LIST.equals(startElement)) {
+                            listReplyHandler.accept(new URI(reader.getAttributeValue(null, "uri")), reader.getAttributeValue(null, "hash"));
+                        } else if (OP_TAG_NAME_REPORT_ERROR.equals(startElement)) {
+                            errorCode = reader.getAttributeValue(null, "error_code");
+                        }
+                        break;
+
+                    case XMLStreamConstants.END_ELEMENT:
+                        if (OP_TAG_NAME_REPORT_ERROR.equals(reader.getLocalName())) {
+                            errorCode = null;
+                        }
+                        break;
+
+                    case XMLStreamConstants.CHARACTERS:
+                        if (errorCode != null) {
+                            replyHandler.accept(new ErrorReply(errorCode, reader.getText().trim()));
+                        }
+                        break;
+                }
             }
+        } finally {
+            reader.close();
         }
-        return replies;
+    }
+
+    @FunctionalInterface
+    private interface ResponseHandler {
+        void handle(InputStream response) throws IOException, XMLStreamException, URISyntaxException;
     }
 
     @AllArgsConstructor
@@ -10,7 +10,7 @@ import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
-import java.util.List;
+import java.util.stream.Stream;
 
 @Service
 @Slf4j
@@ -27,13 +27,13 @@ public class FSPublicationServer implements PublicationWriteService {
     }
 
     @Override
-    public void writeAll(List<PublishedObjectData> publishedObjects) throws IOException {
+    public void writeAll(Stream<PublishedObjectData> publishedObjects) throws IOException {
         try {
-            publicationMetrics.getRsyncPublicationTimer().record(() ->
+            long count = publicationMetrics.getRsyncPublicationTimer().record(() ->
                     fileSystemPublicationObjectPersistence.writeAll(publishedObjects));
-            publicationMetrics.setPublishedObjectCount(publishedObjects.size());
+            publicationMetrics.setPublishedObjectCount(count);
             publicationMetrics.getRsyncPublicationSuccesses().increment();
-            log.info("successfully published {} objects", publishedObjects.size());
+            log.info("successfully published {} objects", count);
         } catch (UncheckedIOException e) {
             publicationMetrics.getRsyncPublicationFailures().increment();
             throw e.getCause();
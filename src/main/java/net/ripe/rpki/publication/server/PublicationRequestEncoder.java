@@ -0,0 +1,107 @@
+package net.ripe.rpki.publication.server;
+
+import net.ripe.rpki.publication.api.PublicationMessage;
+import net.ripe.rpki.publication.api.PublicationMessage.ListRequest;
+import net.ripe.rpki.publication.api.PublicationMessage.PublishRequest;
+import net.ripe.rpki.publication.api.PublicationMessage.WithdrawRequest;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Writes publication protocol (RFC 8181) query messages directly to an output stream.
+ * <p>
+ * Unlike building a DOM and serializing it to a string, the size of the in-memory state does not depend on the number
+ * of messages: the base64 content of each publish element is encoded in small chunks straight from the object bytes.
+ */
+public class PublicationRequestEncoder {
+
+    static final String PUBLICATION_NAMESPACE = "http://www.hactrn.net/uris/rpki/publication-spec/";
+
+    private static final String OP_TAG_NAME_PUBLISH = "publish";
+    private static final String OP_TAG_NAME_WITHDRAW = "withdraw";
+    private static final String OP_TAG_NAME_LIST = "list";
+
+    // Must be a multiple of three so that no padding is emitted in the middle of the content.
+    private static final int BASE64_INPUT_CHUNK_SIZE = 3 * 1024;
+    private static final int BASE64_OUTPUT_CHUNK_SIZE = 4 * 1024;
+
+    private static final Base64.Encoder BASE64 = Base64.getEncoder();
+
+    private final XMLStreamWriter writer;
+
+    private final byte[] base64Input = new byte[BASE64_INPUT_CHUNK_SIZE];
+    private final byte[] base64Output = new byte[BASE64_OUTPUT_CHUNK_SIZE];
+    private final char[] base64Chars = new char[BASE64_OUTPUT_CHUNK_SIZE];
+
+    private PublicationRequestEncoder(XMLStreamWriter writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Writes the query message to the output stream as UTF-8. The output stream is flushed, but not closed.
+     */
+    public static void write(List<? extends PublicationMessage> messages, OutputStream out) throws XMLStreamException {
+        XMLStreamWriter writer = XMLOutputFactory.newDefaultFactory().createXMLStreamWriter(out, StandardCharsets.UTF_8.name());
+        try {
+            new PublicationRequestEncoder(writer).writeQuery(messages);
+            writer.flush();
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void writeQuery(List<? extends PublicationMessage> messages) throws XMLStreamException {
+        if (messages.isEmpty()) {
+            writer.writeEmptyElement("msg");
+        } else {
+            writer.writeStartElement("msg");
+        }
+        writer.writeAttribute("type", "query");
+        writer.writeAttribute("version", "3");
+        writer.writeDefaultNamespace(PUBLICATION_NAMESPACE);
+
+        for (PublicationMessage message : messages) {
+            if (message instanceof PublishRequest publish) {
+                writePublish(publish);
+            } else if (message instanceof WithdrawRequest withdraw) {
+                writer.writeEmptyElement(OP_TAG_NAME_WITHDRAW);
+                writer.writeAttribute("hash", withdraw.hash);
+                writer.writeAttribute("uri", withdraw.getUri().toString());
+            } else if (message instanceof ListRequest) {
+                writer.writeEmptyElement(OP_TAG_NAME_LIST);
+            }
+        }
+
+        writer.writeEndDocument();
+    }
+
+    private void writePublish(PublishRequest publish) throws XMLStreamException {
+        writer.writeStartElement(OP_TAG_NAME_PUBLISH);
+        if (publish.hashToReplace.isPresent()) {
+            writer.writeAttribute("hash", publish.hashToReplace.get());
+        }
+        writer.writeAttribute("uri", publish.getUri().toString());
+
+        ByteBuffer content = publish.getContentBuffer();
+        while (content.hasRemaining()) {
+            int length = Math.min(base64Input.length, content.remaining());
+            content.get(base64Input, 0, length);
+            byte[] input = length == base64Input.length ? base64Input : Arrays.copyOf(base64Input, length);
+            int encodedLength = BASE64.encode(input, base64Output);
+            for (int i = 0; i < encodedLength; i++) {
+                base64Chars[i] = (char) base64Output[i];
+            }
+            writer.writeCharacters(base64Chars, 0, encodedLength);
+        }
+
+        writer.writeEndElement();
+    }
+}
@@ -3,12 +3,21 @@ package net.ripe.rpki.publication.server;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.util.UriComponentsBuilder;
-import reactor.core.publisher.Mono;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
 
 @Component
@@ -25,14 +34,35 @@ public class PublishingServerClient {
         this.client = publishingClient;
     }
 
-    public Mono<String> publish(URI publishingServerUrl, String xml, String clientId) {
+    /**
+     * Posts the request to the publishing server. The request body is written on a bounded elastic worker while it is
+     * being sent, so the full request is never held in memory. Likewise, the response body is returned as a stream of
+     * buffers so that large (list) replies can be parsed incrementally.
+     */
+    public Flux<DataBuffer> publish(URI publishingServerUrl, RequestBody requestBody, String clientId) {
         URI uri = UriComponentsBuilder.fromUri(publishingServerUrl).queryParam(CLIENT_ID_PARAM, clientId).build().toUri();
+        Publisher<DataBuffer> body = DataBufferUtils.outputStreamPublisher(
+            out -> {
+                try {
+                    requestBody.writeTo(out);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            },
+            DefaultDataBufferFactory.sharedInstance,
+            task -> Schedulers.boundedElastic().schedule(task)
+        );
         return client.post()
                 .uri(uri)
                 .accept(PUBLICATION_MEDIA_TYPE)
                 .contentType(PUBLICATION_MEDIA_TYPE)
-                .bodyValue(xml)
+                .body(BodyInserters.fromDataBuffers(body))
                 .retrieve()
-                .bodyToMono(String.class);
+                .bodyToFlux(DataBuffer.class);
+    }
+
+    @FunctionalInterface
+    public interface RequestBody {
+        void writeTo(OutputStream out) throws IOException;
     }
 }
@@ -1,6 +1,7 @@
 package net.ripe.rpki.ripencc.cache;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import net.ripe.ipresource.ImmutableResourceSet;
@@ -10,6 +11,7 @@ import net.ripe.rpki.server.api.configuration.RepositoryConfiguration;
 import net.ripe.rpki.server.api.ports.DelegationsCache;
 import net.ripe.rpki.server.api.ports.ResourceCache;
 import net.ripe.rpki.server.api.support.objects.CaName;
+import org.hibernate.Session;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -18,19 +20,39 @@ import jakarta.persistence.PersistenceContext;
 import net.ripe.rpki.server.api.dto.OutgoingResourceCertificateStatus;
 
 import javax.security.auth.x500.X500Principal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.PreparedStatement;
 import java.time.Instant;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+/**
+ * Resource cache stored in the database. Parsed resource sets are kept in memory (the production CA delegations
+ * consist of many ranges and are needed for every certificate issued by the production CA) for as long as the
+ * cache generation stored in the database does not change. Every update of the cache stores a new generation.
+ */
 @Slf4j
 @Component
 public class JpaResourceCacheImpl implements ResourceCache, DelegationsCache {
 
     private static final String RESOURCE_CACHE_UPDATE_KEY = "last_resource_cache_update";
+    private static final String RESOURCE_CACHE_GENERATION_KEY = "resource_cache_generation";
+    private static final HexFormat HEX = HexFormat.of();
 
     private final PropertyEntityRepository propertyEntityRepository;
 
@@ -40,6 +62,8 @@ public class JpaResourceCacheImpl implements ResourceCache, DelegationsCache {
     @Getter
     private final CaName productionCaName;
 
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+
     @Autowired
     public JpaResourceCacheImpl(PropertyEntityRepository propertyEntityRepository,
                                 RepositoryConfiguration configuration) {
@@ -79,17 +103,55 @@ public class JpaResourceCacheImpl implements ResourceCache, DelegationsCache {
 
     @Override
     public Optional<ImmutableResourceSet> lookupResources(final CaName member) {
-        var row = (Object[]) entityManager
-            .createNativeQuery("SELECT EXISTS(SELECT 1 FROM resource_cache WHERE name = :productionCaName), (SELECT resources FROM resource_cache WHERE name = :member)")
-            .setParameter("productionCaName", productionCaName.toString())
-            .setParameter("member", member.toString())
-            .getSingleResult();
-        var available = (boolean) row[0];
-        if (!available) {
-            return Optional.empty();
+        Snapshot current = currentSnapshot();
+        if (current.productionResources().isEmpty() || member.equals(productionCaName)) {
+            return current.productionResources();
+        }
+        ImmutableResourceSet resources = current.memberResources().get(member);
+        if (resources == null) {
+            resources = queryResources(member).orElse(ImmutableResourceSet.empty());
+            current.memberResources().put(member, resources);
+        }
+        return Optional.of(resources);
+    }
+
+    private Snapshot currentSnapshot() {
+        Optional<String> generation = queryGeneration();
+        Snapshot current = snapshot.get();
+        if (current != null && generation.isPresent() && generation.get().equals(current.generation())) {
+            return current;
         }
-        String resources = Objects.requireNonNullElse((String) row[1], "");
-        return Optional.of(ImmutableResourceSet.parse(resources));
+
+        Snapshot loaded = new Snapshot(generation.orElse(null), queryResources(productionCaName), new ConcurrentHashMap<>());
+        if (generation.isPresent()) {
+            snapshot.set(loaded);
+        }
+        return loaded;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Optional<String> queryGeneration() {
+        Stream<String> values = entityManager.createNativeQuery("SELECT value FROM property WHERE key = :key", String.class)
+            .setParameter("key", RESOURCE_CACHE_GENERATION_KEY)
+            .getResultStream();
+        return values.findFirst();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Optional<ImmutableResourceSet> queryResources(CaName name) {
+        Stream<String> resources = entityManager.createNativeQuery("SELECT resources FROM resource_cache WHERE name = :name", String.class)
+            .setParameter("name", name.toString())
+            .getResultStream();
+        return resources.findFirst().map(ImmutableResourceSet::parse);
+    }
+
+    /**
+     * Generations are taken from a database sequence, so a generation is never reused even when the transaction that
+     * stored it is rolled back.
+     */
+    private void registerNewGeneration() {
+        Number generation = (Number) entityManager.createNativeQuery("SELECT nextval('seq_all')").getSingleResult();
+        propertyEntityRepository.createOrUpdate(RESOURCE_CACHE_GENERATION_KEY, generation.toString());
     }
 
     @Override
@@ -103,31 +165,155 @@ public class JpaResourceCacheImpl implements ResourceCache, DelegationsCache {
             .collect(Collectors.toMap(ResourceCacheLine::getName, ResourceCacheLine::getResources));
     }
 
+    /**
+     * Compares fingerprints of the resources instead of the resources themselves, so only the resources of the members
+     * that changed are loaded and parsed. When the digest of all fingerprints matches nothing is loaded at all.
+     */
+    @Override
+    public Map<CaName, ImmutableResourceSet> changedMemberResources(Map<CaName, ImmutableResourceSet> certifiableResources) {
+        SortedMap<String, String> fingerprints = fingerprints(certifiableResources);
+        if (digest(fingerprints).equals(storedMemberResourcesDigest())) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, String> stored = storedMemberFingerprints();
+        Map<CaName, ImmutableResourceSet> result = new HashMap<>();
+        List<String> changed = new ArrayList<>();
+        certifiableResources.keySet().forEach(name -> {
+            String storedFingerprint = stored.remove(name.toString());
+            if (storedFingerprint == null) {
+                result.put(name, ImmutableResourceSet.empty());
+            } else if (!storedFingerprint.equals(fingerprints.get(name.toString()))) {
+                changed.add(name.toString());
+            }
+        });
+        // no longer certifiable
+        changed.addAll(stored.keySet());
+
+        storedMemberResources(changed).forEach((name, resources) -> result.put(CaName.parse(name), ImmutableResourceSet.parse(resources)));
+        return result;
+    }
+
+    /**
+     * Replaces the member resources in the cache. Only the entries that differ from the stored entries are written,
+     * using batched statements, since usually only a few of the many members have changed resources.
+     */
     @Override
     public void populateCache(Map<CaName, ImmutableResourceSet> certifiableResources) {
-        clearCache();
-        // clear the session to avoid "duplicate entity in the session error from Hibernate"
-        entityManager.clear();
-        populateWith(certifiableResources);
+        SortedMap<String, String> fingerprints = fingerprints(certifiableResources);
+        if (digest(fingerprints).equals(storedMemberResourcesDigest())) {
+            log.debug("Resource cache update has no changes");
+            registerUpdateCompleted();
+            return;
+        }
+
+        Map<String, String> removed = storedMemberFingerprints();
+        Map<String, String> changed = new HashMap<>();
+        certifiableResources.forEach((name, resources) -> {
+            if (!fingerprints.get(name.toString()).equals(removed.remove(name.toString()))) {
+                changed.put(name.toString(), resources.toString());
+            }
+        });
+
+        if (!changed.isEmpty() || !removed.isEmpty()) {
+            entityManager.flush();
+            entityManager.unwrap(Session.class).doWork(connection -> {
+                try (PreparedStatement delete = connection.prepareStatement("DELETE FROM resource_cache WHERE name = ?")) {
+                    for (String name : removed.keySet()) {
+                        delete.setString(1, name);
+                        delete.addBatch();
+                    }
+                    delete.executeBatch();
+                }
+                try (PreparedStatement upsert = connection.prepareStatement(
+                    "INSERT INTO resource_cache (name, resources) VALUES (?, ?) ON CONFLICT (name) DO UPDATE SET resources = EXCLUDED.resources")) {
+                    for (Map.Entry<String, String> entry : changed.entrySet()) {
+                        upsert.setString(1, entry.getKey());
+                        upsert.setString(2, entry.getValue());
+                        upsert.addBatch();
+                    }
+                    upsert.executeBatch();
+                }
+            });
+            // the cache lines were changed without Hibernate, do not use the ones that are already loaded
+            entityManager.clear();
+            registerNewGeneration();
+        }
+        log.debug("Resource cache update changed {} and removed {} entries", changed.size(), removed.size());
         registerUpdateCompleted();
     }
 
+    @SuppressWarnings("unchecked")
+    private Map<String, String> storedMemberFingerprints() {
+        Stream<Object[]> rows = entityManager.createNativeQuery("SELECT name, resources_md5 FROM resource_cache WHERE name <> :productionCaName")
+            .setParameter("productionCaName", productionCaName.toString())
+            .getResultStream();
+        return rows.collect(Collectors.toMap(row -> (String) row[0], row -> (String) row[1], (a, b) -> a, HashMap::new));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, String> storedMemberResources(List<String> names) {
+        Map<String, String> result = new HashMap<>();
+        for (List<String> batch : Lists.partition(names, 1000)) {
+            Stream<Object[]> rows = entityManager.createNativeQuery("SELECT name, resources FROM resource_cache WHERE name IN (:names)")
+                .setParameter("names", batch)
+                .getResultStream();
+            rows.forEach(row -> result.put((String) row[0], (String) row[1]));
+        }
+        return result;
+    }
+
+    /**
+     * The digest of the fingerprints of all cached member resources, computed the same way as {@link #digest(SortedMap)}.
+     * Is <code>null</code> when there are no cached member resources.
+     */
+    private String storedMemberResourcesDigest() {
+        return (String) entityManager.createNativeQuery(
+                "SELECT md5(string_agg(name || '=' || resources_md5, E'\\n' ORDER BY name COLLATE \"C\")) FROM resource_cache WHERE name <> :productionCaName",
+                String.class)
+            .setParameter("productionCaName", productionCaName.toString())
+            .getSingleResult();
+    }
+
+    /**
+     * @return the fingerprint of the resources of every member by name, the same as the <code>resources_md5</code>
+     * column of the cache. The fingerprint is only used to detect changes.
+     */
+    private static SortedMap<String, String> fingerprints(Map<CaName, ImmutableResourceSet> resources) {
+        SortedMap<String, String> result = new TreeMap<>();
+        resources.forEach((name, value) -> result.put(name.toString(), HEX.formatHex(md5().digest(value.toString().getBytes(StandardCharsets.UTF_8)))));
+        return result;
+    }
+
+    private static String digest(SortedMap<String, String> fingerprints) {
+        MessageDigest digest = md5();
+        String separator = "";
+        for (Map.Entry<String, String> entry : fingerprints.entrySet()) {
+            digest.update((separator + entry.getKey() + "=" + entry.getValue()).getBytes(StandardCharsets.UTF_8));
+            separator = "\n";
+        }
+        return HEX.formatHex(digest.digest());
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     void clearCache() {
         entityManager.createQuery("delete from ResourceCacheLine rc where rc.name != :productionCAName")
                 .setParameter("productionCAName", productionCaName.toString())
                 .executeUpdate();
+        registerNewGeneration();
     }
 
     void dropCache() {
         entityManager.createQuery("delete from ResourceCacheLine rc")
                 .executeUpdate();
-    }
-
-    private void populateWith(Map<CaName, ImmutableResourceSet> certifiableResources) {
-        for (final Map.Entry<CaName, ImmutableResourceSet> entry : certifiableResources.entrySet()) {
-            final ResourceCacheLine resourceCacheLine = new ResourceCacheLine(entry.getKey(), entry.getValue());
-            entityManager.persist(resourceCacheLine);
-        }
+        registerNewGeneration();
     }
 
     private void registerUpdateCompleted() {
@@ -143,6 +329,7 @@ public class JpaResourceCacheImpl implements ResourceCache, DelegationsCache {
             .executeUpdate();
         ResourceCacheLine cacheRecord = entityManager.find(ResourceCacheLine.class, caName.toString());
         entityManager.refresh(cacheRecord);
+        registerNewGeneration();
     }
 
     @Override
@@ -163,10 +350,18 @@ public class JpaResourceCacheImpl implements ResourceCache, DelegationsCache {
     @Override
     public void cacheDelegations(ImmutableResourceSet delegations) {
         entityManager.merge(new ResourceCacheLine(productionCaName, delegations));
+        registerNewGeneration();
     }
 
     @Override
     public Optional<ImmutableResourceSet> getDelegationsCache() {
         return lookupResources(productionCaName);
     }
+
+    /**
+     * The parsed resources of a cache generation. Member resources are added when they are first looked up, the
+     * resources of a generation never change.
+     */
+    private record Snapshot(String generation, Optional<ImmutableResourceSet> productionResources, ConcurrentMap<CaName, ImmutableResourceSet> memberResources) {
+    }
 }
@@ -16,6 +16,12 @@ import jakarta.ws.rs.client.ClientBuilder;
 import jakarta.ws.rs.client.WebTarget;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 
 @Slf4j
 @Component
@@ -57,22 +63,25 @@ class RestResourceServicesClient implements ResourceServicesClient {
         }
     }
 
+    /**
+     * The response is read while it is received, see {@link TotalResourcesJsonReader}.
+     */
     @Override
     public TotalResources fetchAllResources() {
-        final TotalResourceResponse response = httpGetJson(resourcesTarget().path(TOTAL_RESOURCES), TotalResourceResponse.class);
-        if (response == null || response.getResponse() == null || response.getResponse().getContent() == null) {
-            throw new RuntimeException("Invalid response: " + response);
+        final TotalResources resources = httpGetJson(resourcesTarget().path(TOTAL_RESOURCES), TotalResourcesJsonReader::read);
+        if (resources == null) {
+            throw new RuntimeException("Invalid response: missing member resources or RIPE NCC delegations");
         }
-        return response.getResponse().getContent();
+        return resources;
     }
 
     MemberResourceResponse fetchMemberResources(long membershipId) {
         return httpGetJson(
             resourcesTarget().path("member-resources/" + membershipId),
-            MemberResourceResponse.class);
+            reader -> gson.fromJson(reader, MemberResourceResponse.class));
     }
 
-    private <T> T httpGetJson(WebTarget webResource, Class<T> responseType) {
+    private <T> T httpGetJson(WebTarget webResource, ResponseReader<T> responseReader) {
         log.info("HTTP GET " + webResource.getUri());
         try (
             Response clientResponse = webResource.request(MediaType.APPLICATION_JSON_TYPE)
@@ -82,10 +91,19 @@ class RestResourceServicesClient implements ResourceServicesClient {
             if (clientResponse.getStatus() != 200) {
                 throw new IllegalArgumentException(webResource.getUri() + " GET failure: " + clientResponse.getStatusInfo());
             }
-            return gson.fromJson(clientResponse.readEntity(String.class), responseType);
+            try (Reader reader = new InputStreamReader(clientResponse.readEntity(InputStream.class), StandardCharsets.UTF_8)) {
+                return responseReader.read(reader);
+            } catch (IOException e) {
+                throw new UncheckedIOException(webResource.getUri() + " GET failure: " + e.getMessage(), e);
+            }
         }
     }
 
+    @FunctionalInterface
+    private interface ResponseReader<T> {
+        T read(Reader reader) throws IOException;
+    }
+
     @VisibleForTesting
     WebTarget resourcesTarget() {
         return resourceServices.target(resourceServicesUrl);
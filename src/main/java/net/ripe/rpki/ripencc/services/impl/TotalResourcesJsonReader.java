@@ -0,0 +1,190 @@
+package net.ripe.rpki.ripencc.services.impl;
+
+import com.google.common.collect.Iterators;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import net.ripe.ipresource.Asn;
+import net.ripe.ipresource.ImmutableResourceSet;
+import net.ripe.ipresource.IpRange;
+import net.ripe.ipresource.IpResource;
+import net.ripe.rpki.server.api.ports.ResourceServicesClient.CertifiableMemberResources;
+import net.ripe.rpki.server.api.ports.ResourceServicesClient.MemberResources;
+import net.ripe.rpki.server.api.ports.ResourceServicesClient.RipeNccDelegation;
+import net.ripe.rpki.server.api.ports.ResourceServicesClient.RipeNccDelegations;
+import net.ripe.rpki.server.api.ports.ResourceServicesClient.TotalResources;
+import net.ripe.rpki.server.api.support.objects.CaName;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Reads the <code>total-resources</code> response of the internet resources REST API token by token. The member
+ * resources are combined per CA while reading, so neither the response body nor the (large) lists of member
+ * resources are kept in memory.
+ */
+final class TotalResourcesJsonReader {
+
+    /**
+     * The member resource lists in the response, with the name used in {@link MemberResources#getMemberResourcesCounts()}.
+     */
+    private static final Map<String, String> MEMBER_RESOURCE_TYPES = Map.of(
+        "asns", "Asn",
+        "ipv4Allocations", "Ipv4Allocations",
+        "ipv4Assignments", "Ipv4Assignments",
+        "ipv6Allocations", "Ipv6Allocations",
+        "ipv6Assignments", "Ipv6Assignments",
+        "ipv4ErxResources", "Ipv4ErxResources"
+    );
+
+    private final JsonReader reader;
+    private final Map<CaName, ImmutableResourceSet.Builder> certifiableResources = new LinkedHashMap<>();
+    private final Map<String, Integer> memberResourcesCounts = new LinkedHashMap<>();
+
+    private TotalResourcesJsonReader(Reader in) {
+        this.reader = new JsonReader(in);
+        MEMBER_RESOURCE_TYPES.values().forEach(type -> memberResourcesCounts.put(type, 0));
+    }
+
+    /**
+     * @return the total resources, or <code>null</code> when the response does not contain the member resources or
+     * RIPE NCC delegations.
+     */
+    static TotalResources read(Reader in) throws IOException {
+        return new TotalResourcesJsonReader(in).readResponse();
+    }
+
+    private TotalResources readResponse() throws IOException {
+        TotalResources[] result = new TotalResources[1];
+        readObject(name -> switch (name) {
+            case "response" -> () -> readObject(responseName -> responseName.equals("content")
+                ? () -> result[0] = readContent()
+                : null);
+            default -> null;
+        });
+        return result[0];
+    }
+
+    private TotalResources readContent() throws IOException {
+        CertifiableMemberResources[] members = new CertifiableMemberResources[1];
+        RipeNccDelegations[] delegations = new RipeNccDelegations[1];
+        readObject(name -> switch (name) {
+            case "allMembersResources" -> () -> members[0] = readMemberResources();
+            case "ripeNccDelegations" -> () -> delegations[0] = readDelegations();
+            default -> null;
+        });
+        return members[0] == null || delegations[0] == null ? null : new TotalResources(members[0], delegations[0]);
+    }
+
+    private CertifiableMemberResources readMemberResources() throws IOException {
+        readObject(name -> {
+            String type = MEMBER_RESOURCE_TYPES.get(name);
+            if (type == null) {
+                return null;
+            }
+            Function<String, IpResource> parser = name.equals("asns") ? Asn::parse : IpRange::parse;
+            return () -> readArray(() -> {
+                readMemberResource(parser);
+                memberResourcesCounts.merge(type, 1, Integer::sum);
+            });
+        });
+
+        Map<CaName, ImmutableResourceSet> result = new LinkedHashMap<>();
+        int resourcesSize = 0;
+        for (Map.Entry<CaName, ImmutableResourceSet.Builder> entry : certifiableResources.entrySet()) {
+            ImmutableResourceSet resources = entry.getValue().build();
+            result.put(entry.getKey(), resources);
+            resourcesSize += Iterators.size(resources.iterator());
+        }
+        return new CertifiableMemberResources(result, memberResourcesCounts, resourcesSize);
+    }
+
+    private void readMemberResource(Function<String, IpResource> parser) throws IOException {
+        String[] resource = new String[1];
+        String[] caName = new String[1];
+        readObject(name -> switch (name) {
+            case "resource" -> () -> resource[0] = nextStringOrNull();
+            case "caName" -> () -> caName[0] = nextStringOrNull();
+            default -> null;
+        });
+        // Resources without a CA name are not certifiable
+        if (caName[0] != null && resource[0] != null) {
+            certifiableResources
+                .computeIfAbsent(CaName.parse(caName[0].toUpperCase()), ignored -> new ImmutableResourceSet.Builder())
+                .add(parser.apply(resource[0]));
+        }
+    }
+
+    private RipeNccDelegations readDelegations() throws IOException {
+        List<RipeNccDelegation> asn = new ArrayList<>();
+        List<RipeNccDelegation> ipv4 = new ArrayList<>();
+        List<RipeNccDelegation> ipv6 = new ArrayList<>();
+        readObject(name -> switch (name) {
+            case "ripeNccAsnDelegations" -> () -> readDelegationList(asn);
+            case "ripeNccIpv4Delegations" -> () -> readDelegationList(ipv4);
+            case "ripeNccIpv6Delegations" -> () -> readDelegationList(ipv6);
+            default -> null;
+        });
+        return new RipeNccDelegations(asn, ipv4, ipv6);
+    }
+
+    private void readDelegationList(List<RipeNccDelegation> delegations) throws IOException {
+        readArray(() -> {
+            String[] range = new String[1];
+            readObject(name -> name.equals("range") ? () -> range[0] = nextStringOrNull() : null);
+            if (range[0] != null) {
+                delegations.add(new RipeNccDelegation(range[0]));
+            }
+        });
+    }
+
+    /**
+     * Reads an object (or <code>null</code>), calling the field reader returned for each field name. Fields without
+     * a field reader are skipped.
+     */
+    private void readObject(Function<String, ValueReader> fields) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            ValueReader field = fields.apply(reader.nextName());
+            if (field == null) {
+                reader.skipValue();
+            } else {
+                field.read();
+            }
+        }
+        reader.endObject();
+    }
+
+    private void readArray(ValueReader element) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return;
+        }
+        reader.beginArray();
+        while (reader.hasNext()) {
+            element.read();
+        }
+        reader.endArray();
+    }
+
+    private String nextStringOrNull() throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    @FunctionalInterface
+    private interface ValueReader {
+        void read() throws IOException;
+    }
+}
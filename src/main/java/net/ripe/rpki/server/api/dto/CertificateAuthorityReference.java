@@ -0,0 +1,19 @@
+package net.ripe.rpki.server.api.dto;
+
+import net.ripe.rpki.commons.util.VersionedId;
+
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * Compact identification of a certificate authority, for walking the CA hierarchy without loading the CA aggregates.
+ */
+public record CertificateAuthorityReference(VersionedId versionedId, X500Principal name, CertificateAuthorityType type) {
+
+    public static CertificateAuthorityReference of(CertificateAuthorityData ca) {
+        return new CertificateAuthorityReference(ca.getVersionedId(), ca.getName(), ca.getType());
+    }
+
+    public long id() {
+        return versionedId.getId();
+    }
+}
@@ -29,6 +29,13 @@ public interface ResourceCache {
 
     Map<CaName, ImmutableResourceSet> allMemberResources();
 
+    /**
+     * Returns the cached resources of the members whose cached resources differ from <code>certifiableResources</code>,
+     * including the members that are no longer certifiable. Members that are not cached yet are returned with the
+     * empty resource set. Members that are not returned have the same resources in the cache.
+     */
+    Map<CaName, ImmutableResourceSet> changedMemberResources(Map<CaName, ImmutableResourceSet> certifiableResources);
+
     List<X500Principal> getHostedCasWithDifferentResourcesOnCertificates();
 
     default void verifyResourcesArePresent() {
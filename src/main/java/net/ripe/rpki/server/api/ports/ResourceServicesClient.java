@@ -2,6 +2,7 @@ package net.ripe.rpki.server.api.ports;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Maps;
 import lombok.AllArgsConstructor;
 import lombok.EqualsAndHashCode;
@@ -39,16 +40,6 @@ public interface ResourceServicesClient {
         private MemberResources content;
     }
 
-    class TotalResourceResponse {
-        @Getter
-        private TotalResourceContent response;
-    }
-
-    class TotalResourceContent {
-        @Getter
-        private TotalResources content;
-    }
-
     @EqualsAndHashCode
     class MemberResources {
         private List<AsnResource> asns;
@@ -121,13 +112,41 @@ public interface ResourceServicesClient {
                 "Ipv4ErxResources", ipv4ErxResources.size()
             );
         }
+
+        public CertifiableMemberResources toCertifiableMemberResources() {
+            final Map<CaName, ImmutableResourceSet> certifiableResources = getCertifiableResources();
+            final int resourcesSize = certifiableResources.values().stream().mapToInt(resources -> Iterators.size(resources.iterator())).sum();
+            return new CertifiableMemberResources(certifiableResources, getMemberResourcesCounts(), resourcesSize);
+        }
+    }
+
+    /**
+     * The member resources of the <code>total-resources</code> response, combined per CA while the response is read
+     * (see {@link MemberResources#getCertifiableResources()}), with the number of resources of each type.
+     */
+    @Getter
+    @EqualsAndHashCode
+    class CertifiableMemberResources {
+        private final Map<CaName, ImmutableResourceSet> certifiableResources;
+        private final Map<String, Integer> memberResourcesCounts;
+        /**
+         * The number of ranges of all certifiable resources, counted when the resource sets are built so the resource
+         * cache update does not have to iterate over all resources again.
+         */
+        private final int resourcesSize;
+
+        public CertifiableMemberResources(Map<CaName, ImmutableResourceSet> certifiableResources, Map<String, Integer> memberResourcesCounts, int resourcesSize) {
+            this.certifiableResources = ImmutableMap.copyOf(certifiableResources);
+            this.memberResourcesCounts = ImmutableMap.copyOf(memberResourcesCounts);
+            this.resourcesSize = resourcesSize;
+        }
     }
 
     @AllArgsConstructor
     @Getter
     @EqualsAndHashCode
     class TotalResources {
-        private final MemberResources allMembersResources;
+        private final CertifiableMemberResources allMembersResources;
         private final RipeNccDelegations ripeNccDelegations;
 
         public ImmutableResourceSet allDelegationResources() {
@@ -2,6 +2,7 @@ package net.ripe.rpki.server.api.services.background;
 
 import net.ripe.rpki.core.services.background.BackgroundServiceExecutionResult;
 
+import java.time.Duration;
 import java.util.Collections;
 import java.util.Map;
 
@@ -15,6 +16,13 @@ public interface BackgroundService {
 
     boolean isWaitingOrRunning();
 
+    /**
+     * Waits until the current execution of this service (if any) has finished.
+     *
+     * @return true if this service is idle, false if the timeout elapsed first
+     */
+    boolean awaitIdle(Duration timeout) throws InterruptedException;
+
     boolean isActive();
 
     BackgroundServiceExecutionResult execute(Map<String, String> parameters);
@@ -6,6 +6,7 @@ import net.ripe.rpki.server.api.dto.BgpRisEntry;
 import java.time.Instant;
 import java.util.Collection;
 import java.util.Map;
+import java.util.function.Consumer;
 
 public interface BgpRisEntryViewService {
 
@@ -28,9 +29,23 @@ public interface BgpRisEntryViewService {
      */
     Map<Boolean, Collection<BgpRisEntry>> findMostSpecificContainedAndNotContained(ImmutableResourceSet resources);
 
-    void resetEntries(Collection<BgpRisEntry> entries);
+    default void resetEntries(Collection<BgpRisEntry> entries) {
+        EntriesUpdate update = startUpdate();
+        entries.forEach(update);
+        update.commit();
+    }
+
+    /**
+     * Starts replacing all entries. Entries passed to the update are added to a new index directly, and replace the
+     * current entries when the update is committed.
+     */
+    EntriesUpdate startUpdate();
 
     Instant getLastUpdated();
 
     void setLastUpdated(Instant lastUpdated);
+
+    interface EntriesUpdate extends Consumer<BgpRisEntry> {
+        void commit();
+    }
 }
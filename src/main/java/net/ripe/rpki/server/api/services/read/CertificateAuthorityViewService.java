@@ -61,6 +61,17 @@ public interface CertificateAuthorityViewService {
      */
     Collection<CertificateAuthorityData> findAllChildrenForCa(X500Principal productionCaName);
 
+    /**
+     * Finds the child CAs of a CA without loading the child CA aggregates, for walking the CA hierarchy.
+     */
+    List<CertificateAuthorityReference> findAllChildReferencesForCa(X500Principal parentCaName);
+
+    /**
+     * Like {@link #findAllChildReferencesForCa(X500Principal)}, but leaves out the hosted child CAs without children
+     * of their own of which the current certificate's resources are the same as in the resource cache.
+     */
+    List<CertificateAuthorityReference> findChildReferencesWithResourcesDifferentFromCache(X500Principal parentCaName);
+
     Optional<CertificateAuthorityData> findSmallestIntermediateCa(X500Principal productionCaName);
 
     // Auditing, move to own interface?
@@ -1,13 +1,15 @@
 package net.ripe.rpki.services.impl.background;
 
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
-import lombok.AllArgsConstructor;
+import io.micrometer.core.instrument.Timer;
 import net.ripe.rpki.core.services.background.BackgroundTaskRunner;
 import net.ripe.rpki.core.services.background.SequentialBackgroundServiceWithAdminPrivilegesOnActiveNode;
 import net.ripe.rpki.server.api.commands.UpdateAllIncomingResourceCertificatesCommand;
 import net.ripe.rpki.server.api.configuration.RepositoryConfiguration;
 import net.ripe.rpki.server.api.dto.CertificateAuthorityData;
+import net.ripe.rpki.server.api.dto.CertificateAuthorityReference;
 import net.ripe.rpki.server.api.ports.ResourceCache;
 import net.ripe.rpki.server.api.services.command.CommandService;
 import net.ripe.rpki.server.api.services.read.CertificateAuthorityViewService;
@@ -16,21 +18,26 @@ import org.springframework.stereotype.Service;
 
 import jakarta.persistence.EntityNotFoundException;
 import javax.security.auth.x500.X500Principal;
-import java.util.Collection;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Predicate;
-import java.util.stream.Stream;
+import java.util.function.Supplier;
 
 import static net.ripe.rpki.services.impl.background.BackgroundServices.ALL_CA_CERTIFICATE_UPDATE_SERVICE;
 
 @Service(ALL_CA_CERTIFICATE_UPDATE_SERVICE)
 public class AllCaCertificateUpdateServiceBean extends SequentialBackgroundServiceWithAdminPrivilegesOnActiveNode {
     private final int updateBatchSize;
+    private final int updateParallelism;
 
+    private final MeterRegistry meterRegistry;
     private final Counter certificateUpdates;
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
 
     private final CertificateAuthorityViewService caViewService;
     private final CommandService commandService;
@@ -44,6 +51,7 @@ public class AllCaCertificateUpdateServiceBean extends SequentialBackgroundServi
                                              ResourceCache resourceCache,
                                              RepositoryConfiguration repositoryConfiguration,
                                              @Value("${certificate.authority.update.batch.size:1000}") int updateBatchSize,
+                                             @Value("${certificate.authority.update.parallelism:0}") int updateParallelism,
                                              MeterRegistry meterRegistry) {
         super(backgroundTaskRunner);
         this.caViewService = caViewService;
@@ -51,10 +59,18 @@ public class AllCaCertificateUpdateServiceBean extends SequentialBackgroundServi
         this.resourceCache = resourceCache;
         this.repositoryConfiguration = repositoryConfiguration;
         this.updateBatchSize = updateBatchSize;
+        this.updateParallelism = updateParallelism > 0 ? updateParallelism : Runtime.getRuntime().availableProcessors();
+        this.meterRegistry = meterRegistry;
 
         certificateUpdates = Counter.builder("rpkicore.all.certificate.update.progress")
                 .description("Number of certificates updated by All CA certificate update service")
                 .register(meterRegistry);
+        Gauge.builder("rpkicore.all.certificate.update.queue.depth", queueDepth, AtomicInteger::get)
+                .description("Number of CAs of the current level waiting to be updated")
+                .register(meterRegistry);
+        Gauge.builder("rpkicore.all.certificate.update.in.flight", inFlight, AtomicInteger::get)
+                .description("Number of CA update commands currently executing")
+                .register(meterRegistry);
     }
 
     @Override
@@ -72,7 +88,22 @@ public class AllCaCertificateUpdateServiceBean extends SequentialBackgroundServi
         runService(parameters, x -> true);
     }
 
-    public void runService(Map<String, String> parameters, Predicate<CertificateAuthorityData> certificateAuthorityFilter) {
+    public void runService(Map<String, String> parameters, Predicate<CertificateAuthorityReference> certificateAuthorityFilter) {
+        runService(parameters, certificateAuthorityFilter, caViewService::findAllChildReferencesForCa);
+    }
+
+    /**
+     * Like {@link #runService(Map, Predicate)}, but only visits the child CAs of which the resources may differ from
+     * the resource cache, so the (many) hosted CAs with up-to-date resources are not loaded at all after a resource
+     * cache update.
+     */
+    public void runServiceForResourceCacheChanges(Map<String, String> parameters, Predicate<CertificateAuthorityReference> certificateAuthorityFilter) {
+        runService(parameters, certificateAuthorityFilter, caViewService::findChildReferencesWithResourcesDifferentFromCache);
+    }
+
+    private void runService(Map<String, String> parameters,
+                            Predicate<CertificateAuthorityReference> certificateAuthorityFilter,
+                            Function<X500Principal, List<CertificateAuthorityReference>> findChildren) {
         CertificateAuthorityData productionCa = verifyPreconditions();
         if (productionCa == null) {
             return;
@@ -82,7 +113,7 @@ public class AllCaCertificateUpdateServiceBean extends SequentialBackgroundServi
         log.info("Updating incoming certificate for at most {} CAs", batchSize);
 
         AtomicInteger remainingCounter = new AtomicInteger(batchSize);
-        new RecursiveUpdater(remainingCounter, certificateAuthorityFilter).accept(productionCa);
+        new LevelUpdater(remainingCounter, certificateAuthorityFilter, findChildren).run(CertificateAuthorityReference.of(productionCa));
     }
 
     private CertificateAuthorityData verifyPreconditions() {
@@ -103,72 +134,142 @@ public class AllCaCertificateUpdateServiceBean extends SequentialBackgroundServi
         return productionCa;
     }
 
-    @AllArgsConstructor
-    private class RecursiveUpdater implements Consumer<CertificateAuthorityData> {
-        private AtomicInteger remainingCounter;
-        private Predicate<CertificateAuthorityData> certificateAuthorityFilter;
+    /**
+     * Updates the CA hierarchy level by level (breadth-first). The CAs of a level are updated with a bounded number
+     * of concurrent commands, and the children of the updated CAs form the next level. Afterwards the parent CAs are
+     * updated again, deepest level first, when any of their descendants was updated.
+     * <p>
+     * The update stops descending when more than <code>updateBatchSize</code> CAs have been updated (due to
+     * concurrency at most <code>updateParallelism - 1</code> more CAs may get updated than specified).
+     */
+    private class LevelUpdater {
+        private final AtomicInteger remainingCounter;
+        private final Predicate<CertificateAuthorityReference> certificateAuthorityFilter;
+        private final Function<X500Principal, List<CertificateAuthorityReference>> findChildren;
+
+        private LevelUpdater(AtomicInteger remainingCounter,
+                             Predicate<CertificateAuthorityReference> certificateAuthorityFilter,
+                             Function<X500Principal, List<CertificateAuthorityReference>> findChildren) {
+            this.remainingCounter = remainingCounter;
+            this.certificateAuthorityFilter = certificateAuthorityFilter;
+            this.findChildren = findChildren;
+        }
+
+        void run(CertificateAuthorityReference productionCa) {
+            List<List<Node>> levels = new ArrayList<>();
+            List<Node> level = List.of(new Node(productionCa, null));
+            while (!level.isEmpty()) {
+                int depth = levels.size();
+                levels.add(level);
+                level = updateLevel(depth, level);
+            }
+
+            for (int depth = levels.size() - 1; depth >= 0; depth--) {
+                // NOTE: There's no update of potentially over-claiming CAs happening here, since we are updating all
+                // child CAs anyway. Update the parent CA again, in case over-claiming child certificates were updated
+                // to correctly remove the over-claiming resources.
+                List<Node> parents = levels.get(depth).stream().filter(node -> node.descendantUpdated).toList();
+                if (!parents.isEmpty()) {
+                    timed(depth, "reupdate", () -> runLimited(parents, node -> updateIncomingCertificates(node.ca)));
+                }
+            }
+        }
+
+        private List<Node> updateLevel(int depth, List<Node> level) {
+            List<Node> selected = level.stream().filter(node -> certificateAuthorityFilter.test(node.ca)).toList();
+            List<List<Node>> children = timed(depth, "update", () -> runLimited(selected, this::updateAndFindChildren));
 
-        @Override
-        public void accept(CertificateAuthorityData ca) {
-            runParallel(Stream.of(updateParentAndChildrenTask(ca)));
+            for (Node node : selected) {
+                if (node.updated) {
+                    node.markAncestorsUpdated();
+                }
+            }
+            return children.stream().flatMap(List::stream).toList();
         }
 
         /**
-         * A task that updates the incoming resource certificate of the <code>parentCa</code> and its child CAs, recursively.
-         * The task will return <code>true</code> if any CA was updated, <code>false</code> otherwise.
-         * The task will stop when more than <code>updateBatchSize</code> CAs have been updated (due to concurrency slightly more
-         * CAs may get updated than specified).
+         * @return the child CAs of the node, or nothing when the batch size has been reached
          */
-        private BackgroundTaskRunner.Task<Boolean> updateParentAndChildrenTask(CertificateAuthorityData parentCa) {
-            return task(
-                () -> {
-                    if (remainingCounter.get() <= 0) {
-                        return false;
-                    }
-
-                    if (!certificateAuthorityFilter.test(parentCa)) {
-                        return false;
-                    }
-
-                    // NOTE: There's no update of potentially over-claiming CAs happening here,
-                    // since we are updating all child CAs anyway.
-                    boolean updated = updateIncomingCertificates(parentCa);
-                    if (updated) {
-                        remainingCounter.decrementAndGet();
-                        certificateUpdates.increment();
-                    }
-
-                    long updateCount = updateChildren(parentCa);
-                    if (updateCount > 0) {
-                        // Update the parent CA again, in case over-claiming child certificates were updated to correctly
-                        // remove the over-claiming resources.
-                        updateIncomingCertificates(parentCa);
-                    }
-
-                    return updated || updateCount > 0;
-                },
-                ex -> log.error("Unable to update incoming resource certificate for CA '{}'", parentCa.getName(), ex)
-            );
+        private List<Node> updateAndFindChildren(Node node) {
+            if (remainingCounter.get() <= 0) {
+                return List.of();
+            }
+
+            if (updateIncomingCertificates(node.ca)) {
+                node.updated = true;
+                remainingCounter.decrementAndGet();
+                certificateUpdates.increment();
+            }
+
+            return findChildren.apply(node.ca.name()).stream()
+                .map(child -> new Node(child, node))
+                .toList();
+        }
+
+        private <R> List<R> runLimited(List<Node> nodes, Function<Node, R> action) {
+            List<BackgroundTaskRunner.Task<R>> tasks = nodes.stream()
+                .map(node -> task(
+                    () -> {
+                        queueDepth.decrementAndGet();
+                        inFlight.incrementAndGet();
+                        try {
+                            return action.apply(node);
+                        } finally {
+                            inFlight.decrementAndGet();
+                        }
+                    },
+                    ex -> log.error("Unable to update incoming resource certificate for CA '{}'", node.ca.name(), ex)
+                ))
+                .toList();
+
+            queueDepth.set(tasks.size());
+            try {
+                return runParallel(tasks, updateParallelism);
+            } finally {
+                queueDepth.set(0);
+            }
         }
 
-        private long updateChildren(CertificateAuthorityData parentCa) {
-            Collection<CertificateAuthorityData> childCas = caViewService.findAllChildrenForCa(parentCa.getName());
-            return runParallel(
-                childCas.stream().map(this::updateParentAndChildrenTask)
-            ).stream().filter(Boolean::booleanValue).count();
+        private <R> R timed(int depth, String phase, Supplier<R> supplier) {
+            return Timer.builder("rpkicore.all.certificate.update.level.duration")
+                .description("Time to update the CAs of a level of the CA hierarchy")
+                .tag("depth", String.valueOf(depth))
+                .tag("phase", phase)
+                .register(meterRegistry)
+                .record(supplier);
         }
 
-        private boolean updateIncomingCertificates(CertificateAuthorityData ca) {
+        private boolean updateIncomingCertificates(CertificateAuthorityReference ca) {
             try {
                 return commandService
-                    .execute(new UpdateAllIncomingResourceCertificatesCommand(ca.getVersionedId(), Integer.MAX_VALUE))
+                    .execute(new UpdateAllIncomingResourceCertificatesCommand(ca.versionedId(), Integer.MAX_VALUE))
                     .isHasEffect();
             } catch (EntityNotFoundException e) {
                 // CA was deleted between the initial query and executing the command, ignore this exception. Note that the
                 // command service already logs a warning, so no need to log anything else here.
-                log.warn("failed to update all incoming resource certificates for CA '{}': {}", ca.getName(), e.toString());
+                log.warn("failed to update all incoming resource certificates for CA '{}': {}", ca.name(), e.toString());
                 return false;
             }
         }
     }
+
+    private static final class Node {
+        private final CertificateAuthorityReference ca;
+        private final Node parent;
+        // Written by the task updating this node, read after all tasks of the level completed
+        private boolean updated;
+        // Only accessed by the thread running the service
+        private boolean descendantUpdated;
+
+        private Node(CertificateAuthorityReference ca, Node parent) {
+            this.ca = ca;
+            this.parent = parent;
+        }
+
+        void markAncestorsUpdated() {
+            for (Node ancestor = parent; ancestor != null && !ancestor.descendantUpdated; ancestor = ancestor.parent) {
+                ancestor.descendantUpdated = true;
+            }
+        }
+    }
 }
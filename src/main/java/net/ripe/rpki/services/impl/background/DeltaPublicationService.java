@@ -0,0 +1,134 @@
+package net.ripe.rpki.services.impl.background;
+
+import com.google.common.annotations.VisibleForTesting;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.ripe.rpki.core.services.background.BackgroundServiceExecutionResult;
+import net.ripe.rpki.domain.PublishedObjectsChangedEvent;
+import net.ripe.rpki.server.api.services.background.BackgroundService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static net.ripe.rpki.services.impl.background.BackgroundServices.PUBLIC_REPOSITORY_RRDP_SERVICE;
+import static net.ripe.rpki.services.impl.background.BackgroundServices.PUBLIC_REPOSITORY_RSYNC_SERVICE;
+
+/**
+ * Runs the RRDP and rsync repository services shortly after published objects changed status, instead of waiting
+ * for their next scheduled run. Changes that are committed while a run is pending or in progress are coalesced into
+ * a single follow-up run.
+ * <p>
+ * The RRDP run only sends the changed objects to the publication servers (see
+ * {@link net.ripe.rpki.services.impl.handlers.PublicationSupport}), so the scheduled runs remain as periodic
+ * reconciliation. The rsync run still reads the content of all objects and writes a new target directory, so it is
+ * only run after changes when <code>publication.delta.rsync.enabled</code> is set.
+ */
+@Service
+@Slf4j
+public class DeltaPublicationService {
+
+    private static final Duration MAX_IDLE_WAIT = Duration.ofMinutes(30);
+
+    private final List<BackgroundService> repositoryServices;
+    private final long delayMillis;
+    private final ScheduledExecutorService executor;
+
+    private final AtomicBoolean pending = new AtomicBoolean(false);
+
+    @Autowired
+    public DeltaPublicationService(
+        @Qualifier(PUBLIC_REPOSITORY_RRDP_SERVICE) BackgroundService rrdpService,
+        @Qualifier(PUBLIC_REPOSITORY_RSYNC_SERVICE) BackgroundService rsyncService,
+        @Value("${background-services.schedule.enable}") boolean scheduleEnable,
+        @Value("${publication.delta.rrdp.enabled:true}") boolean rrdpEnabled,
+        @Value("${publication.delta.rsync.enabled:false}") boolean rsyncEnabled,
+        @Value("${publication.delta.delay.millis:2000}") long delayMillis
+    ) {
+        this(
+            Stream.of(rrdpEnabled ? rrdpService : null, rsyncEnabled ? rsyncService : null)
+                .filter(service -> scheduleEnable && service != null)
+                .toList(),
+            delayMillis,
+            Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "delta-publication");
+                thread.setDaemon(true);
+                return thread;
+            })
+        );
+    }
+
+    @VisibleForTesting
+    DeltaPublicationService(List<BackgroundService> repositoryServices, long delayMillis, ScheduledExecutorService executor) {
+        this.repositoryServices = repositoryServices;
+        this.delayMillis = delayMillis;
+        this.executor = executor;
+        log.info("Publishing changed objects to {} after commit", repositoryServices.stream().map(BackgroundService::getName).toList());
+    }
+
+    @TransactionalEventListener
+    public void publishedObjectsChanged(PublishedObjectsChangedEvent event) {
+        log.debug("{} published objects changed status", event.count());
+        schedulePublication();
+    }
+
+    private void schedulePublication() {
+        if (!repositoryServices.isEmpty() && pending.compareAndSet(false, true)) {
+            executor.schedule(this::publish, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void publish() {
+        // Changes committed from now on need another run, since they may not be seen by this one
+        pending.set(false);
+        List<BackgroundService> busyServices = new ArrayList<>();
+        for (BackgroundService service : repositoryServices) {
+            try {
+                BackgroundServiceExecutionResult result = service.execute(Collections.emptyMap());
+                if (result.getStatus() == BackgroundServiceExecutionResult.Status.SKIPPED && service.isWaitingOrRunning()) {
+                    // A (scheduled) run that may have started before the change was committed is in progress
+                    busyServices.add(service);
+                }
+            } catch (RuntimeException e) {
+                log.error("Publication of changed objects by {} failed", service.getName(), e);
+            }
+        }
+        if (!busyServices.isEmpty()) {
+            awaitIdle(busyServices);
+        }
+    }
+
+    /**
+     * Runs again once the runs in progress have finished. Waiting blocks the (single) publication thread, changes
+     * committed in the meantime are coalesced into the run scheduled afterwards.
+     */
+    private void awaitIdle(List<BackgroundService> services) {
+        try {
+            for (BackgroundService service : services) {
+                if (!service.awaitIdle(MAX_IDLE_WAIT)) {
+                    log.warn("{} is still running after {}, leaving the changes to its next scheduled run", service.getName(), MAX_IDLE_WAIT);
+                    return;
+                }
+            }
+            schedulePublication();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -7,13 +7,13 @@ import net.ripe.rpki.core.services.background.SequentialBackgroundServiceWithAdm
 import net.ripe.rpki.server.api.commands.KeyManagementActivatePendingKeysCommand;
 import net.ripe.rpki.server.api.commands.UpdateAllIncomingResourceCertificatesCommand;
 import net.ripe.rpki.server.api.dto.CertificateAuthorityData;
+import net.ripe.rpki.server.api.dto.CertificateAuthorityReference;
 import net.ripe.rpki.server.api.ports.ResourceCache;
 import net.ripe.rpki.server.api.services.command.CommandService;
 import net.ripe.rpki.server.api.services.command.CommandStatus;
 import net.ripe.rpki.server.api.services.read.CertificateAuthorityViewService;
 import org.springframework.stereotype.Service;
 
-import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ForkJoinPool;
@@ -71,20 +71,20 @@ public class KeyPairActivationManagementServiceBean extends SequentialBackground
             log.info("activated keys for {} certificate authorities", casWithActivatedKeys.size());
 
             casWithActivatedKeys.forEach(parentCA -> {
-                Collection<CertificateAuthorityData> children = caViewService.findAllChildrenForCa(parentCA.getName());
+                List<CertificateAuthorityReference> children = caViewService.findAllChildReferencesForCa(parentCA.getName());
                 children.parallelStream()
                     .forEach(childCA -> {
                         try {
-                            switch (childCA.getType()) {
+                            switch (childCA.type()) {
                                 case ALL_RESOURCES:
                                     throw new IllegalStateException("CA with type ALL_RESOURCES (" + childCA + ") should not be a child of " + parentCA);
                                 case ROOT: case INTERMEDIATE: case HOSTED: case NONHOSTED:
-                                    commandService.execute(new UpdateAllIncomingResourceCertificatesCommand(childCA.getVersionedId(), Integer.MAX_VALUE));
+                                    commandService.execute(new UpdateAllIncomingResourceCertificatesCommand(childCA.versionedId(), Integer.MAX_VALUE));
                                     return;
                             }
-                            throw new IllegalStateException("CA with unknown type " + childCA.getType());
+                            throw new IllegalStateException("CA with unknown type " + childCA.type());
                         } catch (RuntimeException e) {
-                            log.error("Error updating incoming resource certificates for CA '{}'", childCA.getName(), e);
+                            log.error("Error updating incoming resource certificates for CA '{}'", childCA.name(), e);
                         }
                     });
             });
@@ -0,0 +1,99 @@
+package net.ripe.rpki.services.impl.background;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.AtomicDouble;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Serves gauges that are expensive to compute (e.g. database counts) from memory. The value of every gauge is
+ * recomputed on a fixed schedule, independent of how often the metrics are scraped, and can be adjusted in between
+ * when the change is known to the caller.
+ */
+@Service
+@Slf4j
+public class MetricsSnapshotService {
+
+    private final MeterRegistry meterRegistry;
+    private final long refreshIntervalSeconds;
+    private final ScheduledExecutorService executor;
+
+    @Autowired
+    public MetricsSnapshotService(
+        MeterRegistry meterRegistry,
+        @Value("${metrics.snapshot.refresh.interval.seconds:300}") long refreshIntervalSeconds
+    ) {
+        this(meterRegistry, refreshIntervalSeconds, Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    @VisibleForTesting
+    MetricsSnapshotService(MeterRegistry meterRegistry, long refreshIntervalSeconds, ScheduledExecutorService executor) {
+        this.meterRegistry = meterRegistry;
+        this.refreshIntervalSeconds = refreshIntervalSeconds;
+        this.executor = executor;
+    }
+
+    /**
+     * Registers a gauge with the value of <code>query</code>, which is evaluated right away in the background and
+     * then every refresh interval. The gauge reports <code>NaN</code> until the first evaluation succeeded.
+     */
+    public SnapshotGauge register(String name, String description, Supplier<? extends Number> query) {
+        SnapshotGauge gauge = new SnapshotGauge(name, query);
+        Gauge.builder(name, gauge.value, AtomicDouble::get)
+            .description(description)
+            .register(meterRegistry);
+        executor.scheduleWithFixedDelay(gauge::refresh, 0, refreshIntervalSeconds, TimeUnit.SECONDS);
+        return gauge;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public static final class SnapshotGauge {
+        private final String name;
+        private final Supplier<? extends Number> query;
+        private final AtomicDouble value = new AtomicDouble(Double.NaN);
+
+        private SnapshotGauge(String name, Supplier<? extends Number> query) {
+            this.name = name;
+            this.query = query;
+        }
+
+        public double value() {
+            return value.get();
+        }
+
+        /**
+         * Adjusts the value for a change made by this node. Changes that are not reported this way (e.g. made by
+         * other nodes) are picked up by the next refresh.
+         */
+        public void add(double delta) {
+            value.addAndGet(delta);
+        }
+
+        void refresh() {
+            try {
+                value.set(query.get().doubleValue());
+            } catch (RuntimeException e) {
+                // Keep serving the last known value, the next refresh will try again
+                log.warn("Failed to refresh metric {}: {}", name, e.toString());
+            }
+        }
+    }
+}
@@ -78,28 +78,39 @@ public class PublicRepositoryPublicationServiceBean extends SequentialBackground
     }
 
     private void publishPendingCertificateAuthorities(DateTime manifestAndCrlValidityCutoff) {
-        Collection<ManagedCertificateAuthority> pendingCertificateAuthorities =
-            certificateAuthorityRepository.findAllWithOutdatedManifests(true, manifestAndCrlValidityCutoff, Integer.MAX_VALUE);
-        log.info("Publishing {} CAs with updated configuration or outdated manifest/CRL", pendingCertificateAuthorities.size());
-        certificateAuthorityCounter.increment(pendingCertificateAuthorities.size());
-
-        SortedMap<Integer, List<ManagedCertificateAuthority>> groupedByDepth =
-            pendingCertificateAuthorities.stream()
-                .collect(Collectors.groupingBy(CertificateAuthority::depth, TreeMap::new, Collectors.toList()));
+        // CAs with pending objects, updated configuration, or new keys are queued by the database when these
+        // changes are committed. Only CAs with manifests and CRLs that are about to expire must be looked up.
+        int expiring = transactionTemplate.execute(status ->
+            certificateAuthorityRepository.queuePendingPublicationsForManifestsAndCrlsExpiringBefore(manifestAndCrlValidityCutoff));
+        List<PendingPublication> pendingPublications = transactionTemplate.execute(status ->
+            certificateAuthorityRepository.findPendingPublications());
+        log.info("Publishing {} CAs with updated configuration or outdated manifest/CRL ({} newly expiring)", pendingPublications.size(), expiring);
+        certificateAuthorityCounter.increment(pendingPublications.size());
 
         // Publish top-down to ensure the parent CA's certificates are always available before publishing child CA
-        // certificates. Otherwise, a child CA certificate may be invalid due to over-claiming resources.
-        for (List<ManagedCertificateAuthority> cas : groupedByDepth.values()) {
-            runParallel(cas.stream().map(ca -> task(
-                () -> commandService.execute(new IssueUpdatedManifestAndCrlCommand(ca.getVersionedId())),
+        // certificates. Otherwise, a child CA certificate may be invalid due to over-claiming resources. A CA only
+        // waits for its closest queued ancestor, not for all CAs closer to the root.
+        Map<Long, BackgroundTaskRunner.Task<PendingPublication>> tasks = new LinkedHashMap<>();
+        Map<Long, PendingPublication> pendingById = new HashMap<>();
+        for (PendingPublication ca : pendingPublications) {
+            pendingById.put(ca.id(), ca);
+            tasks.put(ca.id(), task(
+                () -> {
+                    commandService.execute(new IssueUpdatedManifestAndCrlCommand(ca.caId()));
+                    return ca;
+                },
                 ex -> {
                     if (ex instanceof EntityNotFoundException) {
-                        log.info("CA '{}' not found, probably deleted since initial query", ca.getName(), ex);
+                        log.info("CA '{}' not found, probably deleted since initial query", ca.caName(), ex);
                     } else {
-                        log.error("Could not publish material for CA '{}'", ca.getName(), ex);
+                        log.error("Could not publish material for CA '{}'", ca.caName(), ex);
                     }
                 }
-            )));
+            ));
         }
+        List<PendingPublication> published = runParallelAfterDependencies(tasks, id -> pendingById.get(id).findPendingAncestorId());
+
+        // CAs that failed stay queued and are retried on the next run
+        transactionTemplate.executeWithoutResult(status -> published.forEach(certificateAuthorityRepository::removePendingPublication));
     }
 }
@@ -37,13 +37,15 @@ public class PublicRepositoryRrdpServiceBean extends ConcurrentBackgroundService
 
     @Override
     protected void runService(Map<String, String> parameters) {
-        var pos = publishedObjectsService.getPublishedObjects();
-        if (pos.isBelowThreshold()) {
-            publicationMetrics.getRrdpPublicationUnderThreshold().increment();
-            log.error("Will not publish objects to the RRDP repository: the number of objects {} is smaller than the minimal threshold {}.",
-                    pos.objects().size(), publishedObjectsService.getMinimalObjectCount());
-        } else {
-            publicationSupport.publishAllObjects(pos.objects());
-        }
+        publishedObjectsService.processPublishedObjectHashes(pos -> {
+            if (pos.isBelowThreshold()) {
+                publicationMetrics.getRrdpPublicationUnderThreshold().increment();
+                log.error("Will not publish objects to the RRDP repository: the number of objects {} is smaller than the minimal threshold {}.",
+                        pos.count(), publishedObjectsService.getMinimalObjectCount());
+            } else {
+                publicationSupport.publishAllObjects(pos.hashes(), pos.contentLoader());
+            }
+            return null;
+        });
     }
 }
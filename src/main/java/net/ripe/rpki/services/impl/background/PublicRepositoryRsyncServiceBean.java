@@ -37,15 +37,21 @@ public class PublicRepositoryRsyncServiceBean extends ConcurrentBackgroundServic
     }
 
     @Override
-    @SneakyThrows
     protected void runService(Map<String, String> parameters) {
-        var pos = publishedObjectsService.getPublishedObjects();
-        if (pos.isBelowThreshold()) {
-            publicationMetrics.getRsyncPublicationUnderThreshold().increment();
-            log.error("Will not publish objects to the rsync repository: the number of objects {} is smaller than the minimal threshold {}.",
-                    pos.objects().size(), publishedObjectsService.getMinimalObjectCount());
-        } else {
-            publicationWriteService.writeAll(pos.objects());
-        }
+        publishedObjectsService.processPublishedObjects(pos -> {
+            if (pos.isBelowThreshold()) {
+                publicationMetrics.getRsyncPublicationUnderThreshold().increment();
+                log.error("Will not publish objects to the rsync repository: the number of objects {} is smaller than the minimal threshold {}.",
+                        pos.count(), publishedObjectsService.getMinimalObjectCount());
+            } else {
+                writeAll(pos);
+            }
+            return null;
+        });
+    }
+
+    @SneakyThrows
+    private void writeAll(PublishedObjectsServiceBean.PublishedObjects pos) {
+        publicationWriteService.writeAll(pos.objects());
     }
 }
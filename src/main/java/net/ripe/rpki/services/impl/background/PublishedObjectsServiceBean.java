@@ -2,6 +2,7 @@ package net.ripe.rpki.services.impl.background;
 
 import lombok.Getter;
 import net.ripe.rpki.domain.PublishedObjectData;
+import net.ripe.rpki.domain.PublishedObjectHash;
 import net.ripe.rpki.domain.PublishedObjectRepository;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
@@ -9,14 +10,19 @@ import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 @Component
 @Getter
 public class PublishedObjectsServiceBean {
 
     private final int minimalObjectCount;
+    private final int fetchSize;
     private final TransactionTemplate transactionTemplate;
     private final PublishedObjectRepository publishedObjectRepository;
     private final AtomicBoolean publicationBelowThreshold = new AtomicBoolean(false);
@@ -26,31 +32,71 @@ public class PublishedObjectsServiceBean {
             PublishedObjectRepository publishedObjectRepository,
             PlatformTransactionManager transactionManager,
             @Value("${publication.thresholds.minimum_object_count:0}") int minimalObjectCount,
-            @Value("${publication.thresholds.enabled:false}") boolean checkThreshold
+            @Value("${publication.thresholds.enabled:false}") boolean checkThreshold,
+            @Value("${publication.snapshot.fetch.size:1000}") int fetchSize
     ) {
         this.publishedObjectRepository = publishedObjectRepository;
         this.transactionTemplate = new TransactionTemplate(transactionManager);
         // Repeatable read so we get a consistent snapshot of to-be-published objects
         this.transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.transactionTemplate.setReadOnly(true);
         this.minimalObjectCount = minimalObjectCount;
         this.checkThreshold = checkThreshold;
         if (this.checkThreshold && this.minimalObjectCount <= 0) {
             throw new IllegalArgumentException("Minimal object count must be greater than zero when publication threshold checking is enabled.");
         }
+        if (fetchSize <= 0) {
+            throw new IllegalArgumentException("Snapshot fetch size must be greater than zero.");
+        }
+        this.fetchSize = fetchSize;
     }
 
-    public PublishedObjects getPublishedObjects() {
-        List<PublishedObjectData> publishedObjects = transactionTemplate.execute(
-                status -> publishedObjectRepository.findCurrentlyPublishedObjects()
-        );
-        if (checkThreshold) {
-            var isBelowThreshold = publishedObjects.size() < minimalObjectCount;
-            publicationBelowThreshold.set(isBelowThreshold);
-            return new PublishedObjects(publishedObjects, isBelowThreshold);
-        }
-        return new PublishedObjects(publishedObjects, false);
+    /**
+     * Passes a consistent snapshot of the currently published objects to the <code>processor</code>. The objects
+     * are streamed from the database in batches of at most <code>fetchSize</code> objects, so the processor should
+     * not hold on to all objects to keep the memory usage independent of the size of the repository.
+     * <p>
+     * The stream is only valid while the processor runs, since it is read in the same (repeatable read)
+     * transaction as the object count used for the threshold check.
+     */
+    public <T> T processPublishedObjects(Function<PublishedObjects, T> processor) {
+        return inSnapshotTransaction((count, isBelowThreshold) -> {
+            try (Stream<PublishedObjectData> objects = publishedObjectRepository.streamCurrentlyPublishedObjects(fetchSize)) {
+                return processor.apply(new PublishedObjects(count, isBelowThreshold, objects));
+            }
+        });
+    }
+
+    /**
+     * Like {@link #processPublishedObjects(Function)}, but only streams the location and stored hash of every
+     * object. The processor can load the content of the objects it needs with
+     * {@link PublishedObjectHashes#contentLoader()}, which reads from the same snapshot and must be called on the
+     * processor's thread.
+     */
+    public <T> T processPublishedObjectHashes(Function<PublishedObjectHashes, T> processor) {
+        return inSnapshotTransaction((count, isBelowThreshold) -> {
+            try (Stream<PublishedObjectHash> hashes = publishedObjectRepository.streamCurrentlyPublishedObjectHashes(fetchSize)) {
+                return processor.apply(new PublishedObjectHashes(count, isBelowThreshold, hashes, publishedObjectRepository::findPublishedObjectData));
+            }
+        });
+    }
+
+    private <T> T inSnapshotTransaction(BiFunction<Long, Boolean, T> action) {
+        return transactionTemplate.execute(status -> {
+            long count = publishedObjectRepository.countCurrentlyPublishedObjects();
+            boolean isBelowThreshold = false;
+            if (checkThreshold) {
+                isBelowThreshold = count < minimalObjectCount;
+                publicationBelowThreshold.set(isBelowThreshold);
+            }
+            return action.apply(count, isBelowThreshold);
+        });
+    }
+
+    public record PublishedObjects(long count, boolean isBelowThreshold, Stream<PublishedObjectData> objects) {
     }
 
-    public record PublishedObjects(List<PublishedObjectData> objects, boolean isBelowThreshold) {
+    public record PublishedObjectHashes(long count, boolean isBelowThreshold, Stream<PublishedObjectHash> hashes,
+                                        Function<Collection<PublishedObjectHash>, List<PublishedObjectData>> contentLoader) {
     }
 }
@@ -2,7 +2,7 @@ package net.ripe.rpki.services.impl.background;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import com.google.common.hash.Hashing;
 import com.google.common.util.concurrent.AtomicDouble;
 import io.micrometer.core.instrument.Counter;
@@ -195,16 +195,17 @@ public class ResourceCacheService {
                 changedCas.size(), loggedChanges, casWithUpdates.size(), loggedCas);
 
         casWithUpdates.addAll(changedCas);
-        Runnable action = () -> allCaCertificateUpdateServiceBean.runService(
-            Collections.emptyMap(),
-            ca -> switch (ca.getType()) {
-                case HOSTED, NONHOSTED -> casWithUpdates.contains(ca.getName());
-                case ALL_RESOURCES, ROOT, INTERMEDIATE -> true;
-            }
-        );
-        sequentialBackgroundQueuedTaskRunner.submit(
+        // Updates that arrive while a previous update is still queued are merged into a single hierarchy walk
+        sequentialBackgroundQueuedTaskRunner.submitMerging(
             "update CA certificates after resource cache update",
-            action,
+            casWithUpdates,
+            cas -> allCaCertificateUpdateServiceBean.runServiceForResourceCacheChanges(
+                Collections.emptyMap(),
+                ca -> switch (ca.type()) {
+                    case HOSTED, NONHOSTED -> cas.contains(ca.name());
+                    case ALL_RESOURCES, ROOT, INTERMEDIATE -> true;
+                }
+            ),
             exception -> {
             }
         );
@@ -221,17 +222,11 @@ public class ResourceCacheService {
     private Update productionResourcesUpdate(final ImmutableResourceSet retrieved) {
         final ImmutableResourceSet cached = delegationsCache.getDelegationsCache().orElse(ImmutableResourceSet.empty());
 
-        // Cached but no longer in the retrieved set, should be the ones removed.
-        ImmutableResourceSet removed = cached.difference(retrieved);
-
-        // Retrieved but not in the cache should be the ones added.
-        ImmutableResourceSet added = retrieved.difference(cached);
-
         final DelegationDiffStat resourcesDiff = delegationsDiff(retrieved, cached);
 
         final Runnable accepted = () -> {
             delegationsCache.cacheDelegations(retrieved);
-            resourceCacheServiceMetrics.onDelegationsUpdateAccepted(added, removed);
+            resourceCacheServiceMetrics.onDelegationsUpdateAccepted(resourcesDiff.totalAdded, resourcesDiff.totalDeleted);
 
             if (resourcesDiff.totalMutations() == 0) {
                 log.info("Production CA delegations cache has no update, remaining at {} entries", resourcesDiff.localResourceCount);
@@ -259,10 +254,7 @@ public class ResourceCacheService {
         );
 
         return new Update(
-            Collections.singletonMap(productionCaName, new Changes(
-                Iterators.size(added.iterator()),
-                Iterators.size(removed.iterator())
-            )),
+            Collections.singletonMap(productionCaName, new Changes(resourcesDiff.totalAdded, resourcesDiff.totalDeleted)),
             delegationUpdateRejection,
             accepted,
             rejected
@@ -270,21 +262,21 @@ public class ResourceCacheService {
     }
 
 
-    private Update memberResourcesUpdate(ResourceServicesClient.MemberResources memberResources) {
+    private Update memberResourcesUpdate(ResourceServicesClient.CertifiableMemberResources memberResources) {
         final Map<String, Integer> certifiableResourcesCounts = memberResources.getMemberResourcesCounts();
         final Map<CaName, ImmutableResourceSet> registryResources = memberResources.getCertifiableResources();
+        final Map<CaName, ImmutableResourceSet> changedLocalResources = resourceCache.changedMemberResources(registryResources);
+        final ResourceDiffStat resourcesDiff = changedResourcesDiff(registryResources, memberResources.getResourcesSize(), changedLocalResources);
+
         /// Make sure this is in one long line to prevent multiple messages in the logfile, which may be interleaved.
         if (log.isInfoEnabled()) {
             final StringBuilder out = new StringBuilder("Fetched resources from RSNG:\n");
             certifiableResourcesCounts.forEach((resource, count) -> out.append(String.format("   %-20s: %d%n", resource, count)));
             out.append(String.format("Fetched resources total: %d%n", certifiableResourcesCounts.values().stream().reduce(0, Integer::sum)))
-                .append(String.format("Certifiable resources  : %d", accumulateResourcesSize(registryResources)));
+                .append(String.format("Certifiable resources  : %d", resourcesDiff.registrySize));
             log.info(out.toString());
         }
 
-        final Map<CaName, ImmutableResourceSet> localResources = resourceCache.allMemberResources();
-        final ResourceDiffStat resourcesDiff = resourcesDiff(registryResources, localResources);
-
         Runnable accepted = () -> {
             resourceCache.populateCache(registryResources);
             resourceCacheServiceMetrics.onMemberCacheAccepted();
@@ -316,75 +308,74 @@ public class ResourceCacheService {
         return new Update(resourcesDiff.getChangesMap(), resourceUpdateRejection, accepted, rejected);
     }
 
-    static int resourceSetSize(ImmutableResourceSet ipr) {
-        return Iterators.size(ipr.iterator());
-    }
-
-    static ResourceDiffStat resourcesDiff(Map<CaName, ImmutableResourceSet> registryResources, Map<CaName, ImmutableResourceSet> localResources) {
-
+    /**
+     * @param registrySize          the number of ranges of all <code>registryResources</code>.
+     * @param changedLocalResources the cached resources of the CAs that may have changed, CAs that are not in this map
+     *                              have the same resources in the registry and the cache (see
+     *                              {@link ResourceCache#changedMemberResources(Map)}).
+     */
+    static ResourceDiffStat changedResourcesDiff(Map<CaName, ImmutableResourceSet> registryResources, int registrySize, Map<CaName, ImmutableResourceSet> changedLocalResources) {
         final Map<CaName, Changes> changesMap = new HashMap<>();
-        final HashSet<CaName> casOnBoth = new HashSet<>(registryResources.keySet());
-        casOnBoth.retainAll(localResources.keySet());
-
-        casOnBoth.forEach(caName -> {
-            final Changes changes = resourcesSetDiff(registryResources.get(caName), localResources.get(caName));
-            changesMap.put(caName, changes);
-        });
-
-        registryResources.forEach((caName, registry) -> {
-            if(!casOnBoth.contains(caName)) {
-                int added = resourceSetSize(registry);
-                changesMap.put(caName, new Changes(added, 0));
-            }
-        });
-
-        localResources.forEach((caName, local) -> {
-            if(!casOnBoth.contains(caName)) {
-                int deleted = resourceSetSize(local);
-                changesMap.put(caName, new Changes(0, deleted));
-            }
-        });
-
+        int localSize = registrySize;
         int totalAdded = 0;
         int totalDeleted = 0;
-        for (Map.Entry<CaName, Changes> entry : changesMap.entrySet()) {
-            Changes changes = entry.getValue();
-            totalAdded += changes.added;
-            totalDeleted += changes.deleted;
+
+        for (Map.Entry<CaName, ImmutableResourceSet> entry : changedLocalResources.entrySet()) {
+            final SetDiff diff = resourcesSetDiff(registryResources.getOrDefault(entry.getKey(), ImmutableResourceSet.empty()), entry.getValue());
+            changesMap.put(entry.getKey(), diff.changes());
+            localSize += diff.oldSize - diff.newSize;
+            totalAdded += diff.added;
+            totalDeleted += diff.deleted;
         }
-        Integer localSize = accumulateResourcesSize(localResources);
-        Integer registrySize = accumulateResourcesSize(registryResources);
 
         return new ResourceDiffStat(localSize, registrySize, totalAdded, totalDeleted, changesMap);
     }
 
-    private static Integer accumulateResourcesSize(Map<CaName, ImmutableResourceSet> resourcesMap) {
-        return resourcesMap.values().stream().map(ResourceCacheService::resourceSetSize).reduce(0, Integer::sum);
+    static DelegationDiffStat delegationsDiff(ImmutableResourceSet registryDelegations, ImmutableResourceSet localDelegations) {
+        final SetDiff diff = resourcesSetDiff(registryDelegations, localDelegations);
+        return new DelegationDiffStat(diff.oldSize, diff.newSize, diff.added, diff.deleted);
     }
 
-    static DelegationDiffStat delegationsDiff(ImmutableResourceSet registryDelegations, ImmutableResourceSet localDelegations) {
-        final Changes changes = resourcesSetDiff(registryDelegations, localDelegations);
-        return new DelegationDiffStat(
-                resourceSetSize(localDelegations),
-                resourceSetSize(registryDelegations),
-                changes.added,
-                changes.deleted);
+    /**
+     * Counts the ranges of <code>newSet</code> that are not contained in <code>oldSet</code> (added) and the ranges of
+     * <code>oldSet</code> that are not contained in <code>newSet</code> (deleted). Both sets iterate their ranges in
+     * order, so this walks each set once instead of looking up every range in the other set.
+     */
+    static SetDiff resourcesSetDiff(ImmutableResourceSet newSet, ImmutableResourceSet oldSet) {
+        final List<IpResource> newRanges = Lists.newArrayList(newSet);
+        final List<IpResource> oldRanges = Lists.newArrayList(oldSet);
+        return new SetDiff(
+            newRanges.size(),
+            oldRanges.size(),
+            countNotContained(newRanges, oldRanges),
+            countNotContained(oldRanges, newRanges)
+        );
     }
 
-    private static Changes resourcesSetDiff(ImmutableResourceSet newSet, ImmutableResourceSet oldSet) {
-        int added = 0;
-        int deleted = 0;
-        for (final IpResource r : oldSet) {
-            if (!newSet.contains(r)) {
-                deleted++;
+    /**
+     * @param ranges sorted, disjoint ranges
+     * @param covering sorted, disjoint and non-adjacent ranges
+     * @return the number of <code>ranges</code> that are not contained in a single range of <code>covering</code>
+     */
+    private static int countNotContained(List<IpResource> ranges, List<IpResource> covering) {
+        int result = 0;
+        int c = 0;
+        for (IpResource range : ranges) {
+            // Only the first covering range that does not end before this range starts can contain it
+            while (c < covering.size() && covering.get(c).getEnd().compareTo(range.getStart()) < 0) {
+                c++;
             }
-        }
-        for (final IpResource r : newSet) {
-            if (!oldSet.contains(r)) {
-                added++;
+            if (c == covering.size() || !covering.get(c).contains(range)) {
+                result++;
             }
         }
-        return new Changes(added, deleted);
+        return result;
+    }
+
+    record SetDiff(int newSize, int oldSize, int added, int deleted) {
+        Changes changes() {
+            return new Changes(added, deleted);
+        }
     }
 
     private static Optional<Rejection> isAcceptableDiff(ResourceDiffStat diffStat) {
@@ -657,16 +648,12 @@ public class ResourceCacheService {
             return rs -> Optional.ofNullable(rs.get()).flatMap(x -> x.lastUpdatedAt).map(x -> x.toEpochMilli()/1000.0).orElse(Double.NaN);
         }
 
-        private static double resourceSetSizeDouble(ImmutableResourceSet ipr) {
-            return Iterators.size(ipr.iterator());
-        }
-
         public void onDelegationsUpdateException() { delegationsUpdatesException.increment(); }
 
-        public void onDelegationsUpdateAccepted(ImmutableResourceSet added, ImmutableResourceSet removed) {
+        public void onDelegationsUpdateAccepted(int added, int removed) {
             delegationsUpdatesAccepted.increment();
-            delegationsAdded.set(resourceSetSizeDouble(added));
-            delegationsRemoved.set(resourceSetSizeDouble(removed));
+            delegationsAdded.set(added);
+            delegationsRemoved.set(removed);
         }
 
         public void onDelegationsUpdateRejected() {
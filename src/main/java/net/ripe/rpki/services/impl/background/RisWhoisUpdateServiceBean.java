@@ -4,19 +4,14 @@ import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import net.ripe.rpki.bgpris.riswhois.RisWhoisFetcher;
-import net.ripe.rpki.bgpris.riswhois.RisWhoisParser;
 import net.ripe.rpki.core.services.background.BackgroundTaskRunner;
 import net.ripe.rpki.core.services.background.ConcurrentBackgroundServiceWithAdminPrivilegesOnActiveNode;
-import net.ripe.rpki.server.api.dto.BgpRisEntry;
 import net.ripe.rpki.server.api.services.read.BgpRisEntryViewService;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -67,36 +62,39 @@ public class RisWhoisUpdateServiceBean extends ConcurrentBackgroundServiceWithAd
 
     @Override
     protected void runService(Map<String, String> parameters) {
-        List<BgpRisEntry> entries = new ArrayList<>();
+        // Entries are filtered and added to the new index while the dumps are being downloaded
+        BgpRisEntryViewService.EntriesUpdate update = repository.startUpdate();
 
-        AtomicLong lastUpdated = new AtomicLong(0);
+        long entryCount = 0;
+        long lastUpdated = 0;
         for (String filename : FILENAMES) {
             String url = risWhoisBaseUrl + "/" + filename;
             try {
                 log.info("fetching RIS whois entries from {}", url);
 
-                var result = fetcher.fetch(url);
-                final Collection<BgpRisEntry> currentEntries = RisWhoisParser.parse(result.getLeft());
-                updateMetrics(url, currentEntries);
-                entries.addAll(currentEntries);
-                lastUpdated.updateAndGet(i -> Long.max(result.getRight(), i));
+                var result = fetcher.fetch(url, update);
+                updateMetrics(url, result.getLeft());
+                entryCount += result.getLeft();
+                lastUpdated = Long.max(result.getRight(), lastUpdated);
             } catch (IOException | NullPointerException e) {
+                // Entries of the failed dump may already be in the update, so the (partial) update is discarded
                 log.error(String.format("Exception while handling RIS dump from %s - aborting update", url), e);
+                return;
             }
         }
 
-        if (entries.size() >= MINIMUM_EXPECTED_UPDATES) {
-            log.info("fetched {} RIS whois entries.", entries.size());
-            repository.resetEntries(entries);
-            repository.setLastUpdated(Instant.ofEpochMilli(lastUpdated.get()));
+        if (entryCount >= MINIMUM_EXPECTED_UPDATES) {
+            log.info("fetched {} RIS whois entries.", entryCount);
+            update.commit();
+            repository.setLastUpdated(Instant.ofEpochMilli(lastUpdated));
         } else {
             log.error("Found an unusually small number of RIS whois entries, please check files at: {}", risWhoisBaseUrl);
         }
     }
 
-    private void updateMetrics(String url, Collection<?> content) {
+    private void updateMetrics(String url, long entryCount) {
         risUpdateMetrics.computeIfAbsent(url, (entryUrl) -> new RisWhoisSourceMetrics(meterRegistry, entryUrl))
-                .update(content);
+                .update(entryCount);
     }
 
     private static class RisWhoisSourceMetrics {
@@ -115,9 +113,9 @@ public class RisWhoisUpdateServiceBean extends ConcurrentBackgroundServiceWithAd
                     .register(registry);
         }
 
-        public void update(Collection<?> c) {
+        public void update(long count) {
             lastUpdate.set(Instant.now().getEpochSecond());
-            entryCount.set(c.size());
+            entryCount.set(count);
         }
     }
 }
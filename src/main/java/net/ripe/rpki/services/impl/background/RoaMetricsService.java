@@ -1,12 +1,13 @@
 package net.ripe.rpki.services.impl.background;
 
 import io.micrometer.core.instrument.Counter;
-import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import net.ripe.rpki.domain.roa.RoaConfigurationRepository;
+import net.ripe.rpki.util.JdbcDBComponent;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 @Slf4j
 @Service
@@ -20,13 +21,13 @@ public class RoaMetricsService {
 
     private final Counter roaAddCounter;
     private final Counter roaDeleteCounter;
+    private final MetricsSnapshotService.SnapshotGauge vrpCount;
 
     @Autowired
     public RoaMetricsService(MeterRegistry meterRegistry,
+                             MetricsSnapshotService metricsSnapshotService,
                              RoaConfigurationRepository roaConfigurationRepository) {
-        Gauge.builder(VRP_COUNT_METRIC, roaConfigurationRepository, RoaConfigurationRepository::countRoaPrefixes)
-                .description(VRP_COUNT_METRIC_DESCRIPTION)
-                .register(meterRegistry);
+        vrpCount = metricsSnapshotService.register(VRP_COUNT_METRIC, VRP_COUNT_METRIC_DESCRIPTION, roaConfigurationRepository::countRoaPrefixes);
 
         roaAddCounter = Counter.builder(ROA_UPDATE_METRICS)
                 .description(ROA_UPDATE_DESCRIPTION)
@@ -46,4 +47,18 @@ public class RoaMetricsService {
     public void countDeleted(int deleted) {
         roaDeleteCounter.increment(deleted);
     }
+
+    /**
+     * Adjusts the VRP count for the ROA prefixes that were actually added and removed, once the transaction commits.
+     */
+    public void roaPrefixesChanged(int added, int removed) {
+        if (added == removed) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            JdbcDBComponent.afterCommit(() -> vrpCount.add(added - removed));
+        } else {
+            vrpCount.add(added - removed);
+        }
+    }
 }
@@ -89,7 +89,7 @@ public class PublicationMetrics {
                 .register(meterRegistry);
     }
 
-    public void setPublishedObjectCount(int size) {
+    public void setPublishedObjectCount(long size) {
         this.publishedObjectCount.set(size);
     }
 }
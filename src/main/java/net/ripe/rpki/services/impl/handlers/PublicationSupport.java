@@ -1,25 +1,31 @@
 package net.ripe.rpki.services.impl.handlers;
 
 import com.google.common.base.Joiner;
-import com.google.common.collect.Maps;
+import jakarta.annotation.PreDestroy;
 import jakarta.inject.Inject;
 import lombok.extern.slf4j.Slf4j;
 import net.ripe.rpki.domain.PublishedObjectData;
+import net.ripe.rpki.domain.PublishedObjectHash;
 import net.ripe.rpki.publication.api.PublicationMessage;
-import net.ripe.rpki.publication.api.PublicationMessage.ListReply;
-import net.ripe.rpki.publication.api.PublicationMessage.ListRequest;
 import net.ripe.rpki.publication.api.PublicationMessage.WithdrawRequest;
+import net.ripe.rpki.publication.server.ChunkedPublisher;
 import net.ripe.rpki.publication.server.ExternalPublishingServer;
 import net.ripe.rpki.publication.server.PublishingServerClient;
-import net.ripe.rpki.util.Crypto;
 import net.ripe.rpki.util.Streams;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
 
@@ -38,37 +44,111 @@ public class PublicationSupport {
 
     public static final String CORE_CLIENT_ID = "RIPE_NCC_CORE";
 
+    // Maximum number of objects to load the content for in a single query
+    private static final int CONTENT_BATCH_SIZE = 1000;
+
     private final List<ExternalPublishingServer> externalPublishingServers;
     private final ForkJoinPool forkJoinPool;
+    private final ExecutorService requestExecutor;
+    private final ChunkedPublisher.Config chunkingConfig;
     private final PublicationMetrics publicationMetrics;
+    private final Duration fullListInterval;
+
+    // Objects on each publication server (by URL) after the last successful synchronisation
+    private final Map<URI, RemoteState> confirmedRemoteStates = new ConcurrentHashMap<>();
 
     @Inject
     public PublicationSupport(
             PublishingServerClient publishingServerClient,
             PublicationMetrics publicationMetrics,
-            @Value("${publication.server.url}") List<URI> publicationServerUris
+            @Value("${publication.server.url}") List<URI> publicationServerUris,
+            @Value("${publication.request.chunk.max.messages:10000}") int chunkMaxMessages,
+            @Value("${publication.request.chunk.max.bytes:67108864}") long chunkMaxBytes,
+            @Value("${publication.request.max.in.flight:2}") int maxInFlight,
+            @Value("${publication.request.max.attempts:3}") int maxAttempts,
+            @Value("${publication.server.full.list.interval.minutes:60}") long fullListIntervalMinutes
     ) {
         this.publicationMetrics = publicationMetrics;
+        this.fullListInterval = Duration.ofMinutes(fullListIntervalMinutes);
+        this.chunkingConfig = new ChunkedPublisher.Config(chunkMaxMessages, chunkMaxBytes, maxInFlight, maxAttempts);
         log.info("Interfacing with {} external publication servers: {}", publicationServerUris.size(), publicationServerUris);
 
         externalPublishingServers = publicationServerUris.stream()
                 .map(uri -> new ExternalPublishingServer(publishingServerClient,
                         publicationMetrics.getMeterRegistry(), uri)).toList();
         forkJoinPool = new ForkJoinPool(Math.max(1, externalPublishingServers.size()));
+        AtomicInteger threadCount = new AtomicInteger();
+        requestExecutor = Executors.newFixedThreadPool(Math.max(1, externalPublishingServers.size() * maxInFlight), runnable -> {
+            Thread thread = new Thread(runnable, "publication-request-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        requestExecutor.shutdownNow();
+        forkJoinPool.shutdownNow();
     }
 
-    public void publishAllObjects(List<PublishedObjectData> publishedObjects) {
+    /**
+     * Synchronises the publication servers with the stream of local objects. This happens in two phases:
+     * <ol>
+     *     <li>the (stored) hashes of the local objects are compared with the hashes of the objects on every
+     *     publication server, without loading the content of the local objects,</li>
+     *     <li>the content of the objects that are missing or different on any of the publication servers is loaded
+     *     in batches using the <code>contentLoader</code>.</li>
+     * </ol>
+     * The stream and the content loader are only used on the calling thread. The resulting messages are sent to
+     * every publication server in chunks (see {@link ChunkedPublisher}) while the content is loaded.
+     * <p>
+     * The objects on a publication server are only listed when there is no confirmed state of a previous synchronisation
+     * or when the last listing is older than the full list interval. The confirmed state is dropped whenever a
+     * synchronisation fails or the publication server replies with an error, so the next run reconciles with a
+     * full list.
+     */
+    public void publishAllObjects(Stream<PublishedObjectHash> localObjects,
+                                  Function<Collection<PublishedObjectHash>, List<PublishedObjectData>> contentLoader) {
         boolean success = false;
         try {
-            success = forkJoinPool.submit(() -> externalPublishingServers.parallelStream().map(externalPublishingServer -> {
+            List<ServerDiff> serverDiffs = forkJoinPool.submit(() -> externalPublishingServers.parallelStream()
+                    .map(externalPublishingServer -> {
+                        try {
+                            return new ServerDiff(externalPublishingServer, getRemoteState(externalPublishingServer));
+                        } catch (Exception e) {
+                            log.error("Retrieving objects from external publication server {} failed:", externalPublishingServer.getPublishingServerUrl(), e);
+                            return null;
+                        }
+                    })
+                    .filter(Objects::nonNull)
+                    .toList()).join();
+
+            // Objects that need to be published to at least one of the publication servers
+            Map<URI, PublishedObjectHash> objectsToPublish = new LinkedHashMap<>();
+            localObjects.forEachOrdered(local -> serverDiffs.forEach(serverDiff -> {
+                if (serverDiff.addLocalObject(local)) {
+                    objectsToPublish.putIfAbsent(local.getUri(), local);
+                }
+            }));
+
+            serverDiffs.forEach(serverDiff -> serverDiff.startPublication(CORE_CLIENT_ID));
+
+            log.info("Loading content of {} objects to publish", objectsToPublish.size());
+            Streams.chunked(objectsToPublish.values().stream(), CONTENT_BATCH_SIZE).forEach(batch ->
+                contentLoader.apply(batch).forEach(content -> serverDiffs.forEach(serverDiff -> serverDiff.addContent(content)))
+            );
+
+            boolean allServersSynchronised = serverDiffs.stream().map(serverDiff -> {
                 try {
-                    publishObjects(externalPublishingServer, publishedObjects, CORE_CLIENT_ID);
+                    serverDiff.finishPublication();
+                    serverDiff.confirmRemoteState();
                     return true;
                 } catch (Exception e) {
-                    log.error("Publication to external publication server {} failed:", externalPublishingServer.getPublishingServerUrl(), e);
+                    log.error("Publication to external publication server {} failed:", serverDiff.externalPublishingServer.getPublishingServerUrl(), e);
                     return false;
                 }
-            })).join().allMatch(Boolean::booleanValue);
+            }).reduce(true, Boolean::logicalAnd);
+            success = allServersSynchronised && serverDiffs.size() == externalPublishingServers.size();
         } catch (Exception e) {
             log.error("Publication to external publication servers failed", e);
         }
@@ -80,86 +160,125 @@ public class PublicationSupport {
         }
     }
 
-    private void publishObjects(ExternalPublishingServer externalPublishingServer, List<PublishedObjectData> publishedObjects, String clientId) {
-        final Map<URI, PublishedObjectData> localObjects = publishedObjects.stream().collect(
-                Collectors.toMap(PublishedObjectData::getUri, po -> po)
-        );
-        log.info("Publishing {} active objects to {} for client {}", localObjects.size(), externalPublishingServer.getPublishingServerUrl(), clientId);
-
-        final List<PublicationMessage.ListReply> objectOnServer = getObjectsFromServer(externalPublishingServer, clientId);
-        Map<URI, ListReply> theirObjects = groupPublicationMessagesByUri(objectOnServer);
-        log.info("Received {} ({} unique URIs) objects from server for client {}", objectOnServer.size(), theirObjects.size(), clientId);
-
-        List<PublicationMessage> resolutionMessages = getResolutionMessages(theirObjects, localObjects);
-        if (resolutionMessages.isEmpty()) {
-            return;
+    private RemoteState getRemoteState(ExternalPublishingServer externalPublishingServer) {
+        // Removed, so the state is not reused when this synchronisation does not complete successfully
+        RemoteState confirmed = confirmedRemoteStates.remove(externalPublishingServer.getPublishingServerUrl());
+        Instant now = Instant.now();
+        if (confirmed != null && confirmed.listedAt().plus(fullListInterval).isAfter(now)) {
+            log.info("Using {} objects confirmed at last publication to server {}, last listed at {}", confirmed.objects().size(), externalPublishingServer.getPublishingServerUrl(), confirmed.listedAt());
+            return confirmed;
         }
-        log.info("Sending {} publish/replace/withdraw operations for client {}", resolutionMessages.size(), clientId);
+        Map<URI, String> objects = externalPublishingServer.listObjects(CORE_CLIENT_ID);
+        log.info("Received {} objects from server {}", objects.size(), externalPublishingServer.getPublishingServerUrl());
+        return new RemoteState(objects, now);
+    }
 
-        List<? extends PublicationMessage> publishResults = externalPublishingServer.execute(resolutionMessages, clientId);
+    /**
+     * @return true when there were error replies
+     */
+    private boolean logErrors(List<? extends PublicationMessage> publishResults) {
         if (publishResults.stream().anyMatch(PublicationMessage.isErrorReply)) {
             final Stream<? extends PublicationMessage> errorReplies =
                     publishResults.stream().filter(PublicationMessage.isErrorReply);
-            logErrors(errorReplies);
+            Streams.grouped(errorReplies, 1000).forEach(bucket ->
+                    log.error("Got errors from the publication server:\n" + Joiner.on('\n').join(bucket)));
+            return true;
         }
+        return false;
     }
 
-    private void logErrors(Stream<? extends PublicationMessage> errorReplies) {
-        Streams.grouped(errorReplies, 1000).forEach(bucket ->
-                log.error("Got errors from the publication server:\n" + Joiner.on('\n').join(bucket)));
+    /**
+     * The (hex encoded) hashes of the objects on a publication server, by URI.
+     */
+    private record RemoteState(Map<URI, String> objects, Instant listedAt) {
     }
 
-    private static List<PublicationMessage> getResolutionMessages(Map<URI, ListReply> remoteObjects, Map<URI, PublishedObjectData> localObjects) {
-        List<PublicationMessage> result = new ArrayList<>();
-
-        Set<URI> localUris = localObjects.keySet();
-        Set<URI> remoteUris = remoteObjects.keySet();
+    /**
+     * Difference between the objects on a publication server and the local objects, computed incrementally while
+     * the hashes of the local objects are streamed.
+     */
+    private class ServerDiff {
+        private final ExternalPublishingServer externalPublishingServer;
+        private final Instant remoteStateListedAt;
+        // Hashes of the remote objects that have not (yet) been matched with a local object
+        private final Map<URI, String> unmatchedRemoteObjects;
+        // Hashes of the objects on the server once all messages are processed successfully
+        private final Map<URI, String> expectedRemoteObjects = new HashMap<>();
+        private final AtomicBoolean errorReplies = new AtomicBoolean(false);
+        // Local objects that need to be published, with the hash of the remote object to replace (if any)
+        private final Map<URI, Optional<String>> pendingPublishes = new HashMap<>();
+        private long localObjectCount = 0;
+        private ChunkedPublisher publisher;
 
-        Set<URI> onlyRemote = new HashSet<>(remoteUris);
-        onlyRemote.removeAll(localUris);
+        ServerDiff(ExternalPublishingServer externalPublishingServer, RemoteState remoteState) {
+            this.externalPublishingServer = externalPublishingServer;
+            this.remoteStateListedAt = remoteState.listedAt();
+            this.unmatchedRemoteObjects = remoteState.objects();
+        }
 
-        Set<URI> onlyLocal = new HashSet<>(localUris);
-        onlyLocal.removeAll(remoteUris);
+        /**
+         * @return true when the content of the local object needs to be published to this server
+         */
+        boolean addLocalObject(PublishedObjectHash local) {
+            localObjectCount++;
+            String remoteHash = unmatchedRemoteObjects.remove(local.getUri());
+            if (remoteHash == null) {
+                // Not replacing remote objects, we are only publishing new ones, so the hash must be empty.
+                pendingPublishes.put(local.getUri(), Optional.empty());
+                expectedRemoteObjects.put(local.getUri(), local.getSha256());
+                return true;
+            } else if (!remoteHash.equalsIgnoreCase(local.getSha256())) {
+                pendingPublishes.put(local.getUri(), Optional.of(remoteHash));
+                expectedRemoteObjects.put(local.getUri(), local.getSha256());
+                return true;
+            } else {
+                // All good, local and published hash match.
+                expectedRemoteObjects.put(local.getUri(), remoteHash);
+                return false;
+            }
+        }
 
-        Set<URI> existBoth = new HashSet<>(localUris);
-        existBoth.retainAll(remoteUris);
+        /**
+         * Starts sending messages to the publication server, beginning with the withdrawals since these are
+         * known once all local objects are added.
+         */
+        void startPublication(String clientId) {
+            log.info("Publishing {} active objects to {} for client {}", localObjectCount, externalPublishingServer.getPublishingServerUrl(), clientId);
+            log.info("Sending {} publish/replace and {} withdraw operations for client {}", pendingPublishes.size(), unmatchedRemoteObjects.size(), clientId);
 
-        // URIs only on remote need to all be withdrawn.
-        for (URI toWithdraw : onlyRemote) {
-            String hash = remoteObjects.get(toWithdraw).hash;
-            result.add(new WithdrawRequest(toWithdraw, hash));
+            publisher = new ChunkedPublisher(externalPublishingServer, clientId, chunkingConfig, requestExecutor, replies -> {
+                if (logErrors(replies)) {
+                    errorReplies.set(true);
+                }
+            });
+            // URIs only on remote need to all be withdrawn.
+            unmatchedRemoteObjects.forEach((uri, hash) -> publisher.add(new WithdrawRequest(uri, hash)));
         }
 
-        // URIs found only on local have to be republished if the last updated publishing object is publishable.
-        for (URI toRepublish : onlyLocal) {
-            PublishedObjectData latest = localObjects.get(toRepublish);
-            // Not replacing remote objects, we are only publishing new ones, so the hash must be empty.
-            result.add(new PublicationMessage.PublishRequest(latest.getUri(), latest.getContent(), Optional.empty()));
+        void addContent(PublishedObjectData local) {
+            Optional<String> hashToReplace = pendingPublishes.remove(local.getUri());
+            if (hashToReplace != null) {
+                publisher.add(new PublicationMessage.PublishRequest(local.getUri(), local.getContent(), hashToReplace));
+            }
         }
 
-        // URIs found on both has might need to be withdrawn, or leave as is.
-        for (URI onBoth : existBoth) {
-            PublishedObjectData local = localObjects.get(onBoth);
-            ListReply remote = remoteObjects.get(onBoth);
-            String localObjectHash = Crypto.sha256(local.getContent());
-            if (!remote.hash.equalsIgnoreCase(localObjectHash)) {
-                result.add(new PublicationMessage.PublishRequest(local.getUri(), local.getContent(), Optional.of(remote.hash)));
-            } else {
-                // All good, local and published hash match.
+        void finishPublication() {
+            publisher.finish();
+            if (!pendingPublishes.isEmpty()) {
+                throw new IllegalStateException("content of " + pendingPublishes.size() + " objects to publish was not loaded, e.g. " + pendingPublishes.keySet().iterator().next());
             }
+            log.info("Sent {} operations in {} requests to {}", publisher.getMessageCount(), publisher.getChunkCount(), externalPublishingServer.getPublishingServerUrl());
         }
 
-        return result;
-    }
-
-    private Map<URI, ListReply> groupPublicationMessagesByUri(List<ListReply> publicationMessages) {
-        return Maps.uniqueIndex(publicationMessages, input -> input.uri);
-    }
-
-    private List<ListReply> getObjectsFromServer(ExternalPublishingServer externalPublishingServer, String clientId) {
-        final List<ListRequest> messages = Collections.singletonList(new ListRequest());
-        return externalPublishingServer.execute(messages, clientId).stream()
-                .filter(PublicationMessage.isListReply)
-                .map(x -> (ListReply) x).toList();
+        /**
+         * Keeps the state of the server for the next synchronisation, unless the server replied with errors.
+         */
+        void confirmRemoteState() {
+            if (errorReplies.get()) {
+                log.warn("Not keeping the state of server {} after error replies, objects will be listed on next publication", externalPublishingServer.getPublishingServerUrl());
+                return;
+            }
+            confirmedRemoteStates.put(externalPublishingServer.getPublishingServerUrl(), new RemoteState(expectedRemoteObjects, remoteStateListedAt));
+        }
     }
 }
@@ -74,6 +74,7 @@ public class UpdateRoaConfigurationCommandHandler extends AbstractCertificateAut
 
         roaMetricsService.countAdded(command.getAdditions().size());
         roaMetricsService.countDeleted(command.getDeletions().size());
+        roaMetricsService.roaPrefixesChanged(prefixDiff.added().size(), prefixDiff.removed().size());
     }
 
     private void validateEntityTag(UpdateRoaConfigurationCommand command, RoaConfiguration configuration) {
@@ -1,5 +1,6 @@
 package net.ripe.rpki.services.impl.jpa;
 
+import net.ripe.rpki.commons.util.VersionedId;
 import net.ripe.rpki.domain.*;
 import net.ripe.rpki.ripencc.support.persistence.JpaRepository;
 import net.ripe.rpki.server.api.commands.*;
@@ -23,6 +24,7 @@ import jakarta.persistence.NoResultException;
 import jakarta.persistence.PersistenceException;
 import jakarta.persistence.Query;
 import javax.security.auth.x500.X500Principal;
+import java.sql.Timestamp;
 import java.time.Instant;
 import java.util.*;
 import java.util.regex.Matcher;
@@ -229,46 +231,80 @@ public class JpaCertificateAuthorityRepository extends JpaRepository<Certificate
     }
 
     @Override
-    public Collection<ManagedCertificateAuthority> findAllWithOutdatedManifests(boolean includeUpdatedConfiguration, DateTime nextUpdateCutoff, int maxResults) {
-        return manager.createQuery(
-            "SELECT ca" +
-                "  FROM " + ManagedCertificateAuthority.class.getSimpleName() + " ca" +
-                // Certificate authority configuration was updated since the last time it as applied, so publish might be needed
-                " WHERE (:includeUpdatedConfiguration = TRUE AND ca.configurationUpdatedAt > ca.configurationAppliedAt)" +
-                "    OR EXISTS (SELECT kp" +
-                "                 FROM ca.keyPairs kp" +
-                "                 JOIN kp.incomingResourceCertificate incoming" +
-                // Key pair must be publishable and must have a current incoming certificate
-                "                WHERE kp.status IN (:publishable)" +
-                // Objects that need to be withdrawn or published
-                "                  AND (       EXISTS (SELECT po" +
-                "                                        FROM PublishedObject po" +
-                "                                       WHERE po.issuingKeyPair = kp" +
-                "                                         AND po.status in :pending)" +
-                // No active manifest, or manifest will expire soon, so publish needed
-                "                       OR NOT EXISTS (SELECT mft" +
-                "                                        FROM ManifestEntity mft" +
-                "                                        JOIN mft.publishedObject po" +
-                "                                       WHERE mft.keyPair = kp" +
-                "                                         AND po.status IN :active" +
-                "                                         AND po.validityPeriod.notValidAfter > :nextUpdateCutoff)" +
-                // No active CRL, or CRL will expire soon, so publish needed
-                "                       OR NOT EXISTS (SELECT crl" +
-                "                                        FROM CrlEntity crl" +
-                "                                        JOIN crl.publishedObject po" +
-                "                                       WHERE crl.keyPair = kp" +
-                "                                         AND po.status IN :active" +
-                "                                         AND po.validityPeriod.notValidAfter > :nextUpdateCutoff)))",
-            ManagedCertificateAuthority.class)
-            // See KeyPairEntity.isPublishable for the next two parameters
-            .setParameter("publishable", Arrays.asList(KeyPairStatus.PENDING, KeyPairStatus.CURRENT, KeyPairStatus.OLD))
-            // Need to update when there are published object with pending status
-            .setParameter("active", PublicationStatus.ACTIVE_STATUSES)
-            .setParameter("pending", PublicationStatus.PENDING_STATUSES)
-            .setParameter("nextUpdateCutoff", nextUpdateCutoff)
-            .setParameter("includeUpdatedConfiguration", includeUpdatedConfiguration)
-            .setMaxResults(maxResults)
-            .getResultList();
+    public int queuePendingPublicationsForManifestsAndCrlsExpiringBefore(DateTime nextUpdateCutoff) {
+        return manager.createNativeQuery("""
+                INSERT INTO pending_publication (ca_id)
+                SELECT expiring.ca_id
+                  FROM (SELECT DISTINCT kp.ca_id
+                          FROM published_object po
+                          JOIN keypair kp ON kp.id = po.issuing_key_pair_id
+                         WHERE po.status IN ('TO_BE_PUBLISHED', 'PUBLISHED')
+                           AND po.validity_not_after <= :nextUpdateCutoff
+                           AND kp.status IN ('PENDING', 'CURRENT', 'OLD')
+                           AND (EXISTS (SELECT 1 FROM manifestentity mft WHERE mft.published_object_id = po.id)
+                                OR EXISTS (SELECT 1 FROM crlentity crl WHERE crl.published_object_id = po.id))) expiring
+                ON CONFLICT (ca_id) WHERE NOT claimed DO NOTHING
+                """)
+            .setParameter("nextUpdateCutoff", new Timestamp(nextUpdateCutoff.getMillis()))
+            .executeUpdate();
+    }
+
+    /**
+     * The rows claimed by an earlier run that did not complete are returned together with the rows claimed now. The
+     * <code>pending_publication</code> table only contains the rows before the update, so these do not overlap.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<PendingPublication> findPendingPublications() {
+        Stream<Object[]> rows = manager.createNativeQuery("""
+                WITH RECURSIVE claimed AS (
+                    UPDATE pending_publication SET claimed = TRUE WHERE NOT claimed RETURNING ca_id, generation
+                ), pending (ca_id, generation) AS (
+                    SELECT queued.ca_id, MAX(queued.generation)
+                      FROM (SELECT ca_id, generation FROM pending_publication WHERE claimed
+                             UNION ALL
+                            SELECT ca_id, generation FROM claimed) queued
+                     GROUP BY queued.ca_id
+                ), ancestor (ca_id, parent_id, depth) AS (
+                    SELECT ca.id, ca.parent_id, 0
+                      FROM pending
+                      JOIN certificateauthority ca ON ca.id = pending.ca_id
+                     UNION ALL
+                    SELECT ancestor.ca_id, parent.parent_id, ancestor.depth + 1
+                      FROM ancestor
+                      JOIN certificateauthority parent ON parent.id = ancestor.parent_id
+                )
+                SELECT ca.id, ca.version, ca.name, pending.generation, MAX(ancestor.depth) AS depth,
+                       (SELECT closest.parent_id
+                          FROM ancestor closest
+                          JOIN pending pending_ancestor ON pending_ancestor.ca_id = closest.parent_id
+                         WHERE closest.ca_id = ca.id
+                         ORDER BY closest.depth
+                         LIMIT 1) AS pending_ancestor_id
+                  FROM pending
+                  JOIN certificateauthority ca ON ca.id = pending.ca_id
+                  JOIN ancestor ON ancestor.ca_id = ca.id
+                 WHERE ca.type <> 'NONHOSTED'
+                 GROUP BY ca.id, ca.version, ca.name, pending.generation
+                 ORDER BY depth, ca.id
+                """)
+            .getResultStream();
+        return rows.map(row -> new PendingPublication(
+                new VersionedId(((Number) row[0]).longValue(), ((Number) row[1]).longValue()),
+                new X500Principal((String) row[2]),
+                ((Number) row[3]).longValue(),
+                ((Number) row[4]).intValue(),
+                row[5] == null ? null : ((Number) row[5]).longValue()
+            ))
+            .toList();
+    }
+
+    @Override
+    public void removePendingPublication(PendingPublication pendingPublication) {
+        manager.createNativeQuery("DELETE FROM pending_publication WHERE ca_id = :caId AND claimed AND generation <= :generation")
+            .setParameter("caId", pendingPublication.caId().getId())
+            .setParameter("generation", pendingPublication.generation())
+            .executeUpdate();
     }
 
     @Override
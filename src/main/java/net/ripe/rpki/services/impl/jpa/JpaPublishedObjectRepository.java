@@ -1,22 +1,32 @@
 package net.ripe.rpki.services.impl.jpa;
 
+import com.google.common.hash.HashCode;
 import net.ripe.rpki.domain.*;
 import net.ripe.rpki.ripencc.support.persistence.JpaRepository;
 import org.apache.commons.lang.Validate;
+import org.hibernate.jpa.HibernateHints;
 import org.joda.time.DateTime;
 import org.joda.time.Instant;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Repository;
 
+import jakarta.inject.Inject;
 import java.net.URI;
 import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 @Repository
 public class JpaPublishedObjectRepository extends JpaRepository<PublishedObject> implements PublishedObjectRepository {
 
+    @Inject
+    private ApplicationEventPublisher eventPublisher;
+
     @Override
     public List<PublishedObject> findActiveManifestEntries(KeyPairEntity keyPair) {
         return manager.createQuery("select po from PublishedObject po " +
@@ -48,24 +58,80 @@ public class JpaPublishedObjectRepository extends JpaRepository<PublishedObject>
     }
 
     @Override
-    public List<PublishedObjectData> findCurrentlyPublishedObjects() {
+    public long countCurrentlyPublishedObjects() {
+        Number count = (Number) manager.createNativeQuery(
+            "SELECT (SELECT COUNT(*) FROM published_object po WHERE po.status IN :published) " +
+                "     + (SELECT COUNT(*) FROM ta_published_object po WHERE po.status IN :published)")
+            .setParameter("published", publishedStatusNames())
+            .getSingleResult();
+        return count.longValue();
+    }
+
+    @Override
+    public Stream<PublishedObjectData> streamCurrentlyPublishedObjects(int fetchSize) {
         @SuppressWarnings("unchecked")
-        Stream<PublishedObjectData> stream = manager.createNativeQuery(
-            "SELECT po.created_at, po.directory || po.filename AS uri, po.content " +
+        Stream<Object[]> rows = manager.createNativeQuery(
+            "SELECT po.created_at, po.directory || po.filename AS uri, po.content, po.hash_sha256 " +
                 "  FROM published_object po " +
                 " WHERE po.status IN :published " +
                 "UNION ALL " +
-                "SELECT po.created_at, po.uri, po.content " +
+                "SELECT po.created_at, po.uri, po.content, po.hash_sha256 " +
                 "  FROM ta_published_object po " +
                 " WHERE po.status IN :published ")
-            .setParameter("published", PublicationStatus.PUBLISHED_STATUSES.stream().map(PublicationStatus::name).collect(Collectors.toSet()))
-            .getResultStream()
-            .map((o) -> {
-                Object[] row = (Object[]) o;
-                return new PublishedObjectData((java.time.Instant) row[0], URI.create((String) row[1]), (byte[]) row[2]);
-            });
-
-        return stream.toList();
+            .setParameter("published", publishedStatusNames())
+            // The PostgreSQL driver only uses a server side cursor when a fetch size is set (and the query runs
+            // inside a transaction), otherwise the complete result set is loaded into memory.
+            .setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+            .setHint(HibernateHints.HINT_READ_ONLY, true)
+            .getResultStream();
+
+        return rows.map(row -> new PublishedObjectData((java.time.Instant) row[0], URI.create((String) row[1]), (byte[]) row[2], HashCode.fromBytes((byte[]) row[3]).toString()));
+    }
+
+    @Override
+    public Stream<PublishedObjectHash> streamCurrentlyPublishedObjectHashes(int fetchSize) {
+        @SuppressWarnings("unchecked")
+        Stream<Object[]> rows = manager.createNativeQuery(
+            "SELECT po.id, po.directory || po.filename AS uri, po.hash_sha256 " +
+                "  FROM published_object po " +
+                " WHERE po.status IN :published " +
+                "UNION ALL " +
+                "SELECT po.id, po.uri, po.hash_sha256 " +
+                "  FROM ta_published_object po " +
+                " WHERE po.status IN :published ")
+            .setParameter("published", publishedStatusNames())
+            .setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+            .setHint(HibernateHints.HINT_READ_ONLY, true)
+            .getResultStream();
+
+        return rows.map(row -> new PublishedObjectHash(((Number) row[0]).longValue(), URI.create((String) row[1]), HashCode.fromBytes((byte[]) row[2]).toString()));
+    }
+
+    @Override
+    public List<PublishedObjectData> findPublishedObjectData(Collection<PublishedObjectHash> objects) {
+        if (objects.isEmpty()) {
+            return Collections.emptyList();
+        }
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = manager.createNativeQuery(
+            "SELECT po.created_at, po.directory || po.filename AS uri, po.content " +
+                "  FROM published_object po " +
+                " WHERE po.id IN :ids " +
+                "UNION ALL " +
+                "SELECT po.created_at, po.uri, po.content " +
+                "  FROM ta_published_object po " +
+                " WHERE po.id IN :ids ")
+            .setParameter("ids", objects.stream().map(PublishedObjectHash::getId).collect(Collectors.toSet()))
+            .setHint(HibernateHints.HINT_READ_ONLY, true)
+            .getResultList();
+
+        return rows.stream()
+            .map(row -> new PublishedObjectData((java.time.Instant) row[0], URI.create((String) row[1]), (byte[]) row[2]))
+            .toList();
+    }
+
+    private static Set<String> publishedStatusNames() {
+        return PublicationStatus.PUBLISHED_STATUSES.stream().map(PublicationStatus::name).collect(Collectors.toSet());
     }
 
     @SuppressWarnings("unchecked")
@@ -77,7 +143,7 @@ public class JpaPublishedObjectRepository extends JpaRepository<PublishedObject>
 
     @Override
     public void withdrawAllForKeyPair(KeyPairEntity keyPair) {
-        createQuery("UPDATE PublishedObject po" +
+        int count = createQuery("UPDATE PublishedObject po" +
             "   SET po.version = po.version + 1," +
             "       po.updatedAt = :now," +
             "       po.status = CASE po.status" +
@@ -93,6 +159,7 @@ public class JpaPublishedObjectRepository extends JpaRepository<PublishedObject>
             .setParameter("published", PublicationStatus.PUBLISHED)
             .setParameter("withdrawn", PublicationStatus.WITHDRAWN)
             .executeUpdate();
+        publishedObjectsChanged(count);
     }
 
     @Override
@@ -136,6 +203,7 @@ public class JpaPublishedObjectRepository extends JpaRepository<PublishedObject>
             .setParameter("published", PublicationStatus.PUBLISHED)
             .setParameter("issuingKeyPair", issuingKeyPair)
             .executeUpdate();
+        publishedObjectsChanged(count);
         return count;
     }
 
@@ -158,7 +226,7 @@ public class JpaPublishedObjectRepository extends JpaRepository<PublishedObject>
 
     @Override
     public int withdrawObjectsForDeletedKeys() {
-        return createQuery("UPDATE PublishedObject po" +
+        int count = createQuery("UPDATE PublishedObject po" +
             "   SET po.version = po.version + 1," +
             "       po.updatedAt = :now, " +
             "       po.status = :withdrawn" +
@@ -168,6 +236,14 @@ public class JpaPublishedObjectRepository extends JpaRepository<PublishedObject>
             .setParameter("withdrawn", PublicationStatus.WITHDRAWN)
             .setParameter("toBeWithdrawn", PublicationStatus.TO_BE_WITHDRAWN)
             .executeUpdate();
+        publishedObjectsChanged(count);
+        return count;
+    }
+
+    private void publishedObjectsChanged(int count) {
+        if (count > 0) {
+            eventPublisher.publishEvent(new PublishedObjectsChangedEvent(count));
+        }
     }
 
     @Override
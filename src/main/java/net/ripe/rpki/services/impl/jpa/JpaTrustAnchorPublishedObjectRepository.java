@@ -1,11 +1,14 @@
 package net.ripe.rpki.services.impl.jpa;
 
 import net.ripe.rpki.domain.PublicationStatus;
+import net.ripe.rpki.domain.PublishedObjectsChangedEvent;
 import net.ripe.rpki.domain.TrustAnchorPublishedObject;
 import net.ripe.rpki.domain.TrustAnchorPublishedObjectRepository;
 import org.joda.time.Instant;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
 
+import jakarta.inject.Inject;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import java.util.List;
@@ -16,6 +19,9 @@ public class JpaTrustAnchorPublishedObjectRepository implements TrustAnchorPubli
     @PersistenceContext
     protected EntityManager manager;
 
+    @Inject
+    private ApplicationEventPublisher eventPublisher;
+
     @Override
     public List<TrustAnchorPublishedObject> findActiveObjects() {
         return manager.createQuery("select po from TrustAnchorPublishedObject po where po.status IN :active", TrustAnchorPublishedObject.class)
@@ -60,6 +66,9 @@ public class JpaTrustAnchorPublishedObjectRepository implements TrustAnchorPubli
             .setParameter("toBePublished", PublicationStatus.TO_BE_PUBLISHED)
             .setParameter("published", PublicationStatus.PUBLISHED)
             .executeUpdate();
+        if (count > 0) {
+            eventPublisher.publishEvent(new PublishedObjectsChangedEvent(count));
+        }
         return count;
     }
 }
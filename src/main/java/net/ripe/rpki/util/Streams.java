@@ -9,6 +9,7 @@ import java.util.function.Predicate;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public final class Streams {
 
@@ -24,6 +25,38 @@ public final class Streams {
         return grouped(s.stream(), chunkSize);
     }
 
+    /**
+     * Lazily splits the stream into consecutive chunks of at most <code>chunkSize</code> elements. Unlike
+     * {@link #grouped(Stream, int)} only a single chunk is held in memory at a time, so this can be used on
+     * (database) cursor backed streams. The returned stream closes the source stream when it is closed.
+     */
+    public static <T> Stream<List<T>> chunked(final Stream<T> s, final int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunk size must be positive: " + chunkSize);
+        }
+        final Iterator<T> source = s.iterator();
+        final Iterator<List<T>> chunks = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return source.hasNext();
+            }
+
+            @Override
+            public List<T> next() {
+                if (!source.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                List<T> chunk = new ArrayList<>(chunkSize);
+                while (chunk.size() < chunkSize && source.hasNext()) {
+                    chunk.add(source.next());
+                }
+                return chunk;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(chunks, Spliterator.ORDERED), false)
+            .onClose(s::close);
+    }
+
     public static <T> Predicate<T> distinctByKey(
             Function<? super T, ?> keyExtractor) {
 
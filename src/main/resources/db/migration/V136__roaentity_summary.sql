@@ -0,0 +1,8 @@
+-- Decoded ROA attributes used to validate ROAs without parsing the CMS object. Existing ROAs are filled in from
+-- their CMS object the first time they are validated.
+ALTER TABLE roaentity
+    ADD COLUMN roa_asn NUMERIC,
+    ADD COLUMN roa_prefixes TEXT,
+    ADD COLUMN roa_parent_certificate_uri TEXT,
+    ADD COLUMN roa_not_valid_before TIMESTAMP WITH TIME ZONE,
+    ADD COLUMN roa_not_valid_after TIMESTAMP WITH TIME ZONE;
@@ -0,0 +1,110 @@
+-- Managed CAs that need a new manifest and CRL. Rows are added by the triggers below when objects become pending,
+-- the ASPA/ROA configuration is updated, or a key receives an incoming certificate, and by the publication service for
+-- manifests and CRLs that are about to expire. A CA has at most one unclaimed row, so queueing a CA that is already
+-- queued does not write anything. The publication service claims the rows it is going to process and removes them
+-- afterwards, a CA that is queued again in the meantime gets a new unclaimed row.
+CREATE SEQUENCE seq_pending_publication;
+
+CREATE TABLE pending_publication (
+    generation BIGINT  NOT NULL DEFAULT nextval('seq_pending_publication') PRIMARY KEY,
+    ca_id      BIGINT  NOT NULL REFERENCES certificateauthority (id) ON DELETE CASCADE,
+    claimed    BOOLEAN NOT NULL DEFAULT FALSE
+);
+CREATE UNIQUE INDEX pending_publication_unclaimed_ca_id_idx ON pending_publication (ca_id) WHERE NOT claimed;
+CREATE INDEX pending_publication_ca_id_idx ON pending_publication (ca_id);
+
+CREATE FUNCTION queue_pending_publication(queued_ca_id BIGINT) RETURNS void AS
+$$
+BEGIN
+  INSERT INTO pending_publication (ca_id) VALUES (queued_ca_id)
+  ON CONFLICT (ca_id) WHERE NOT claimed DO NOTHING;
+END;
+$$
+LANGUAGE plpgsql;
+
+-- Deferred until commit, so objects that are published by the same transaction (e.g. the new manifest and CRL
+-- themselves) do not queue the CA again.
+CREATE FUNCTION published_object_pending_publication_trigger() RETURNS trigger AS
+$$
+BEGIN
+  IF EXISTS (SELECT 1 FROM published_object WHERE id = NEW.id AND status IN ('TO_BE_PUBLISHED', 'TO_BE_WITHDRAWN')) THEN
+    PERFORM queue_pending_publication(kp.ca_id) FROM keypair kp WHERE kp.id = NEW.issuing_key_pair_id;
+  END IF;
+  RETURN NULL;
+END;
+$$
+LANGUAGE plpgsql;
+
+CREATE CONSTRAINT TRIGGER published_object_pending_publication AFTER INSERT OR UPDATE OF status ON published_object
+  DEFERRABLE INITIALLY DEFERRED
+  FOR EACH ROW
+  WHEN (NEW.status IN ('TO_BE_PUBLISHED', 'TO_BE_WITHDRAWN') AND NEW.issuing_key_pair_id IS NOT NULL)
+EXECUTE PROCEDURE published_object_pending_publication_trigger();
+
+CREATE FUNCTION certificateauthority_pending_publication_trigger() RETURNS trigger AS
+$$
+BEGIN
+  PERFORM queue_pending_publication(NEW.id);
+  RETURN NULL;
+END;
+$$
+LANGUAGE plpgsql;
+
+-- Non-hosted CAs are not published by this service, so they are never queued.
+CREATE TRIGGER certificateauthority_pending_publication AFTER INSERT OR UPDATE OF configuration_updated_at ON certificateauthority
+  FOR EACH ROW
+  WHEN (NEW.type <> 'NONHOSTED' AND NEW.configuration_updated_at > NEW.configuration_applied_at)
+EXECUTE PROCEDURE certificateauthority_pending_publication_trigger();
+
+-- A key with a new incoming certificate becomes publishable and needs a manifest and CRL. Updates of an existing
+-- incoming certificate do not change whether the key is publishable.
+CREATE FUNCTION incoming_certificate_pending_publication_trigger() RETURNS trigger AS
+$$
+BEGIN
+  PERFORM queue_pending_publication(kp.ca_id) FROM keypair kp WHERE kp.id = NEW.subject_keypair_id;
+  RETURN NULL;
+END;
+$$
+LANGUAGE plpgsql;
+
+CREATE TRIGGER incoming_certificate_pending_publication AFTER INSERT ON resourcecertificate
+  FOR EACH ROW
+  WHEN (NEW.type = 'INCOMING' AND NEW.subject_keypair_id IS NOT NULL)
+EXECUTE PROCEDURE incoming_certificate_pending_publication_trigger();
+
+CREATE TRIGGER incoming_certificate_key_pair_pending_publication AFTER UPDATE OF subject_keypair_id ON resourcecertificate
+  FOR EACH ROW
+  WHEN (NEW.type = 'INCOMING' AND NEW.subject_keypair_id IS NOT NULL AND NEW.subject_keypair_id IS DISTINCT FROM OLD.subject_keypair_id)
+EXECUTE PROCEDURE incoming_certificate_pending_publication_trigger();
+
+CREATE INDEX published_object_active_validity_not_after_idx ON published_object (validity_not_after)
+ WHERE status IN ('TO_BE_PUBLISHED', 'PUBLISHED');
+COMMENT ON INDEX published_object_active_validity_not_after_idx
+ IS 'find manifests and CRLs that are about to expire';
+
+-- Queue the CAs that currently need publication (manifests and CRLs that are about to expire are queued by the
+-- publication service on every run).
+INSERT INTO pending_publication (ca_id)
+SELECT ca.id
+  FROM certificateauthority ca
+ WHERE ca.type <> 'NONHOSTED'
+   AND (ca.configuration_updated_at > ca.configuration_applied_at
+        OR EXISTS (SELECT 1
+                     FROM keypair kp
+                     JOIN resourcecertificate incoming ON incoming.subject_keypair_id = kp.id AND incoming.type = 'INCOMING'
+                    WHERE kp.ca_id = ca.id
+                      AND kp.status IN ('PENDING', 'CURRENT', 'OLD')
+                      AND (EXISTS (SELECT 1
+                                     FROM published_object po
+                                    WHERE po.issuing_key_pair_id = kp.id
+                                      AND po.status IN ('TO_BE_PUBLISHED', 'TO_BE_WITHDRAWN'))
+                           OR NOT EXISTS (SELECT 1
+                                            FROM manifestentity mft
+                                            JOIN published_object po ON po.id = mft.published_object_id
+                                           WHERE mft.keypair_id = kp.id
+                                             AND po.status IN ('TO_BE_PUBLISHED', 'PUBLISHED'))
+                           OR NOT EXISTS (SELECT 1
+                                            FROM crlentity crl
+                                            JOIN published_object po ON po.id = crl.published_object_id
+                                           WHERE crl.keypair_id = kp.id
+                                             AND po.status IN ('TO_BE_PUBLISHED', 'PUBLISHED')))));
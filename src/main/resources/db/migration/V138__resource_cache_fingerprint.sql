@@ -0,0 +1,4 @@
+-- Fingerprint of the cached resources, so a resource cache update can find the entries that changed without loading
+-- and parsing the resources of all members.
+ALTER TABLE resource_cache
+ADD COLUMN resources_md5 TEXT GENERATED ALWAYS AS (md5(resources)) STORED;
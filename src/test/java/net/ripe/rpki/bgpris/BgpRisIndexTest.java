@@ -0,0 +1,121 @@
+package net.ripe.rpki.bgpris;
+
+import net.jqwik.api.Arbitraries;
+import net.jqwik.api.Arbitrary;
+import net.jqwik.api.Combinators;
+import net.jqwik.api.ForAll;
+import net.jqwik.api.Property;
+import net.jqwik.api.Provide;
+import net.ripe.ipresource.Asn;
+import net.ripe.ipresource.IpRange;
+import net.ripe.ipresource.Ipv4Address;
+import net.ripe.ipresource.etree.IpResourceIntervalStrategy;
+import net.ripe.ipresource.etree.NestedIntervalMap;
+import net.ripe.rpki.server.api.dto.BgpRisEntry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BgpRisIndexTest {
+
+    private static final BgpRisEntry ENTRY_193_8 = new BgpRisEntry(Asn.parse("3333"), IpRange.parse("193.0.0.0/8"), 5);
+    private static final BgpRisEntry ENTRY_193_8_OTHER_ORIGIN = new BgpRisEntry(Asn.parse("4294967295"), IpRange.parse("193.0.0.0/8"), 7);
+    private static final BgpRisEntry ENTRY_193_16 = new BgpRisEntry(Asn.parse("65535"), IpRange.parse("193.16.0.0/16"), 5);
+    private static final BgpRisEntry ENTRY_193_16_1_32 = new BgpRisEntry(Asn.parse("65535"), IpRange.parse("193.16.1.1/32"), 5);
+    private static final BgpRisEntry ENTRY_2001_DB8_32 = new BgpRisEntry(Asn.parse("3333"), IpRange.parse("2001:db8::/32"), 6);
+    private static final BgpRisEntry ENTRY_2001_DB8_128 = new BgpRisEntry(Asn.parse("3333"), IpRange.parse("2001:db8::ffff/128"), 6);
+
+    private final BgpRisIndex subject = BgpRisIndex.builder()
+        .add(ENTRY_193_16_1_32)
+        .add(ENTRY_193_8)
+        .add(ENTRY_2001_DB8_128)
+        .add(ENTRY_193_16)
+        .add(ENTRY_193_8_OTHER_ORIGIN)
+        .add(ENTRY_2001_DB8_32)
+        .add(ENTRY_193_8)
+        .build();
+
+    @Test
+    void should_be_empty() {
+        assertThat(BgpRisIndex.empty().isEmpty()).isTrue();
+        assertThat(BgpRisIndex.empty().findExactAndAllMoreSpecific(IpRange.parse("0.0.0.0/0"))).isEmpty();
+        assertThat(BgpRisIndex.empty().findFirstLessSpecific(IpRange.parse("::/128"))).isEmpty();
+    }
+
+    @Test
+    void should_remove_duplicate_entries() {
+        assertThat(subject.isEmpty()).isFalse();
+        assertThat(subject.size()).isEqualTo(6);
+    }
+
+    @Test
+    void should_find_exact_and_more_specific() {
+        assertThat(subject.findExactAndAllMoreSpecific(IpRange.parse("0.0.0.0/0")))
+            .containsExactlyInAnyOrder(ENTRY_193_8, ENTRY_193_8_OTHER_ORIGIN, ENTRY_193_16, ENTRY_193_16_1_32);
+        assertThat(subject.findExactAndAllMoreSpecific(IpRange.parse("193.16.0.0/16")))
+            .containsExactlyInAnyOrder(ENTRY_193_16, ENTRY_193_16_1_32);
+        assertThat(subject.findExactAndAllMoreSpecific(IpRange.parse("193.17.0.0/16"))).isEmpty();
+        assertThat(subject.findExactAndAllMoreSpecific(IpRange.parse("2001:db8::/32")))
+            .containsExactlyInAnyOrder(ENTRY_2001_DB8_32, ENTRY_2001_DB8_128);
+    }
+
+    @Test
+    void should_find_first_less_specific() {
+        assertThat(subject.findFirstLessSpecific(IpRange.parse("193.16.1.1/32"))).containsExactly(ENTRY_193_16);
+        assertThat(subject.findFirstLessSpecific(IpRange.parse("193.16.1.2/32"))).containsExactly(ENTRY_193_16);
+        assertThat(subject.findFirstLessSpecific(IpRange.parse("193.16.0.0/16")))
+            .containsExactlyInAnyOrder(ENTRY_193_8, ENTRY_193_8_OTHER_ORIGIN);
+        assertThat(subject.findFirstLessSpecific(IpRange.parse("193.0.0.0/8"))).isEmpty();
+        assertThat(subject.findFirstLessSpecific(IpRange.parse("194.0.0.0/16"))).isEmpty();
+        assertThat(subject.findFirstLessSpecific(IpRange.parse("2001:db8::ffff/128"))).containsExactly(ENTRY_2001_DB8_32);
+    }
+
+    @Property
+    void should_match_nested_interval_map(@ForAll("entries") List<BgpRisEntry> entries, @ForAll("prefixes") IpRange query) {
+        NestedIntervalMap<IpRange, List<BgpRisEntry>> expected = new NestedIntervalMap<>(IpResourceIntervalStrategy.getInstance());
+        BgpRisIndex.Builder builder = BgpRisIndex.builder();
+        for (BgpRisEntry entry : entries) {
+            List<BgpRisEntry> exact = expected.findExact(entry.getPrefix());
+            if (exact == null) {
+                exact = new ArrayList<>();
+                expected.put(entry.getPrefix(), exact);
+            }
+            if (!exact.contains(entry)) {
+                exact.add(entry);
+            }
+            builder.add(entry);
+        }
+        BgpRisIndex index = builder.build();
+
+        assertThat(index.findExactAndAllMoreSpecific(query))
+            .containsExactlyInAnyOrderElementsOf(expected.findExactAndAllMoreSpecific(query).stream().flatMap(Collection::stream).toList());
+        List<BgpRisEntry> lessSpecific = expected.findFirstLessSpecific(query);
+        assertThat(index.findFirstLessSpecific(query))
+            .containsExactlyInAnyOrderElementsOf(lessSpecific == null ? List.of() : lessSpecific);
+    }
+
+    @Provide
+    Arbitrary<List<BgpRisEntry>> entries() {
+        return Combinators.combine(
+            Arbitraries.longs().between(0, 70000).map(Asn::new),
+            prefixes(),
+            Arbitraries.integers().between(1, 10)
+        ).as(BgpRisEntry::new).list().ofMaxSize(50);
+    }
+
+    @Provide
+    Arbitrary<IpRange> prefixes() {
+        // Use a small part of the address space so the generated prefixes overlap
+        return Combinators.combine(
+            Arbitraries.longs().between(0, 0xFFFFL),
+            Arbitraries.integers().between(8, 32)
+        ).as((address, length) -> {
+            long start = (0xC1100000L | address) & (0xFFFFFFFFL << (32 - length));
+            return IpRange.prefix(new Ipv4Address(start & 0xFFFFFFFFL), length);
+        });
+    }
+}
@@ -2,11 +2,16 @@ package net.ripe.rpki.bgpris.riswhois;
 
 import com.github.tomakehurst.wiremock.junit5.WireMockRuntimeInfo;
 import com.github.tomakehurst.wiremock.junit5.WireMockTest;
+import net.ripe.ipresource.Asn;
+import net.ripe.ipresource.IpRange;
+import net.ripe.rpki.server.api.dto.BgpRisEntry;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -33,7 +38,9 @@ class RisWhoisFetcherTest {
                 .willReturn(aResponse().withBody(risDumpContent))
         );
 
-        String data = subject.fetch(wmRuntimeInfo.getHttpBaseUrl() + path).getLeft();
-        assertThat(data).contains("45528\t1.22.52.0/23\t99");
+        List<BgpRisEntry> entries = new ArrayList<>();
+        int count = subject.fetch(wmRuntimeInfo.getHttpBaseUrl() + path, entries::add).getLeft();
+        assertThat(count).isEqualTo(entries.size());
+        assertThat(entries).contains(new BgpRisEntry(Asn.parse("45528"), IpRange.parse("1.22.52.0/23"), 99));
     }
 }
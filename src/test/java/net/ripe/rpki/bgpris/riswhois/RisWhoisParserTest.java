@@ -5,6 +5,9 @@ import net.ripe.ipresource.IpRange;
 import net.ripe.rpki.server.api.dto.BgpRisEntry;
 import org.junit.Test;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -52,4 +55,17 @@ public class RisWhoisParserTest {
         assertEquals(Collections.singletonList(new BgpRisEntry(Asn.parse("3333"), IpRange.parse("127.0.0.0/8"), 201)), RisWhoisParser.parse("%This is a comment\n3333\t127.0.0.0/8\t201"));
     }
 
+    @Test
+    public void shouldPassEntriesToConsumer() throws IOException {
+        ArrayList<BgpRisEntry> entries = new ArrayList<>();
+
+        int count = RisWhoisParser.parse(new BufferedReader(new StringReader("%comment\n3333\t127.0.0.0/8\t201\r\n{1,2}\t10.0.0.0/8\t5\n4545\t192.168.0.0/16\t332\n4545\t192.168.0.0/16\n")), entries::add);
+
+        assertEquals(2, count);
+        assertEquals(
+                Arrays.asList(
+                        new BgpRisEntry(Asn.parse("3333"), IpRange.parse("127.0.0.0/8"), 201),
+                        new BgpRisEntry(Asn.parse("4545"), IpRange.parse("192.168.0.0/16"), 332)),
+                entries);
+    }
 }
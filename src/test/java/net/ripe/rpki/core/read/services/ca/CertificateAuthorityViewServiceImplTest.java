@@ -8,8 +8,11 @@ import net.ripe.rpki.commons.crypto.util.KeyPairUtil;
 import net.ripe.rpki.commons.provisioning.x509.ProvisioningIdentityCertificateBuilderTest;
 import net.ripe.rpki.domain.*;
 import net.ripe.rpki.server.api.commands.*;
+import net.ripe.rpki.server.api.dto.CertificateAuthorityReference;
+import net.ripe.rpki.server.api.dto.CertificateAuthorityType;
 import net.ripe.rpki.server.api.dto.DelegatedCa;
 import net.ripe.rpki.server.api.services.read.CertificateAuthorityViewService;
+import net.ripe.rpki.server.api.support.objects.CaName;
 import org.joda.time.Duration;
 import org.joda.time.Instant;
 import org.junit.Test;
@@ -17,6 +20,7 @@ import org.junit.Test;
 import javax.security.auth.x500.X500Principal;
 import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -63,6 +67,38 @@ public class CertificateAuthorityViewServiceImplTest extends CertificationDomain
         ).noneMatch(ca -> ca.getName().equals(CHILD_CA_NAME));
     }
 
+    @Test
+    public void findAllChildReferencesForCa() {
+        clearDatabase();
+        var parent = createInitializedAllResourcesAndProductionCertificateAuthority();
+        var child = new HostedCertificateAuthority(HOSTED_CA_ID, CHILD_CA_NAME, UUID.randomUUID(), parent);
+        certificateAuthorityRepository.add(child);
+        entityManager.flush();
+
+        assertThat(subject.findAllChildReferencesForCa(parent.getName()))
+            .containsExactly(new CertificateAuthorityReference(child.getVersionedId(), CHILD_CA_NAME, CertificateAuthorityType.HOSTED));
+        assertThat(subject.findAllChildReferencesForCa(CHILD_CA_NAME)).isEmpty();
+    }
+
+    @Test
+    public void findChildReferencesWithResourcesDifferentFromCache() {
+        clearDatabase();
+        var parent = createInitializedAllResourcesAndProductionCertificateAuthority();
+        var child = new HostedCertificateAuthority(HOSTED_CA_ID, CHILD_CA_NAME, UUID.randomUUID(), parent);
+        issueCertificateForNewKey(parent, child, CHILD_CA_RESOURCES);
+        entityManager.flush();
+        var childReference = new CertificateAuthorityReference(child.getVersionedId(), CHILD_CA_NAME, CertificateAuthorityType.HOSTED);
+
+        // No cache entry, so the certificate has too many resources
+        assertThat(subject.findChildReferencesWithResourcesDifferentFromCache(parent.getName())).containsExactly(childReference);
+
+        resourceCache.populateCache(Map.of(CaName.of(CHILD_CA_NAME), CHILD_CA_RESOURCES));
+        assertThat(subject.findChildReferencesWithResourcesDifferentFromCache(parent.getName())).isEmpty();
+
+        resourceCache.populateCache(Map.of(CaName.of(CHILD_CA_NAME), CHILD_CA_RESOURCES.union(ImmutableResourceSet.parse("AS64496"))));
+        assertThat(subject.findChildReferencesWithResourcesDifferentFromCache(parent.getName())).containsExactly(childReference);
+    }
+
     @Test
     public void findAllHostedCasWithCurrentKeyOnlyAndOlderThan_without_keypair() {
         clearDatabase();
@@ -0,0 +1,93 @@
+package net.ripe.rpki.core.services.background;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.ripe.rpki.server.api.services.system.ActiveNodeService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BackgroundTaskRunnerTest {
+
+    @Mock
+    private ActiveNodeService activeNodeService;
+    private BackgroundTaskRunner subject;
+
+    @Before
+    public void setUp() {
+        subject = new BackgroundTaskRunner(activeNodeService, new SimpleMeterRegistry());
+    }
+
+    @Test
+    public void should_start_task_after_its_dependency_completed() {
+        List<String> completed = new CopyOnWriteArrayList<>();
+        Map<String, BackgroundTaskRunner.Task<String>> tasks = new LinkedHashMap<>();
+        tasks.put("parent", subject.task(() -> {
+            TimeUnit.MILLISECONDS.sleep(50);
+            completed.add("parent");
+            return "parent";
+        }, e -> {}));
+        tasks.put("child", subject.task(() -> {
+            completed.add("child");
+            return "child";
+        }, e -> {}));
+        tasks.put("grandchild", subject.task(() -> {
+            completed.add("grandchild");
+            return "grandchild";
+        }, e -> {}));
+
+        List<String> result = subject.runParallelAfterDependencies(tasks, key -> switch (key) {
+            case "child" -> Optional.of("parent");
+            case "grandchild" -> Optional.of("child");
+            default -> Optional.empty();
+        });
+
+        assertThat(completed).containsExactly("parent", "child", "grandchild");
+        assertThat(result).containsExactly("parent", "child", "grandchild");
+    }
+
+    @Test
+    public void should_start_task_after_its_dependency_failed() {
+        List<Exception> exceptions = new CopyOnWriteArrayList<>();
+        Map<String, BackgroundTaskRunner.Task<String>> tasks = new LinkedHashMap<>();
+        tasks.put("parent", subject.task(() -> {
+            throw new IllegalStateException("failed");
+        }, exceptions::add));
+        tasks.put("child", subject.task(() -> "child", exceptions::add));
+
+        List<String> result = subject.runParallelAfterDependencies(tasks, key -> key.equals("child") ? Optional.of("parent") : Optional.empty());
+
+        assertThat(result).containsExactly("child");
+        assertThat(exceptions).singleElement().isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void should_ignore_dependency_that_is_not_a_task() {
+        Map<String, BackgroundTaskRunner.Task<String>> tasks = new LinkedHashMap<>();
+        tasks.put("child", subject.task(() -> "child", e -> {}));
+
+        assertThat(subject.runParallelAfterDependencies(tasks, key -> Optional.of("parent"))).containsExactly("child");
+    }
+
+    @Test
+    public void should_reject_task_before_its_dependency() {
+        Map<String, BackgroundTaskRunner.Task<String>> tasks = new LinkedHashMap<>();
+        tasks.put("child", subject.task(() -> "child", e -> {}));
+        tasks.put("parent", subject.task(() -> "parent", e -> {}));
+
+        assertThatThrownBy(() -> subject.runParallelAfterDependencies(tasks, key -> key.equals("child") ? Optional.of("parent") : Optional.empty()))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -12,6 +12,7 @@ import org.mockito.junit.MockitoJUnitRunner;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
@@ -101,6 +102,66 @@ public class SequentialBackgroundQueuedTaskRunnerTest {
         assertThat(data).isEqualTo(Stream.iterate(0, x -> x + 1).limit(threadCount).toList());
     }
 
+    @Test
+    public void should_merge_tasks_submitted_while_pending() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2);
+        List<Set<Integer>> executions = new CopyOnWriteArrayList<>();
+
+        subject.submit("blocking", () -> {
+            try {
+                assertThat(blocked.await(1, TimeUnit.SECONDS)).isTrue();
+            } catch (InterruptedException e) {
+                fail(e);
+            }
+        }, NO_EXCEPTION);
+        Consumer<Set<Integer>> action = items -> {
+            executions.add(items);
+            done.countDown();
+        };
+        subject.submitMerging("merging", List.of(1, 2), action, NO_EXCEPTION);
+        subject.submitMerging("merging", List.of(2, 3), action, NO_EXCEPTION);
+        subject.submitMerging("other", List.of(4), action, NO_EXCEPTION);
+
+        blocked.countDown();
+        assertThat(done.await(1, TimeUnit.SECONDS)).isTrue();
+        assertThat(executions).containsExactly(Set.of(1, 2, 3), Set.of(4));
+
+        // Once started, new submissions are executed separately
+        CountDownLatch again = new CountDownLatch(1);
+        subject.submitMerging("merging", List.of(5), items -> {
+            assertThat(items).containsExactly(5);
+            again.countDown();
+        }, NO_EXCEPTION);
+        assertThat(again.await(1, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void should_wait_for_concurrent_execution_instead_of_skipping() throws InterruptedException {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+
+        // Execute the service directly (as through the admin UI), so the task is skipped until it finishes
+        Thread direct = new Thread(() -> subject.doExecute(() -> {
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        direct.start();
+        assertThat(running.await(1, TimeUnit.SECONDS)).isTrue();
+
+        subject.submit("waiting", done::countDown, NO_EXCEPTION);
+        assertThat(done.await(100, TimeUnit.MILLISECONDS)).isFalse();
+
+        release.countDown();
+        assertThat(done.await(1, TimeUnit.SECONDS)).isTrue();
+        direct.join();
+    }
+
     @Test
     public void should_reject_task_submission_when_stopped() {
         subject.stop();
@@ -10,6 +10,7 @@ import net.ripe.rpki.domain.interca.CertificateIssuanceResponse;
 import net.ripe.rpki.domain.manifest.ManifestEntityRepository;
 import net.ripe.rpki.domain.manifest.ManifestPublicationService;
 import net.ripe.rpki.domain.signing.CertificateRequestCreationService;
+import net.ripe.rpki.domain.signing.SigningExecutor;
 import net.ripe.rpki.server.api.commands.CertificateAuthorityCommand;
 import net.ripe.rpki.server.api.configuration.Environment;
 import net.ripe.rpki.server.api.configuration.RepositoryConfiguration;
@@ -100,6 +101,7 @@ public abstract class CertificationDomainTestCase {
             manifestEntityRepository,
             singleUseKeyPairFactory,
             singleUseEeCertificateFactory,
+            new SigningExecutor(1, meterRegistry),
             meterRegistry
         );
         Environment.load();
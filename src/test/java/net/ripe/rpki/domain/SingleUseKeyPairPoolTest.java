@@ -0,0 +1,86 @@
+package net.ripe.rpki.domain;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPair;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SingleUseKeyPairPoolTest {
+
+    private static final int CAPACITY = 4;
+
+    private final AtomicInteger generated = new AtomicInteger();
+    private SimpleMeterRegistry meterRegistry;
+    private SingleUseKeyPairPool subject;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        subject = new SingleUseKeyPairPool(() -> {
+            generated.incrementAndGet();
+            return new KeyPair(null, null);
+        }, CAPACITY, 2, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        subject.close();
+    }
+
+    @Test
+    void should_fill_pool_up_to_capacity() throws InterruptedException {
+        waitForDepth(CAPACITY);
+
+        assertThat(generated.get()).isEqualTo(CAPACITY);
+    }
+
+    @Test
+    void should_hand_out_key_pairs_once_and_refill() throws InterruptedException {
+        waitForDepth(CAPACITY);
+
+        Set<KeyPair> keyPairs = new HashSet<>();
+        for (int i = 0; i < 3 * CAPACITY; i++) {
+            keyPairs.add(subject.get());
+        }
+        waitForDepth(CAPACITY);
+
+        assertThat(keyPairs).hasSize(3 * CAPACITY);
+        double hits = meterRegistry.get("rpkicore.single.use.keypair.pool.requests").tag("result", "hit").counter().count();
+        double misses = meterRegistry.get("rpkicore.single.use.keypair.pool.requests").tag("result", "miss").counter().count();
+        assertThat(hits + misses).isEqualTo(3 * CAPACITY);
+        assertThat(hits).isGreaterThanOrEqualTo(CAPACITY);
+        // Every generated key pair was either handed out or is still in the pool
+        assertThat(generated.get()).isEqualTo(4 * CAPACITY);
+    }
+
+    @Test
+    void should_generate_key_pairs_when_closed() throws InterruptedException {
+        waitForDepth(CAPACITY);
+        subject.close();
+
+        for (int i = 0; i < 2 * CAPACITY; i++) {
+            assertThat(subject.get()).isNotNull();
+        }
+
+        assertThat(meterRegistry.get("rpkicore.single.use.keypair.pool.requests").tag("result", "miss").counter().count()).isEqualTo(CAPACITY);
+        assertThat(depth()).isZero();
+    }
+
+    private double depth() {
+        return meterRegistry.get("rpkicore.single.use.keypair.pool.depth").gauge().value();
+    }
+
+    private void waitForDepth(int expected) throws InterruptedException {
+        for (int i = 0; i < 500 && depth() < expected; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(depth()).isEqualTo(expected);
+    }
+}
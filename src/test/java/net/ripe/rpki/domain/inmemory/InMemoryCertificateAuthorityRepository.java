@@ -70,7 +70,17 @@ public class InMemoryCertificateAuthorityRepository  extends InMemoryRepository<
     }
 
     @Override
-    public Collection<ManagedCertificateAuthority> findAllWithOutdatedManifests(boolean includeUpdatedConfiguration, DateTime nextUpdateCutoff, int maxResults) {
+    public int queuePendingPublicationsForManifestsAndCrlsExpiringBefore(DateTime nextUpdateCutoff) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<PendingPublication> findPendingPublications() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void removePendingPublication(PendingPublication pendingPublication) {
         throw new UnsupportedOperationException();
     }
 
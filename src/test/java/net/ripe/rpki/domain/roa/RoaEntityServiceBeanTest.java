@@ -1,5 +1,6 @@
 package net.ripe.rpki.domain.roa;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.Value;
 import net.ripe.ipresource.Asn;
 import net.ripe.ipresource.IpRange;
@@ -10,6 +11,7 @@ import net.ripe.rpki.commons.crypto.x509cert.X509CertificateInformationAccessDes
 import net.ripe.rpki.commons.crypto.x509cert.X509ResourceCertificate;
 import net.ripe.rpki.domain.*;
 import net.ripe.rpki.domain.interca.CertificateIssuanceResponse;
+import net.ripe.rpki.domain.signing.SigningExecutor;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeUtils;
 import org.joda.time.DateTimeZone;
@@ -54,6 +56,8 @@ public class RoaEntityServiceBeanTest  {
     @Mock
     private RoaEntityRepository roaEntityRepository;
 
+    private SigningExecutor signingExecutor;
+
     private RoaEntityServiceBean subject;
 
     private RoaConfiguration configuration;
@@ -65,12 +69,14 @@ public class RoaEntityServiceBeanTest  {
         when(roaConfigurationRepository.getOrCreateByCertificateAuthority(ca)).thenReturn(configuration);
 
         SingleUseEeCertificateFactory singleUseEeCertificateFactory = TestServices.createSingleUseEeCertificateFactory();
+        signingExecutor = new SigningExecutor(2, new SimpleMeterRegistry());
         subject = new RoaEntityServiceBean(certificateAuthorityRepository, roaConfigurationRepository, roaEntityRepository,
-                new SingleUseKeyPairFactory(PregeneratedKeyPairFactory.getInstance()), singleUseEeCertificateFactory);
+                new SingleUseKeyPairFactory(PregeneratedKeyPairFactory.getInstance()), singleUseEeCertificateFactory, signingExecutor);
    }
 
     @After
     public void tearDown() {
+        signingExecutor.shutdown();
         DateTimeUtils.setCurrentMillisSystem();
     }
 
@@ -61,6 +61,32 @@ public class RoaEntityTest {
         assertEquals(roaCms, subject.getRoaCms());
     }
 
+    @Test
+    public void shouldHaveSummaryOfRoaCms() {
+        RoaSummary summary = subject.getSummary();
+
+        assertEquals(roaCms.getAsn(), summary.getAsn());
+        assertEquals(roaCms.getPrefixes(), summary.getPrefixes());
+        assertEquals(roaCms.getParentCertificateUri(), summary.getParentCertificateUri());
+        assertEquals(roaCms.getValidityPeriod(), summary.getValidityPeriod());
+        assertEquals(roaCms.getAsn(), subject.getAsn());
+    }
+
+    @Test
+    public void shouldFormatAndParseSummaryPrefixes() {
+        List<RoaPrefix> prefixes = Arrays.asList(
+            new RoaPrefix(RESOURCE_1, 16),
+            new RoaPrefix(RESOURCE_2, null),
+            new RoaPrefix(IpRange.parse("2001:db8::/32"), 48)
+        );
+
+        String formatted = RoaSummary.formatPrefixes(prefixes);
+
+        assertEquals("10.0.0.0/8-16,192.168.0.0/24,2001:db8::/32-48", formatted);
+        assertEquals(prefixes, RoaSummary.parsePrefixes(formatted));
+        assertEquals(Collections.emptyList(), RoaSummary.parsePrefixes(""));
+    }
+
     @Test
     public void canBeRevoked() {
         assertFalse(subject.isRevoked());
@@ -0,0 +1,63 @@
+package net.ripe.rpki.domain.signing;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SigningExecutorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SigningExecutor subject = new SigningExecutor(4, meterRegistry);
+
+    @AfterEach
+    void tearDown() {
+        subject.shutdown();
+    }
+
+    @Test
+    void should_sign_in_parallel_and_keep_order() {
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        List<Integer> items = IntStream.range(0, 100).boxed().toList();
+
+        List<Integer> result = subject.sign("roa", items, i -> {
+            threads.add(Thread.currentThread().getName());
+            return i * 2;
+        });
+
+        assertThat(result).isEqualTo(items.stream().map(i -> i * 2).toList());
+        assertThat(threads).allMatch(name -> name.startsWith("signing-"));
+        assertThat(meterRegistry.get("rpkicore.signing.stage.duration").tag("object", "roa").tag("stage", "sign").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void should_sign_single_item_on_calling_thread() {
+        String callingThread = Thread.currentThread().getName();
+
+        assertThat(subject.sign("manifest", List.of(1), i -> Thread.currentThread().getName())).containsExactly(callingThread);
+    }
+
+    @Test
+    void should_rethrow_signing_failure() {
+        assertThatThrownBy(() -> subject.sign("roa", List.of(1, 2, 3), i -> {
+            if (i == 2) {
+                throw new IllegalArgumentException("invalid resources");
+            }
+            return i;
+        })).isInstanceOf(IllegalArgumentException.class).hasMessage("invalid resources");
+    }
+
+    @Test
+    void should_time_persistence() {
+        assertThat(subject.persist("manifest", () -> 42)).isEqualTo(42);
+
+        assertThat(meterRegistry.get("rpkicore.signing.stage.duration").tag("object", "manifest").tag("stage", "persist").timer().count()).isEqualTo(1);
+    }
+}
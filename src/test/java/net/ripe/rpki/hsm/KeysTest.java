@@ -0,0 +1,54 @@
+package net.ripe.rpki.hsm;
+
+import net.ripe.rpki.commons.crypto.util.KeyPairFactoryTest;
+import net.ripe.rpki.commons.crypto.util.KeyStoreUtilTest;
+import net.ripe.rpki.commons.crypto.util.PregeneratedKeyPairFactory;
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPair;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KeysTest {
+
+    private final Keys subject = new Keys(Optional.empty());
+
+    @Test
+    void should_cache_decoded_key_pairs_by_keystore_content() {
+        byte[] keyStore = keyStore(KeyPairFactoryTest.TEST_KEY_PAIR);
+
+        KeyPair decoded = subject.getCachedKeyPairFromKeyStore(keyStore, KeyStoreUtilTest.DEFAULT_KEYSTORE_PROVIDER, KeyStoreUtilTest.DEFAULT_KEYSTORE_TYPE);
+
+        assertThat(decoded.getPublic()).isEqualTo(KeyPairFactoryTest.TEST_KEY_PAIR.getPublic());
+        assertThat(subject.getCachedKeyPairFromKeyStore(keyStore.clone(), KeyStoreUtilTest.DEFAULT_KEYSTORE_PROVIDER, KeyStoreUtilTest.DEFAULT_KEYSTORE_TYPE))
+            .isSameAs(decoded);
+    }
+
+    @Test
+    void should_not_mix_up_key_pairs() {
+        KeyPair other = PregeneratedKeyPairFactory.getInstance().generate();
+
+        KeyPair decoded = subject.getCachedKeyPairFromKeyStore(keyStore(KeyPairFactoryTest.TEST_KEY_PAIR), KeyStoreUtilTest.DEFAULT_KEYSTORE_PROVIDER, KeyStoreUtilTest.DEFAULT_KEYSTORE_TYPE);
+        KeyPair decodedOther = subject.getCachedKeyPairFromKeyStore(keyStore(other), KeyStoreUtilTest.DEFAULT_KEYSTORE_PROVIDER, KeyStoreUtilTest.DEFAULT_KEYSTORE_TYPE);
+
+        assertThat(decoded.getPublic()).isEqualTo(KeyPairFactoryTest.TEST_KEY_PAIR.getPublic());
+        assertThat(decodedOther.getPublic()).isEqualTo(other.getPublic());
+    }
+
+    @Test
+    void should_decode_again_after_eviction() {
+        byte[] keyStore = keyStore(KeyPairFactoryTest.TEST_KEY_PAIR);
+        KeyPair decoded = subject.getCachedKeyPairFromKeyStore(keyStore, KeyStoreUtilTest.DEFAULT_KEYSTORE_PROVIDER, KeyStoreUtilTest.DEFAULT_KEYSTORE_TYPE);
+
+        subject.evictKeyPair(keyStore, KeyStoreUtilTest.DEFAULT_KEYSTORE_PROVIDER, KeyStoreUtilTest.DEFAULT_KEYSTORE_TYPE);
+
+        KeyPair decodedAgain = subject.getCachedKeyPairFromKeyStore(keyStore, KeyStoreUtilTest.DEFAULT_KEYSTORE_PROVIDER, KeyStoreUtilTest.DEFAULT_KEYSTORE_TYPE);
+        assertThat(decodedAgain).isNotSameAs(decoded);
+        assertThat(decodedAgain.getPublic()).isEqualTo(decoded.getPublic());
+    }
+
+    private byte[] keyStore(KeyPair keyPair) {
+        return subject.ksToBytes(keyPair, KeyStoreUtilTest.DEFAULT_KEYSTORE_PROVIDER, KeyPairFactoryTest.DEFAULT_KEYPAIR_GENERATOR_PROVIDER, KeyStoreUtilTest.DEFAULT_KEYSTORE_TYPE);
+    }
+}
@@ -21,6 +21,7 @@ import java.time.Instant;
 import java.util.Collections;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import static net.ripe.rpki.publication.persistence.disk.FileSystemPublicationObjectPersistence.INTERNAL_DIRECTORY_LAST_MODIFIED_TIME;
 import static net.ripe.rpki.publication.persistence.disk.FileSystemPublicationObjectPersistence.PUBLICATION_DIRECTORY_PATTERN;
@@ -57,7 +58,7 @@ public class FileSystemPublicationObjectPersistenceTest {
         subject = new FileSystemPublicationObjectPersistence(
             ONLINE_REPOSITORY_BASE_URI, onlineRepositoryBaseDirectory.toString(),
             TA_REPOSITORY_BASE_URI, taRepositoryBaseDirectory.toString(),
-            120, 1);
+            120, 1, true);
     }
 
     @AfterEach
@@ -69,7 +70,7 @@ public class FileSystemPublicationObjectPersistenceTest {
     public void should_write_contents_of_publish_request_to_online_repository() throws IOException {
         URI uri = ONLINE_REPOSITORY_BASE_URI.resolve("foo/bar.cer");
 
-        subject.writeAll(Collections.singletonList(new PublishedObjectData(CREATED_AT, uri, CONTENTS)));
+        subject.writeAll(Stream.of(new PublishedObjectData(CREATED_AT, uri, CONTENTS)));
 
         assertThat(FileUtils.readFileToByteArray(new File(onlineRepositoryBaseDirectory, "published/foo/bar.cer"))).isEqualTo(CONTENTS);
     }
@@ -78,7 +79,7 @@ public class FileSystemPublicationObjectPersistenceTest {
     public void should_set_last_modification_time_of_published_object() {
         URI uri = ONLINE_REPOSITORY_BASE_URI.resolve("foo/bar.cer");
 
-        subject.writeAll(Collections.singletonList(new PublishedObjectData(CREATED_AT, uri, CONTENTS)));
+        subject.writeAll(Stream.of(new PublishedObjectData(CREATED_AT, uri, CONTENTS)));
 
         assertThat(new File(onlineRepositoryBaseDirectory, "published/foo/bar.cer").lastModified() / 1000).isEqualTo(CREATED_AT.toEpochMilli() / 1000);
     }
@@ -87,7 +88,7 @@ public class FileSystemPublicationObjectPersistenceTest {
     public void should_set_last_modification_time_internal_directories() throws IOException {
         URI uri = ONLINE_REPOSITORY_BASE_URI.resolve("foo/baz/bar.cer");
 
-        subject.writeAll(Collections.singletonList(new PublishedObjectData(CREATED_AT, uri, CONTENTS)));
+        subject.writeAll(Stream.of(new PublishedObjectData(CREATED_AT, uri, CONTENTS)));
 
         assertThat(Files.getLastModifiedTime(new File(onlineRepositoryBaseDirectory, "published/foo").toPath())).isEqualTo(INTERNAL_DIRECTORY_LAST_MODIFIED_TIME);
         assertThat(Files.getLastModifiedTime(new File(onlineRepositoryBaseDirectory, "published/foo/baz").toPath())).isEqualTo(INTERNAL_DIRECTORY_LAST_MODIFIED_TIME);
@@ -97,7 +98,7 @@ public class FileSystemPublicationObjectPersistenceTest {
     public void should_write_contents_of_publish_request_to_ta_repository() throws IOException {
         URI uri = TA_REPOSITORY_BASE_URI.resolve("foo/bar.cer");
 
-        subject.writeAll(Collections.singletonList(new PublishedObjectData(CREATED_AT, uri, CONTENTS)));
+        subject.writeAll(Stream.of(new PublishedObjectData(CREATED_AT, uri, CONTENTS)));
 
         assertThat(FileUtils.readFileToByteArray(new File(taRepositoryBaseDirectory, "published/foo/bar.cer"))).isEqualTo(CONTENTS);
     }
@@ -107,13 +108,13 @@ public class FileSystemPublicationObjectPersistenceTest {
         URI uri = ONLINE_REPOSITORY_BASE_URI.resolve("foo/bar.cer");
 
         DateTimeUtils.setCurrentMillisFixed(1619000000000L);
-        subject.writeAll(Collections.singletonList(new PublishedObjectData(CREATED_AT, uri, CONTENTS)));
+        subject.writeAll(Stream.of(new PublishedObjectData(CREATED_AT, uri, CONTENTS)));
 
         Path targetDirectory = Files.readSymbolicLink(new File(onlineRepositoryBaseDirectory, "published").toPath());
         assertThat(targetDirectory.toString()).isEqualTo("published-2021-04-21T10:13:20.000Z");
 
         DateTimeUtils.setCurrentMillisFixed(1619000000000L + TimeUnit.MINUTES.toMillis(60));
-        subject.writeAll(Collections.singletonList(new PublishedObjectData(CREATED_AT, uri, CONTENTS)));
+        subject.writeAll(Stream.of(new PublishedObjectData(CREATED_AT, uri, CONTENTS)));
 
         targetDirectory = Files.readSymbolicLink(new File(onlineRepositoryBaseDirectory, "published").toPath());
         assertThat(targetDirectory.toString()).isEqualTo("published-2021-04-21T11:13:20.000Z");
@@ -129,7 +130,7 @@ public class FileSystemPublicationObjectPersistenceTest {
         Files.createDirectories(published);
         assertThat(published).isDirectory();
 
-        subject.writeAll(Collections.singletonList(new PublishedObjectData(CREATED_AT, uri, CONTENTS)));
+        subject.writeAll(Stream.of(new PublishedObjectData(CREATED_AT, uri, CONTENTS)));
 
         assertThat(published).isSymbolicLink();
         assertThat(published.resolveSibling("published.bak")).isDirectory();
@@ -140,14 +141,14 @@ public class FileSystemPublicationObjectPersistenceTest {
         URI uri = ONLINE_REPOSITORY_BASE_URI.resolve("foo/bar.cer");
 
         DateTimeUtils.setCurrentMillisFixed(1619000000000L);
-        subject.writeAll(Collections.singletonList(new PublishedObjectData(CREATED_AT, uri, CONTENTS)));
+        subject.writeAll(Stream.of(new PublishedObjectData(CREATED_AT, uri, CONTENTS)));
         assertThat(Sets.newHashSet(
             "published-2021-04-21T10:13:20.000Z",
             "published"
         )).containsExactlyInAnyOrderElementsOf(Sets.newHashSet(onlineRepositoryBaseDirectory.list()));
 
         DateTimeUtils.setCurrentMillisFixed(1619000000000L + TimeUnit.MINUTES.toMillis(60));
-        subject.writeAll(Collections.singletonList(new PublishedObjectData(CREATED_AT, uri, CONTENTS)));
+        subject.writeAll(Stream.of(new PublishedObjectData(CREATED_AT, uri, CONTENTS)));
         assertThat(Sets.newHashSet(
             "published-2021-04-21T10:13:20.000Z",
             "published",
@@ -155,7 +156,7 @@ public class FileSystemPublicationObjectPersistenceTest {
         )).containsExactlyInAnyOrderElementsOf(Sets.newHashSet(onlineRepositoryBaseDirectory.list()));
 
         DateTimeUtils.setCurrentMillisFixed(1619000000000L + TimeUnit.MINUTES.toMillis(150));
-        subject.writeAll(Collections.singletonList(new PublishedObjectData(CREATED_AT, uri, CONTENTS)));
+        subject.writeAll(Stream.of(new PublishedObjectData(CREATED_AT, uri, CONTENTS)));
         assertThat(Sets.newHashSet(
             "published",
             "published-2021-04-21T11:13:20.000Z",
@@ -170,19 +171,19 @@ public class FileSystemPublicationObjectPersistenceTest {
         subject = new FileSystemPublicationObjectPersistence(
             ONLINE_REPOSITORY_BASE_URI, onlineRepositoryBaseDirectory.getAbsolutePath(),
             TA_REPOSITORY_BASE_URI, taRepositoryBaseDirectory.getAbsolutePath(),
-            120, N);
+            120, N, true);
 
         URI uri = ONLINE_REPOSITORY_BASE_URI.resolve("foo/bar.cer");
 
         DateTimeUtils.setCurrentMillisFixed(1619000000000L);
-        subject.writeAll(Collections.singletonList(new PublishedObjectData(CREATED_AT, uri, CONTENTS)));
+        subject.writeAll(Stream.of(new PublishedObjectData(CREATED_AT, uri, CONTENTS)));
         assertThat(Sets.newHashSet(
             "published-2021-04-21T10:13:20.000Z",
             "published"
         )).containsExactlyInAnyOrderElementsOf(Sets.newHashSet(onlineRepositoryBaseDirectory.list()));
 
         DateTimeUtils.setCurrentMillisFixed(1619000000000L + TimeUnit.MINUTES.toMillis(150));
-        subject.writeAll(Collections.singletonList(new PublishedObjectData(CREATED_AT, uri, CONTENTS)));
+        subject.writeAll(Stream.of(new PublishedObjectData(CREATED_AT, uri, CONTENTS)));
         assertThat(Sets.newHashSet(
             "published-2021-04-21T10:13:20.000Z",
             "published",
@@ -190,7 +191,7 @@ public class FileSystemPublicationObjectPersistenceTest {
         )).containsExactlyInAnyOrderElementsOf(Sets.newHashSet(onlineRepositoryBaseDirectory.list()));
 
         DateTimeUtils.setCurrentMillisFixed(1619000000000L + TimeUnit.MINUTES.toMillis(200));
-        subject.writeAll(Collections.singletonList(new PublishedObjectData(CREATED_AT, uri, CONTENTS)));
+        subject.writeAll(Stream.of(new PublishedObjectData(CREATED_AT, uri, CONTENTS)));
         assertThat(Sets.newHashSet(
             "published",
             "published-2021-04-21T13:33:20.000Z",
@@ -203,8 +204,8 @@ public class FileSystemPublicationObjectPersistenceTest {
         URI uri = ONLINE_REPOSITORY_BASE_URI.resolve("foo/old.cer");
         var publishedObjects = Collections.singletonList(new PublishedObjectData(CREATED_AT, uri, CONTENTS));
 
-        subject.writeAll(publishedObjects);
-        assertThatThrownBy(() -> subject.writeAll(publishedObjects))
+        subject.writeAll(publishedObjects.stream());
+        assertThatThrownBy(() -> subject.writeAll(publishedObjects.stream()))
             .isInstanceOf(IllegalStateException.class);
     }
 
@@ -213,22 +214,85 @@ public class FileSystemPublicationObjectPersistenceTest {
         URI oldUri = ONLINE_REPOSITORY_BASE_URI.resolve("foo/old.cer");
         URI newUri = ONLINE_REPOSITORY_BASE_URI.resolve("foo/new.cer");
 
-        subject.writeAll(Collections.singletonList(new PublishedObjectData(CREATED_AT, oldUri, CONTENTS)));
+        subject.writeAll(Stream.of(new PublishedObjectData(CREATED_AT, oldUri, CONTENTS)));
         assertThat(new File(onlineRepositoryBaseDirectory, "published/foo/old.cer")).exists();
 
         DateTimeUtils.setCurrentMillisFixed(DateTimeUtils.currentTimeMillis() + 100);
-        subject.writeAll(Collections.singletonList(new PublishedObjectData(CREATED_AT.plusSeconds(100), newUri, CONTENTS)));
+        subject.writeAll(Stream.of(new PublishedObjectData(CREATED_AT.plusSeconds(100), newUri, CONTENTS)));
 
         assertThat(new File(onlineRepositoryBaseDirectory, "published/foo/new.cer")).exists();
         assertThat(new File(onlineRepositoryBaseDirectory, "published/foo/old.cer")).doesNotExist();
     }
 
+    @Test
+    public void should_link_unchanged_objects_from_previous_target_directory() throws IOException {
+        URI unchangedUri = ONLINE_REPOSITORY_BASE_URI.resolve("foo/unchanged.cer");
+        URI changedUri = ONLINE_REPOSITORY_BASE_URI.resolve("foo/changed.cer");
+        byte[] changedContents = new byte[] { 1, 2, 3 };
+
+        DateTimeUtils.setCurrentMillisFixed(1619000000000L);
+        subject.writeAll(Stream.of(
+            new PublishedObjectData(CREATED_AT, unchangedUri, CONTENTS),
+            new PublishedObjectData(CREATED_AT, changedUri, CONTENTS)
+        ));
+        Path previous = onlineRepositoryBaseDirectory.toPath().resolve("published-2021-04-21T10:13:20.000Z");
+
+        DateTimeUtils.setCurrentMillisFixed(1619000000000L + TimeUnit.MINUTES.toMillis(15));
+        long count = subject.writeAll(Stream.of(
+            new PublishedObjectData(CREATED_AT, unchangedUri, CONTENTS),
+            new PublishedObjectData(CREATED_AT.plusSeconds(10), changedUri, changedContents)
+        ));
+        assertThat(count).isEqualTo(2);
+        Path current = onlineRepositoryBaseDirectory.toPath().resolve("published-2021-04-21T10:28:20.000Z");
+
+        assertThat(Files.isSameFile(previous.resolve("foo/unchanged.cer"), current.resolve("foo/unchanged.cer"))).isTrue();
+        assertThat(Files.isSameFile(previous.resolve("foo/changed.cer"), current.resolve("foo/changed.cer"))).isFalse();
+        assertThat(current.resolve("foo/changed.cer")).hasBinaryContent(changedContents);
+        assertThat(previous.resolve("foo/changed.cer")).hasBinaryContent(CONTENTS);
+    }
+
+    @Test
+    public void should_compare_objects_on_stored_hash() throws IOException {
+        URI uri = ONLINE_REPOSITORY_BASE_URI.resolve("foo/bar.cer");
+        String storedHash = "0123456789abcdef";
+
+        DateTimeUtils.setCurrentMillisFixed(1619000000000L);
+        subject.writeAll(Stream.of(new PublishedObjectData(CREATED_AT, uri, CONTENTS, storedHash)));
+        Path previous = onlineRepositoryBaseDirectory.toPath().resolve("published-2021-04-21T10:13:20.000Z");
+
+        // The content is not hashed again when the stored hash is known
+        DateTimeUtils.setCurrentMillisFixed(1619000000000L + TimeUnit.MINUTES.toMillis(15));
+        subject.writeAll(Stream.of(new PublishedObjectData(CREATED_AT, uri, new byte[CONTENTS.length], storedHash)));
+        Path current = onlineRepositoryBaseDirectory.toPath().resolve("published-2021-04-21T10:28:20.000Z");
+
+        assertThat(Files.isSameFile(previous.resolve("foo/bar.cer"), current.resolve("foo/bar.cer"))).isTrue();
+    }
+
+    @Test
+    public void should_write_all_objects_when_incremental_write_is_disabled() throws IOException {
+        subject = new FileSystemPublicationObjectPersistence(
+            ONLINE_REPOSITORY_BASE_URI, onlineRepositoryBaseDirectory.getAbsolutePath(),
+            TA_REPOSITORY_BASE_URI, taRepositoryBaseDirectory.getAbsolutePath(),
+            120, 2, false);
+        URI uri = ONLINE_REPOSITORY_BASE_URI.resolve("foo/bar.cer");
+
+        DateTimeUtils.setCurrentMillisFixed(1619000000000L);
+        subject.writeAll(Stream.of(new PublishedObjectData(CREATED_AT, uri, CONTENTS)));
+        DateTimeUtils.setCurrentMillisFixed(1619000000000L + TimeUnit.MINUTES.toMillis(15));
+        subject.writeAll(Stream.of(new PublishedObjectData(CREATED_AT, uri, CONTENTS)));
+
+        assertThat(Files.isSameFile(
+            onlineRepositoryBaseDirectory.toPath().resolve("published-2021-04-21T10:13:20.000Z/foo/bar.cer"),
+            onlineRepositoryBaseDirectory.toPath().resolve("published-2021-04-21T10:28:20.000Z/foo/bar.cer")
+        )).isFalse();
+    }
+
     @Test
     public void should_reject_uri_outside_of_public_repository() {
         URI uri = URI.create("rsync://somewhere/else/bar.cer");
 
         var publishedObjects = Collections.singletonList(new PublishedObjectData(CREATED_AT, uri, CONTENTS));
-        assertThatThrownBy(() ->subject.writeAll(publishedObjects))
+        assertThatThrownBy(() ->subject.writeAll(publishedObjects.stream()))
                 .isInstanceOf(IllegalArgumentException.class);
     }
 
@@ -237,7 +301,7 @@ public class FileSystemPublicationObjectPersistenceTest {
         URI uri = ONLINE_REPOSITORY_BASE_URI.resolve("../bar.cer");
 
         var publishedObjects = Collections.singletonList(new PublishedObjectData(CREATED_AT, uri, CONTENTS));
-        assertThatThrownBy(() -> subject.writeAll(publishedObjects))
+        assertThatThrownBy(() -> subject.writeAll(publishedObjects.stream()))
                 .isInstanceOf(IllegalArgumentException.class);
     }
 
@@ -246,7 +310,7 @@ public class FileSystemPublicationObjectPersistenceTest {
         URI uri = URI.create("foo/bar.cer");
 
         var publishedObjects = Collections.singletonList(new PublishedObjectData(CREATED_AT, uri, CONTENTS));
-        assertThatThrownBy(() -> subject.writeAll(publishedObjects))
+        assertThatThrownBy(() -> subject.writeAll(publishedObjects.stream()))
                 .isInstanceOf(IllegalArgumentException.class);
     }
 
@@ -6,16 +6,24 @@ import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
-import reactor.core.publisher.Mono;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
@@ -42,12 +50,12 @@ public class ExternalPublishingServerTest {
     @Test
     public void shouldCreateEmptyRequest() {
         final String query = "<msg type=\"query\" version=\"3\" xmlns=\"http://www.hactrn.net/uris/rpki/publication-spec/\"/>";
-        ArgumentCaptor<String> xmlCaptor = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<PublishingServerClient.RequestBody> xmlCaptor = ArgumentCaptor.forClass(PublishingServerClient.RequestBody.class);
         ArgumentCaptor<String> clientIdCaptor = ArgumentCaptor.forClass(String.class);
-        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), xmlCaptor.capture(), clientIdCaptor.capture())).thenReturn(Mono.just(replyDoesntMatter));
+        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), xmlCaptor.capture(), clientIdCaptor.capture())).thenReturn(response(replyDoesntMatter));
         String clientId = getRandomClientId();
         externalPublishingServer.execute(Collections.emptyList(), clientId);
-        assertEquals(query, xmlCaptor.getValue());
+        assertEquals(query, render(xmlCaptor.getValue()));
         assertEquals(clientId, clientIdCaptor.getValue());
     }
 
@@ -58,27 +66,51 @@ public class ExternalPublishingServerTest {
                 "<withdraw hash=\"not important\" uri=\"rsync://blabla.com/yyy.cer\"/>" +
                 "<publish hash=\"aHash\" uri=\"rsync://blabla.com/xxx.cer\">AQID</publish></msg>";
 
-        ArgumentCaptor<String> xmlCaptor = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<PublishingServerClient.RequestBody> xmlCaptor = ArgumentCaptor.forClass(PublishingServerClient.RequestBody.class);
         ArgumentCaptor<String> clientIdCaptor = ArgumentCaptor.forClass(String.class);
-        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), xmlCaptor.capture(), clientIdCaptor.capture())).thenReturn(Mono.just(replyDoesntMatter));
+        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), xmlCaptor.capture(), clientIdCaptor.capture())).thenReturn(response(replyDoesntMatter));
         List<PublicationMessage> messages = new ArrayList<>();
         messages.add(new PublicationMessage.PublishRequest(new URI("rsync://blabla.com/xxx.cer"), new byte[]{1, 2, 3}, Optional.empty()));
         messages.add(new PublicationMessage.WithdrawRequest(new URI("rsync://blabla.com/yyy.cer"), "not important"));
         messages.add(new PublicationMessage.PublishRequest(new URI("rsync://blabla.com/xxx.cer"), new byte[]{1, 2, 3}, java.util.Optional.of("aHash")));
         String clientId = getRandomClientId();
         externalPublishingServer.execute(messages, clientId);
-        assertEquals(query, xmlCaptor.getValue());
+        assertEquals(query, render(xmlCaptor.getValue()));
         assertEquals(clientId, clientIdCaptor.getValue());
     }
 
+    @Test
+    public void should_count_request_size() throws URISyntaxException {
+        ArgumentCaptor<PublishingServerClient.RequestBody> xmlCaptor = ArgumentCaptor.forClass(PublishingServerClient.RequestBody.class);
+        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), xmlCaptor.capture(), anyString())).thenReturn(response(replyDoesntMatter));
+        List<? extends PublicationMessage> messages = List.of(
+            new PublicationMessage.PublishRequest(new URI("rsync://blabla.com/xxx.cer"), new byte[10_000], Optional.empty())
+        );
+        externalPublishingServer.execute(messages, getRandomClientId());
+
+        String xml = render(xmlCaptor.getValue());
+        assertTrue(xml.contains(Base64.getEncoder().encodeToString(new byte[10_000])));
+        assertEquals(xml.getBytes(StandardCharsets.UTF_8).length, meterRegistry.get("rpkicore.publication.total.payload.size").counter().count(), 0.1);
+    }
+
     private String getRandomClientId() {
         return String.valueOf(RANDOM.nextInt());
     }
 
+    private static String render(PublishingServerClient.RequestBody body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            body.writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
     @Test
     public void shouldParseEmptyResponse() {
         String reply = "<msg type=\"reply\" version=\"3\" xmlns=\"http://www.hactrn.net/uris/rpki/publication-spec/\"></msg>";
-        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), anyString(), anyString())).thenReturn(Mono.just(reply));
+        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), any(), anyString())).thenReturn(response(reply));
         List<? extends PublicationMessage> parsedReply = externalPublishingServer.execute(Collections.emptyList(), getRandomClientId());
         assertTrue(parsedReply.isEmpty());
     }
@@ -90,7 +122,7 @@ public class ExternalPublishingServerTest {
                 "<withdraw uri=\"rsync://wombat.example/Alice/bbb.cer\"/>\n" +
                 "<report_error error_code=\"an_error_code\">Bla bla</report_error>\n" +
                 "</msg>";
-        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), anyString(), anyString())).thenReturn(Mono.just(reply));
+        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), any(), anyString())).thenReturn(response(reply));
         List<? extends PublicationMessage> parsedReply = externalPublishingServer.execute(Collections.emptyList(), getRandomClientId());
         assertEquals(3, parsedReply.size());
         PublicationMessage.PublishReply r1 = (PublicationMessage.PublishReply) parsedReply.get(0);
@@ -106,13 +138,13 @@ public class ExternalPublishingServerTest {
     public void should_create_list_request() {
         String query = "<msg type=\"query\" version=\"3\" xmlns=\"http://www.hactrn.net/uris/rpki/publication-spec/\"><list/></msg>";
 
-        ArgumentCaptor<String> xmlCaptor = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<PublishingServerClient.RequestBody> xmlCaptor = ArgumentCaptor.forClass(PublishingServerClient.RequestBody.class);
         ArgumentCaptor<String> clientIdCaptor = ArgumentCaptor.forClass(String.class);
-        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), xmlCaptor.capture(), clientIdCaptor.capture())).thenReturn(Mono.just(replyDoesntMatter));
+        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), xmlCaptor.capture(), clientIdCaptor.capture())).thenReturn(response(replyDoesntMatter));
         List<? extends PublicationMessage> messages = Collections.singletonList(new PublicationMessage.ListRequest());
         String clientId = getRandomClientId();
         externalPublishingServer.execute(messages, clientId);
-        assertEquals(query, xmlCaptor.getValue().replaceAll("[\\r\\n]", ""));
+        assertEquals(query, render(xmlCaptor.getValue()).replaceAll("[\\r\\n]", ""));
         assertEquals(clientId, clientIdCaptor.getValue());
     }
 
@@ -127,7 +159,7 @@ public class ExternalPublishingServerTest {
                 "    <list uri=\"rsync://wombat.example/Alice/blCrcCp9ltyPDNzYKPfxc.mft\"\n" +
                 "          hash=\"6D776A0A90EA55F479F63C15B3BFC8E91CFBEA549439CF9C474AAB738D741224\"/>\n" +
                 "</msg>";
-        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), anyString(), anyString())).thenReturn(Mono.just(reply));
+        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), any(), anyString())).thenReturn(response(reply));
         List<? extends PublicationMessage> parsedReply = externalPublishingServer.execute(Collections.emptyList(), getRandomClientId());
         assertEquals(2, parsedReply.size());
         PublicationMessage.ListReply r1 = (PublicationMessage.ListReply) parsedReply.get(0);
@@ -138,11 +170,45 @@ public class ExternalPublishingServerTest {
         assertEquals("6D776A0A90EA55F479F63C15B3BFC8E91CFBEA549439CF9C474AAB738D741224", r2.hash);
     }
 
+    @Test
+    public void should_list_objects_from_response_split_over_buffers() {
+        String reply = "<msg type=\"reply\" version=\"3\" xmlns=\"http://www.hactrn.net/uris/rpki/publication-spec/\">" +
+                "<list uri=\"rsync://wombat.example/Alice/blCrcCp9ltyPDNzYKPfxc.cer\" hash=\"6D776A0A90EA55F479F63C15B3BFC8E91CFBEA549439CF9C474AAB738D741223\"/>" +
+                "<list uri=\"rsync://wombat.example/Alice/blCrcCp9ltyPDNzYKPfxc.mft\" hash=\"6D776A0A90EA55F479F63C15B3BFC8E91CFBEA549439CF9C474AAB738D741224\"/>" +
+                "</msg>";
+        byte[] bytes = reply.getBytes(StandardCharsets.UTF_8);
+        Flux<DataBuffer> buffers = Flux.range(0, bytes.length / 7 + 1)
+                .map(i -> DefaultDataBufferFactory.sharedInstance.wrap(Arrays.copyOfRange(bytes, i * 7, Math.min(bytes.length, i * 7 + 7))));
+        String clientId = getRandomClientId();
+        ArgumentCaptor<PublishingServerClient.RequestBody> xmlCaptor = ArgumentCaptor.forClass(PublishingServerClient.RequestBody.class);
+        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), xmlCaptor.capture(), eq(clientId))).thenReturn(buffers);
+
+        Map<URI, String> objects = externalPublishingServer.listObjects(clientId);
+
+        assertEquals("<msg type=\"query\" version=\"3\" xmlns=\"http://www.hactrn.net/uris/rpki/publication-spec/\"><list/></msg>", render(xmlCaptor.getValue()));
+        assertEquals(Map.of(
+                URI.create("rsync://wombat.example/Alice/blCrcCp9ltyPDNzYKPfxc.cer"), "6D776A0A90EA55F479F63C15B3BFC8E91CFBEA549439CF9C474AAB738D741223",
+                URI.create("rsync://wombat.example/Alice/blCrcCp9ltyPDNzYKPfxc.mft"), "6D776A0A90EA55F479F63C15B3BFC8E91CFBEA549439CF9C474AAB738D741224"
+        ), objects);
+        assertEquals(2.0, meterRegistry.get("rpkicore.publication.messages").tag("status", "success").counter().count(), 0.1);
+    }
+
+    @Test
+    public void should_fail_list_objects_on_error_reply() {
+        String reply = "<msg type=\"reply\" version=\"3\" xmlns=\"http://www.hactrn.net/uris/rpki/publication-spec/\">" +
+                "<report_error error_code=\"an_error_code\">Bla bla</report_error>" +
+                "</msg>";
+        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), any(), anyString())).thenReturn(response(reply));
+
+        assertThrows(IllegalStateException.class, () -> externalPublishingServer.listObjects(getRandomClientId()));
+        assertEquals(1.0, meterRegistry.get("rpkicore.publication.messages").tag("status", "failure").counter().count(), 0.1);
+    }
+
     @Test
     public void should_update_publication_metrics() throws Exception {
         String clientId = RandomStringUtils.insecure().nextAlphanumeric(8);
         String reply = "<msg type=\"reply\" version=\"3\" xmlns=\"http://www.hactrn.net/uris/rpki/publication-spec/\"></msg>";
-        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), anyString(), eq(clientId))).thenReturn(Mono.just(reply));
+        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), any(), eq(clientId))).thenReturn(response(reply));
         List<? extends PublicationMessage> messages = Stream.of(
                 new PublicationMessage.PublishRequest(new URI("rsync://blabla.com/xxx.cer"), new byte[]{1, 2, 3}, Optional.empty()),
                 new PublicationMessage.PublishRequest(new URI("rsync://blabla.com/xxx2.cer"), new byte[]{1, 2, 3, 4}, Optional.empty()),
@@ -157,4 +223,8 @@ public class ExternalPublishingServerTest {
         assertEquals(1.0, meterRegistry.get("rpkicore.publication.operations").tag("operation", "withdraw").tag("type", "unknown").counter().count(), 0.1);
     }
 
+    private static Flux<DataBuffer> response(String xml) {
+        // A new buffer for every subscription, since reading the response consumes it
+        return Flux.defer(() -> Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(xml.getBytes(StandardCharsets.UTF_8))));
+    }
 }
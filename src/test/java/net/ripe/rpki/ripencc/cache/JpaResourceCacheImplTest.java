@@ -72,6 +72,68 @@ public class JpaResourceCacheImplTest extends CertificationDomainTestCase {
         assertEquals(Optional.of(ImmutableResourceSet.parse("")), resourceCache.lookupResources(CaName.fromMembershipId(3)));
     }
 
+    @Test
+    public void populate_should_only_replace_changed_members() {
+        inTx(() -> resourceCache.populateCache(Map.of(
+            CaName.fromMembershipId(1), ImmutableResourceSet.parse("10.0.0.0/8"),
+            CaName.fromMembershipId(2), ImmutableResourceSet.parse("11.0.0.0/8")
+        )));
+        inTx(() -> resourceCache.populateCache(Map.of(
+            CaName.fromMembershipId(1), ImmutableResourceSet.parse("10.0.0.0/8"),
+            CaName.fromMembershipId(3), ImmutableResourceSet.parse("12.0.0.0/8")
+        )));
+
+        assertThat(withTx(() -> resourceCache.allMemberResources())).isEqualTo(Map.of(
+            CaName.fromMembershipId(1), ImmutableResourceSet.parse("10.0.0.0/8"),
+            CaName.fromMembershipId(3), ImmutableResourceSet.parse("12.0.0.0/8")
+        ));
+        assertFalse(resourceCache.hasNoProductionResources());
+    }
+
+    @Test
+    public void changedMemberResources_should_only_return_changed_members() {
+        Map<CaName, ImmutableResourceSet> cached = Map.of(
+            CaName.fromMembershipId(1), ImmutableResourceSet.parse("10.0.0.0/8"),
+            CaName.fromMembershipId(2), ImmutableResourceSet.parse("11.0.0.0/8"),
+            CaName.fromMembershipId(3), ImmutableResourceSet.parse("12.0.0.0/8")
+        );
+        inTx(() -> resourceCache.populateCache(cached));
+
+        assertThat(withTx(() -> resourceCache.changedMemberResources(cached))).isEmpty();
+
+        Map<CaName, ImmutableResourceSet> changed = withTx(() -> resourceCache.changedMemberResources(Map.of(
+            CaName.fromMembershipId(1), ImmutableResourceSet.parse("10.0.0.0/8"),
+            CaName.fromMembershipId(2), ImmutableResourceSet.parse("11.0.0.0/16"),
+            CaName.fromMembershipId(4), ImmutableResourceSet.parse("13.0.0.0/8")
+        )));
+        assertThat(changed).isEqualTo(Map.of(
+            CaName.fromMembershipId(2), ImmutableResourceSet.parse("11.0.0.0/8"),
+            CaName.fromMembershipId(3), ImmutableResourceSet.parse("12.0.0.0/8"),
+            CaName.fromMembershipId(4), ImmutableResourceSet.empty()
+        ));
+    }
+
+    @Test
+    public void lookup_should_reuse_parsed_delegations_until_cache_is_updated() {
+        inTx(() -> resourceCache.cacheDelegations(ImmutableResourceSet.parse("10.0.0.0/8, 11.0.0.0/8")));
+
+        Optional<ImmutableResourceSet> first = withTx(() -> resourceCache.getDelegationsCache());
+        assertThat(withTx(() -> resourceCache.getDelegationsCache())).containsSame(first.orElseThrow());
+
+        inTx(() -> resourceCache.cacheDelegations(ImmutableResourceSet.parse("10.0.0.0/8")));
+        assertThat(withTx(() -> resourceCache.getDelegationsCache())).contains(ImmutableResourceSet.parse("10.0.0.0/8"));
+    }
+
+    @Test
+    public void lookup_should_return_updated_member_resources() {
+        CaName member = CaName.fromMembershipId(1);
+        inTx(() -> resourceCache.populateCache(Map.of(member, ImmutableResourceSet.parse("10.0.0.0/8"))));
+        assertEquals(Optional.of(ImmutableResourceSet.parse("10.0.0.0/8")), withTx(() -> resourceCache.lookupResources(member)));
+
+        inTx(() -> resourceCache.updateEntry(member, ImmutableResourceSet.parse("11.0.0.0/8")));
+        assertEquals(Optional.of(ImmutableResourceSet.parse("11.0.0.0/8")), withTx(() -> resourceCache.lookupResources(member)));
+    }
+
     @Test
     public void shouldReturnHostedCaWithDifferentResourcesOnCertificate() {
         var childName = new X500Principal("CN=child");
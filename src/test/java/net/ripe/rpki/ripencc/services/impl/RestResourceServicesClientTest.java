@@ -18,6 +18,7 @@ import static jakarta.ws.rs.core.MediaType.APPLICATION_JSON;
 import static net.ripe.rpki.server.api.ports.ResourceServicesClient.*;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 
 public class RestResourceServicesClientTest {
@@ -89,10 +90,21 @@ public class RestResourceServicesClientTest {
             )
         );
 
-        final TotalResources totalExpected = new TotalResources(expectedMember, ripeNccDelegations);
+        final TotalResources totalExpected = new TotalResources(expectedMember.toCertifiableMemberResources(), ripeNccDelegations);
         assertEquals(totalExpected, subject.fetchAllResources());
     }
 
+    @Test
+    public void should_reject_total_resources_response_without_content() {
+        stubFor(get(urlEqualTo(BASE_URL + TOTAL_RESOURCES_URL))
+                .withHeader("Accept", equalTo(APPLICATION_JSON))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", APPLICATION_JSON)
+                        .withBody("{\"response\": {\"status\": 200, \"content\": null}}")));
+
+        assertThrows(RuntimeException.class, () -> subject.fetchAllResources());
+    }
+
     private void givenTotalResourcesHttpCallWillReturn(String pathToJsonFile) {
         stubFor(get(urlEqualTo(BASE_URL + TOTAL_RESOURCES_URL))
                 .withHeader("Accept", equalTo(APPLICATION_JSON))
@@ -8,6 +8,7 @@ import net.ripe.rpki.server.api.commands.CertificateAuthorityCommand;
 import net.ripe.rpki.server.api.commands.UpdateAllIncomingResourceCertificatesCommand;
 import net.ripe.rpki.server.api.configuration.RepositoryConfiguration;
 import net.ripe.rpki.server.api.dto.CertificateAuthorityData;
+import net.ripe.rpki.server.api.dto.CertificateAuthorityReference;
 import net.ripe.rpki.server.api.dto.CertificateAuthorityType;
 import net.ripe.rpki.server.api.dto.HostedCertificateAuthorityData;
 import net.ripe.rpki.server.api.dto.ManagedCertificateAuthorityData;
@@ -19,6 +20,7 @@ import net.ripe.rpki.server.api.services.system.ActiveNodeService;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
@@ -27,6 +29,7 @@ import javax.security.auth.x500.X500Principal;
 import java.util.*;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
+import static net.ripe.rpki.server.api.services.background.BackgroundService.BATCH_SIZE_PARAMETER;
 import static org.mockito.Mockito.*;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -44,6 +47,9 @@ public class AllCaCertificateUpdateServiceBeanTest {
     public static final CertificateAuthorityData MEMBER_CA_2 = new HostedCertificateAuthorityData(new VersionedId(11L),
         new X500Principal("CN=gr.isp"), UUID.randomUUID(), 2L,
         ImmutableResourceSet.ALL_PRIVATE_USE_RESOURCES, Collections.emptyList());
+    private static final CertificateAuthorityData MEMBER_CA_1_CHILD = new HostedCertificateAuthorityData(new VersionedId(12L),
+        new X500Principal("CN=nl.isp.customer"), UUID.randomUUID(), 10L,
+        ImmutableResourceSet.ALL_PRIVATE_USE_RESOURCES, Collections.emptyList());
     private static final X500Principal ALL_RESOURCES_CA_NAME = new X500Principal("CN=All Resources CA,O=RIPE NCC,C=NL");
 
     private static final Random RANDOM = new Random();
@@ -67,7 +73,7 @@ public class AllCaCertificateUpdateServiceBeanTest {
 
     @Before
     public void setUp() {
-        subject = new AllCaCertificateUpdateServiceBean(new BackgroundTaskRunner(activeNodeService, new SimpleMeterRegistry()), caViewService, commandService, resourceCache, repositoryConfiguration, 1000, new SimpleMeterRegistry());
+        subject = new AllCaCertificateUpdateServiceBean(new BackgroundTaskRunner(activeNodeService, new SimpleMeterRegistry()), caViewService, commandService, resourceCache, repositoryConfiguration, 1000, 4, new SimpleMeterRegistry());
 
         when(repositoryConfiguration.getAllResourcesCaPrincipal()).thenReturn(ALL_RESOURCES_CA_NAME);
         when(repositoryConfiguration.getProductionCaPrincipal()).thenReturn(PRODUCTION_CA_NAME);
@@ -102,7 +108,7 @@ public class AllCaCertificateUpdateServiceBeanTest {
 
     @Test
     public void should_dispatch_update_command_to_every_member_ca_that_needs_an_update() {
-        when(caViewService.findAllChildrenForCa(PRODUCTION_CA_NAME)).thenReturn(Arrays.asList(MEMBER_CA_1, MEMBER_CA_2));
+        when(caViewService.findAllChildReferencesForCa(PRODUCTION_CA_NAME)).thenReturn(references(MEMBER_CA_1, MEMBER_CA_2));
 
         subject.execute(Collections.emptyMap());
 
@@ -112,6 +118,44 @@ public class AllCaCertificateUpdateServiceBeanTest {
         verify(commandService).execute(new UpdateAllIncomingResourceCertificatesCommand(MEMBER_CA_2.getVersionedId(), Integer.MAX_VALUE));
     }
 
+    @Test
+    public void should_update_parent_again_after_all_descendants() {
+        when(caViewService.findAllChildReferencesForCa(PRODUCTION_CA_NAME)).thenReturn(references(MEMBER_CA_1, MEMBER_CA_2));
+        when(caViewService.findAllChildReferencesForCa(MEMBER_CA_1.getName())).thenReturn(references(MEMBER_CA_1_CHILD));
+
+        subject.execute(Collections.emptyMap());
+
+        InOrder inOrder = inOrder(commandService);
+        inOrder.verify(commandService).execute(new UpdateAllIncomingResourceCertificatesCommand(PRODUCTION_CA.getVersionedId(), Integer.MAX_VALUE));
+        inOrder.verify(commandService).execute(new UpdateAllIncomingResourceCertificatesCommand(MEMBER_CA_1_CHILD.getVersionedId(), Integer.MAX_VALUE));
+        inOrder.verify(commandService).execute(new UpdateAllIncomingResourceCertificatesCommand(MEMBER_CA_1.getVersionedId(), Integer.MAX_VALUE));
+        inOrder.verify(commandService).execute(new UpdateAllIncomingResourceCertificatesCommand(PRODUCTION_CA.getVersionedId(), Integer.MAX_VALUE));
+        // Member CA 2 has no children, so it is only updated once
+        verify(commandService).execute(new UpdateAllIncomingResourceCertificatesCommand(MEMBER_CA_2.getVersionedId(), Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void should_stop_descending_when_batch_size_is_reached() {
+        subject = new AllCaCertificateUpdateServiceBean(new BackgroundTaskRunner(activeNodeService, new SimpleMeterRegistry()), caViewService, commandService, resourceCache, repositoryConfiguration, 1000, 1, new SimpleMeterRegistry());
+        when(caViewService.findAllChildReferencesForCa(PRODUCTION_CA_NAME)).thenReturn(references(MEMBER_CA_1, MEMBER_CA_2));
+
+        subject.execute(Collections.singletonMap(BATCH_SIZE_PARAMETER, "2"));
+
+        verify(commandService).execute(new UpdateAllIncomingResourceCertificatesCommand(MEMBER_CA_1.getVersionedId(), Integer.MAX_VALUE));
+        verify(commandService, never()).execute(new UpdateAllIncomingResourceCertificatesCommand(MEMBER_CA_2.getVersionedId(), Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void should_only_visit_children_with_resources_different_from_cache_after_resource_cache_update() {
+        when(caViewService.findChildReferencesWithResourcesDifferentFromCache(PRODUCTION_CA_NAME)).thenReturn(references(MEMBER_CA_2));
+
+        subject.runServiceForResourceCacheChanges(Collections.emptyMap(), ca -> true);
+
+        verify(caViewService, never()).findAllChildReferencesForCa(any());
+        verify(commandService, never()).execute(new UpdateAllIncomingResourceCertificatesCommand(MEMBER_CA_1.getVersionedId(), Integer.MAX_VALUE));
+        verify(commandService).execute(new UpdateAllIncomingResourceCertificatesCommand(MEMBER_CA_2.getVersionedId(), Integer.MAX_VALUE));
+    }
+
     @Test
     public void should_not_throw_exception_if_command_fails() {
         doThrow(new RuntimeException("test")).when(commandService).execute(any());
@@ -133,7 +177,7 @@ public class AllCaCertificateUpdateServiceBeanTest {
 
     @Test
     public void should_ignore_error_when_ca_is_deleted_during_run() {
-        when(caViewService.findAllChildrenForCa(PRODUCTION_CA_NAME)).thenReturn(Collections.singletonList(MEMBER_CA_1));
+        when(caViewService.findAllChildReferencesForCa(PRODUCTION_CA_NAME)).thenReturn(references(MEMBER_CA_1));
         when(commandService.execute(new UpdateAllIncomingResourceCertificatesCommand(MEMBER_CA_1.getVersionedId(), Integer.MAX_VALUE)))
             .thenThrow(new EntityNotFoundException());
 
@@ -157,6 +201,10 @@ public class AllCaCertificateUpdateServiceBeanTest {
         }
     }
 
+    private static List<CertificateAuthorityReference> references(CertificateAuthorityData... cas) {
+        return Arrays.stream(cas).map(CertificateAuthorityReference::of).toList();
+    }
+
     private Map<CertificateAuthorityData, Collection<CertificateAuthorityData>> generateTree(CertificateAuthorityData parent, int maxDepth) {
         if (maxDepth == 0) {
             return Collections.emptyMap();
@@ -177,7 +225,7 @@ public class AllCaCertificateUpdateServiceBeanTest {
             children.add(child);
         }
 
-        when(caViewService.findAllChildrenForCa(parent.getName())).thenReturn(children);
+        when(caViewService.findAllChildReferencesForCa(parent.getName())).thenReturn(children.stream().map(CertificateAuthorityReference::of).toList());
 
         var result = new HashMap<CertificateAuthorityData, Collection<CertificateAuthorityData>>();
         result.put(parent, children);
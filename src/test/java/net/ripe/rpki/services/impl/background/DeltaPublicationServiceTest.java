@@ -0,0 +1,117 @@
+package net.ripe.rpki.services.impl.background;
+
+import net.ripe.rpki.core.services.background.BackgroundServiceExecutionResult;
+import net.ripe.rpki.domain.PublishedObjectsChangedEvent;
+import net.ripe.rpki.server.api.services.background.BackgroundService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DeltaPublicationServiceTest {
+
+    private static final BackgroundServiceExecutionResult SUCCESS = new BackgroundServiceExecutionResult(1, 1, BackgroundServiceExecutionResult.Status.SUCCESS);
+    private static final BackgroundServiceExecutionResult SKIPPED = new BackgroundServiceExecutionResult(0, 0, BackgroundServiceExecutionResult.Status.SKIPPED);
+
+    @Mock
+    private BackgroundService rrdpService;
+    @Mock
+    private BackgroundService rsyncService;
+    @Mock
+    private ScheduledExecutorService executor;
+
+    private DeltaPublicationService subject;
+
+    @Before
+    public void setUp() {
+        subject = new DeltaPublicationService(List.of(rrdpService, rsyncService), 2000, executor);
+    }
+
+    @Test
+    public void should_coalesce_changes_into_a_single_run() {
+        when(rrdpService.execute(Collections.emptyMap())).thenReturn(SUCCESS);
+        when(rsyncService.execute(Collections.emptyMap())).thenReturn(SUCCESS);
+
+        subject.publishedObjectsChanged(new PublishedObjectsChangedEvent(1));
+        subject.publishedObjectsChanged(new PublishedObjectsChangedEvent(3));
+
+        runScheduledPublication(1);
+        verify(rrdpService).execute(Collections.emptyMap());
+        verify(rsyncService).execute(Collections.emptyMap());
+
+        // Changes after the run started are published by a new run
+        subject.publishedObjectsChanged(new PublishedObjectsChangedEvent(1));
+        verify(executor, times(2)).schedule(any(Runnable.class), eq(2000L), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void should_run_again_when_service_was_already_running() throws InterruptedException {
+        when(rrdpService.execute(Collections.emptyMap())).thenReturn(SKIPPED);
+        when(rrdpService.isWaitingOrRunning()).thenReturn(true);
+        when(rrdpService.awaitIdle(any())).thenReturn(true);
+        when(rsyncService.execute(Collections.emptyMap())).thenReturn(SUCCESS);
+
+        subject.publishedObjectsChanged(new PublishedObjectsChangedEvent(1));
+        runScheduledPublication(1);
+
+        verify(rrdpService).awaitIdle(any());
+        verify(executor, times(2)).schedule(any(Runnable.class), eq(2000L), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void should_not_run_again_when_service_does_not_become_idle() throws InterruptedException {
+        when(rrdpService.execute(Collections.emptyMap())).thenReturn(SKIPPED);
+        when(rrdpService.isWaitingOrRunning()).thenReturn(true);
+        when(rrdpService.awaitIdle(any())).thenReturn(false);
+        when(rsyncService.execute(Collections.emptyMap())).thenReturn(SUCCESS);
+
+        subject.publishedObjectsChanged(new PublishedObjectsChangedEvent(1));
+        runScheduledPublication(1);
+
+        verify(executor, times(1)).schedule(any(Runnable.class), anyLong(), any());
+    }
+
+    @Test
+    public void should_not_run_again_when_skipped_on_inactive_node() {
+        when(rrdpService.execute(Collections.emptyMap())).thenReturn(SKIPPED);
+        when(rrdpService.isWaitingOrRunning()).thenReturn(false);
+        when(rsyncService.execute(Collections.emptyMap())).thenReturn(SKIPPED);
+        when(rsyncService.isWaitingOrRunning()).thenReturn(false);
+
+        subject.publishedObjectsChanged(new PublishedObjectsChangedEvent(1));
+        runScheduledPublication(1);
+
+        verify(executor, times(1)).schedule(any(Runnable.class), anyLong(), any());
+    }
+
+    @Test
+    public void should_not_schedule_without_repository_services() {
+        subject = new DeltaPublicationService(List.of(), 2000, executor);
+
+        subject.publishedObjectsChanged(new PublishedObjectsChangedEvent(1));
+
+        verify(executor, never()).schedule(any(Runnable.class), anyLong(), any());
+    }
+
+    private void runScheduledPublication(int expectedScheduleCount) {
+        ArgumentCaptor<Runnable> publication = ArgumentCaptor.forClass(Runnable.class);
+        verify(executor, times(expectedScheduleCount)).schedule(publication.capture(), eq(2000L), eq(TimeUnit.MILLISECONDS));
+        publication.getValue().run();
+    }
+}
@@ -8,6 +8,7 @@ import net.ripe.rpki.server.api.commands.CertificateAuthorityModificationCommand
 import net.ripe.rpki.server.api.commands.KeyManagementActivatePendingKeysCommand;
 import net.ripe.rpki.server.api.commands.UpdateAllIncomingResourceCertificatesCommand;
 import net.ripe.rpki.server.api.dto.CertificateAuthorityData;
+import net.ripe.rpki.server.api.dto.CertificateAuthorityReference;
 import net.ripe.rpki.server.api.dto.ManagedCertificateAuthorityData;
 import net.ripe.rpki.server.api.dto.NonHostedCertificateAuthorityData;
 import net.ripe.rpki.server.api.ports.ResourceCache;
@@ -107,7 +108,7 @@ public class KeyPairActivationManagementServiceBeanTest {
     @Test
     public void shouldTriggerMemberCertificatesUpdateAfterProductionCAKeyRollover() {
         when(certificationService.findAllManagedCertificateAuthoritiesWithPendingKeyPairsOrderedByDepth()).thenReturn(Collections.singletonList(PROD_CA));
-        when(certificationService.findAllChildrenForCa(PROD_CA.getName())).thenReturn(Arrays.asList(MEMBER_CA, NON_HOSTED_CA));
+        when(certificationService.findAllChildReferencesForCa(PROD_CA.getName())).thenReturn(Arrays.asList(CertificateAuthorityReference.of(MEMBER_CA), CertificateAuthorityReference.of(NON_HOSTED_CA)));
         when(configuration.getStagingPeriod()).thenReturn(Duration.standardHours(24));
         when(commandService.execute(any())).thenReturn(CommandStatus.create());
 
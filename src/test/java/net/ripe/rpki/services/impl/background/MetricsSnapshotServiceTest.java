@@ -0,0 +1,93 @@
+package net.ripe.rpki.services.impl.background;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MetricsSnapshotServiceTest {
+
+    @Mock
+    private ScheduledExecutorService executor;
+
+    private MeterRegistry meterRegistry;
+    private MetricsSnapshotService subject;
+
+    @Before
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        subject = new MetricsSnapshotService(meterRegistry, 300, executor);
+    }
+
+    @Test
+    public void should_serve_scrapes_from_snapshot() {
+        AtomicInteger queries = new AtomicInteger();
+        subject.register("test.count", "test", () -> {
+            queries.incrementAndGet();
+            return 42;
+        });
+
+        assertThat(gaugeValue()).isNaN();
+
+        scheduledRefresh().run();
+        assertThat(gaugeValue()).isEqualTo(42.0);
+        assertThat(gaugeValue()).isEqualTo(42.0);
+        assertThat(queries).hasValue(1);
+    }
+
+    @Test
+    public void should_adjust_snapshot_until_next_refresh() {
+        AtomicInteger count = new AtomicInteger(10);
+        MetricsSnapshotService.SnapshotGauge gauge = subject.register("test.count", "test", count::get);
+        Runnable refresh = scheduledRefresh();
+        refresh.run();
+
+        gauge.add(3);
+        gauge.add(-1);
+        assertThat(gaugeValue()).isEqualTo(12.0);
+
+        count.set(20);
+        refresh.run();
+        assertThat(gaugeValue()).isEqualTo(20.0);
+    }
+
+    @Test
+    public void should_keep_last_value_when_refresh_fails() {
+        AtomicInteger count = new AtomicInteger(10);
+        subject.register("test.count", "test", () -> {
+            if (count.get() < 0) {
+                throw new IllegalStateException("database unavailable");
+            }
+            return count.get();
+        });
+        Runnable refresh = scheduledRefresh();
+        refresh.run();
+
+        count.set(-1);
+        refresh.run();
+        assertThat(gaugeValue()).isEqualTo(10.0);
+    }
+
+    private Runnable scheduledRefresh() {
+        ArgumentCaptor<Runnable> refresh = ArgumentCaptor.forClass(Runnable.class);
+        verify(executor).scheduleWithFixedDelay(refresh.capture(), eq(0L), eq(300L), eq(TimeUnit.SECONDS));
+        return refresh.getValue();
+    }
+
+    private double gaugeValue() {
+        return meterRegistry.get("test.count").gauge().value();
+    }
+}
@@ -2,14 +2,13 @@ package net.ripe.rpki.services.impl.background;
 
 import net.ripe.rpki.commons.util.UTC;
 import net.ripe.rpki.domain.CertificationDomainTestCase;
-import net.ripe.rpki.domain.ManagedCertificateAuthority;
+import net.ripe.rpki.domain.PendingPublication;
 import net.ripe.rpki.domain.PublicationStatus;
 import net.ripe.rpki.domain.PublishedObjectEntry;
 import org.junit.Before;
 import org.junit.Test;
 
 import jakarta.inject.Inject;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
@@ -31,19 +30,32 @@ public class PublicRepositoryPublicationServiceBeanTest extends CertificationDom
 
     @Test
     public void should_ensure_all_manifests_are_up_to_date_before_publishing() {
-        assertThat(outdatedCertificateAuthorities()).hasSize(1);
+        assertThat(pendingPublications())
+            .singleElement()
+            .satisfies(pending -> assertThat(pending.caName()).isEqualTo(repositoryConfiguration.getProductionCaPrincipal()));
         assertThat(pendingObjects()).hasSize(1);
         assertThat(publishedObjects()).isEmpty();
 
         subject.runService(Collections.emptyMap());
 
-        assertThat(outdatedCertificateAuthorities()).isEmpty();
+        assertThat(pendingPublications()).isEmpty();
         assertThat(pendingObjects()).isEmpty();
         assertThat(publishedObjects()).hasSize(3);
     }
 
-    private Collection<ManagedCertificateAuthority> outdatedCertificateAuthorities() {
-        return certificateAuthorityRepository.findAllWithOutdatedManifests(true, UTC.dateTime(), Integer.MAX_VALUE);
+    @Test
+    public void should_queue_certificate_authority_with_expiring_manifest() {
+        subject.runService(Collections.emptyMap());
+
+        assertThat(withTx(() -> certificateAuthorityRepository.queuePendingPublicationsForManifestsAndCrlsExpiringBefore(UTC.dateTime()))).isZero();
+        assertThat(withTx(() -> certificateAuthorityRepository.queuePendingPublicationsForManifestsAndCrlsExpiringBefore(UTC.dateTime().plusDays(2)))).isPositive();
+
+        assertThat(pendingPublications())
+            .anyMatch(pending -> pending.caName().equals(repositoryConfiguration.getProductionCaPrincipal()));
+    }
+
+    private List<PendingPublication> pendingPublications() {
+        return withTx(() -> certificateAuthorityRepository.findPendingPublications());
     }
 
     private List<PublishedObjectEntry> pendingObjects() {
@@ -4,7 +4,7 @@ import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.Getter;
 import net.ripe.ipresource.ImmutableResourceSet;
 import net.ripe.rpki.core.services.background.SequentialBackgroundQueuedTaskRunner;
-import net.ripe.rpki.server.api.dto.CertificateAuthorityData;
+import net.ripe.rpki.server.api.dto.CertificateAuthorityReference;
 import net.ripe.rpki.server.api.ports.DelegationsCache;
 import net.ripe.rpki.server.api.ports.ResourceCache;
 import net.ripe.rpki.server.api.ports.ResourceServicesClient;
@@ -33,6 +33,7 @@ import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -40,7 +41,8 @@ import static java.util.Collections.emptyList;
 import static java.util.Collections.emptyMap;
 import static net.ripe.rpki.services.impl.background.AllCaCertificateUpdateServiceBeanTest.MEMBER_CA_1;
 import static net.ripe.rpki.services.impl.background.AllCaCertificateUpdateServiceBeanTest.MEMBER_CA_2;
-import static net.ripe.rpki.services.impl.background.ResourceCacheService.resourcesDiff;
+import static net.ripe.rpki.services.impl.background.ResourceCacheService.changedResourcesDiff;
+import static net.ripe.rpki.services.impl.background.ResourceCacheService.resourcesSetDiff;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.eq;
@@ -118,18 +120,19 @@ public class ResourceCacheServiceTest {
         TransactionSynchronizationManager.getSynchronizations().get(0).afterCommit();
 
 
-        ArgumentCaptor<Runnable> runnableArgumentCaptor = ArgumentCaptor.forClass(Runnable.class);
-        verify(sequentialBackgroundQueuedTaskRunner).submit(any(), runnableArgumentCaptor.capture(), any());
+        ArgumentCaptor<Collection<X500Principal>> casArgumentCaptor = ArgumentCaptor.forClass(Collection.class);
+        ArgumentCaptor<Consumer<Set<X500Principal>>> actionArgumentCaptor = ArgumentCaptor.forClass(Consumer.class);
+        verify(sequentialBackgroundQueuedTaskRunner).submitMerging(any(), casArgumentCaptor.capture(), actionArgumentCaptor.capture(), any());
 
-        runnableArgumentCaptor.getValue().run();
+        actionArgumentCaptor.getValue().accept(new HashSet<>(casArgumentCaptor.getValue()));
 
-        ArgumentCaptor<Predicate<CertificateAuthorityData>> predicateArgumentCaptor = ArgumentCaptor.forClass(Predicate.class);
-        verify(allCaCertificateUpdateServiceBean).runService(eq(Collections.emptyMap()), predicateArgumentCaptor.capture());
+        ArgumentCaptor<Predicate<CertificateAuthorityReference>> predicateArgumentCaptor = ArgumentCaptor.forClass(Predicate.class);
+        verify(allCaCertificateUpdateServiceBean).runServiceForResourceCacheChanges(eq(Collections.emptyMap()), predicateArgumentCaptor.capture());
 
-        Predicate<CertificateAuthorityData> caIdentityPredicate = predicateArgumentCaptor.getValue();
+        Predicate<CertificateAuthorityReference> caIdentityPredicate = predicateArgumentCaptor.getValue();
         assertThat(caIdentityPredicate)
-                .accepts(MEMBER_CA_1)
-                .rejects(MEMBER_CA_2);
+                .accepts(CertificateAuthorityReference.of(MEMBER_CA_1))
+                .rejects(CertificateAuthorityReference.of(MEMBER_CA_2));
     }
 
     @Test
@@ -178,7 +181,7 @@ public class ResourceCacheServiceTest {
 
         final MemberResources resourcesToReject = DataSamples.rejectedMemberResources();
         when(resourceServicesClient.fetchAllResources()).thenReturn(
-            new TotalResources(resourcesToReject, DataSamples.ripeNccDelegations(resourcesToReject)));
+            new TotalResources(resourcesToReject.toCertifiableMemberResources(), DataSamples.ripeNccDelegations(resourcesToReject)));
 
         subject.updateFullResourceCache(Optional.of("477328"));
 
@@ -218,8 +221,10 @@ public class ResourceCacheServiceTest {
         localResources.put(CaName.fromMembershipId(1), ImmutableResourceSet.parse("12.0.0.0/8, 13.0.0.0/8, 14.0.0.0/8")); //This counts as 1 resource only (12.0.0.0 - 14.255.255.255)
         localResources.put(CaName.fromMembershipId(3), ImmutableResourceSet.parse("19.0.0.0/8, 21.0.0.0/8, AS16"));
         localResources.put(CaName.fromMembershipId(4), ImmutableResourceSet.parse("32.0.0.0/8, 34.0.0.0/8, 36.0.0.0/8"));
+        // Not cached yet
+        localResources.put(CaName.fromMembershipId(2), ImmutableResourceSet.empty());
 
-        final ResourceCacheService.ResourceDiffStat resourceDiff = resourcesDiff(registryResources, localResources);
+        final ResourceCacheService.ResourceDiffStat resourceDiff = changedResourcesDiff(registryResources, 6, localResources);
         assertEquals(7, resourceDiff.getLocalSize());
         assertEquals(6, resourceDiff.getRegistrySize());
 
@@ -242,53 +247,38 @@ public class ResourceCacheServiceTest {
 
     @Test
     public void shouldCalculateProperDiffWhenPrefixesAreNotExact() {
-        final Map<CaName, ImmutableResourceSet> registryResources = new HashMap<>();
-        registryResources.put(CaName.fromMembershipId(1), ImmutableResourceSet.parse("10.0.0.0/8, 12.0.0.0/8"));
-
-        final Map<CaName, ImmutableResourceSet> localResources = new HashMap<>();
-        localResources.put(CaName.fromMembershipId(1), ImmutableResourceSet.parse("10.0.0.0/16, 12.0.0.0/16"));
-
-        final ResourceCacheService.ResourceDiffStat resourceDiff = resourcesDiff(registryResources, localResources);
-        assertEquals(2, resourceDiff.getLocalSize());
-        assertEquals(2, resourceDiff.getRegistrySize());
-
-        final ResourceCacheService.Changes changes1 = resourceDiff.getChangesMap().get(CaName.fromMembershipId(1));
-        assertEquals(2, changes1.getAdded());
-        assertEquals(0, changes1.getDeleted());
+        final ResourceCacheService.SetDiff diff = resourcesSetDiff(
+            ImmutableResourceSet.parse("10.0.0.0/8, 12.0.0.0/8"),
+            ImmutableResourceSet.parse("10.0.0.0/16, 12.0.0.0/16")
+        );
+        assertEquals(2, diff.oldSize());
+        assertEquals(2, diff.newSize());
+        assertEquals(2, diff.added());
+        assertEquals(0, diff.deleted());
     }
 
     @Test
     public void shouldCalculateProperDiffWhenPrefixesAreNotExactTheOtherWay() {
-        final Map<CaName, ImmutableResourceSet> registryResources = new HashMap<>();
-        registryResources.put(CaName.fromMembershipId(1), ImmutableResourceSet.parse("10.0.0.0/16, 12.0.0.0/16"));
-
-        final Map<CaName, ImmutableResourceSet> localResources = new HashMap<>();
-        localResources.put(CaName.fromMembershipId(1), ImmutableResourceSet.parse("10.0.0.0/8, 12.0.0.0/8"));
-
-        final ResourceCacheService.ResourceDiffStat resourceDiff = resourcesDiff(registryResources, localResources);
-        assertEquals(2, resourceDiff.getLocalSize());
-        assertEquals(2, resourceDiff.getRegistrySize());
-
-        final ResourceCacheService.Changes changes1 = resourceDiff.getChangesMap().get(CaName.fromMembershipId(1));
-        assertEquals(0, changes1.getAdded());
-        assertEquals(2, changes1.getDeleted());
+        final ResourceCacheService.SetDiff diff = resourcesSetDiff(
+            ImmutableResourceSet.parse("10.0.0.0/16, 12.0.0.0/16"),
+            ImmutableResourceSet.parse("10.0.0.0/8, 12.0.0.0/8")
+        );
+        assertEquals(2, diff.oldSize());
+        assertEquals(2, diff.newSize());
+        assertEquals(0, diff.added());
+        assertEquals(2, diff.deleted());
     }
 
     @Test
     public void shouldCalculateProperDiffWhenPrefixesAreNotExactReverse() {
-        final Map<CaName, ImmutableResourceSet> registryResources = new HashMap<>();
-        registryResources.put(CaName.fromMembershipId(1), ImmutableResourceSet.parse("10.0.0.0/16, 12.0.0.0/16"));
-
-        final Map<CaName, ImmutableResourceSet> localResources = new HashMap<>();
-        localResources.put(CaName.fromMembershipId(1), ImmutableResourceSet.parse("10.0.0.0/8, 12.0.0.0/8"));
-
-        final ResourceCacheService.ResourceDiffStat resourceDiff = resourcesDiff(registryResources, localResources);
-        assertEquals(2, resourceDiff.getLocalSize());
-        assertEquals(2, resourceDiff.getRegistrySize());
-
-        final ResourceCacheService.Changes changes1 = resourceDiff.getChangesMap().get(CaName.fromMembershipId(1));
-        assertEquals(0, changes1.getAdded());
-        assertEquals(2, changes1.getDeleted());
+        final ResourceCacheService.SetDiff diff = resourcesSetDiff(
+            ImmutableResourceSet.parse("10.0.0.0/16, 12.0.0.0/16"),
+            ImmutableResourceSet.parse("10.0.0.0/8, 12.0.0.0/8")
+        );
+        assertEquals(2, diff.oldSize());
+        assertEquals(2, diff.newSize());
+        assertEquals(0, diff.added());
+        assertEquals(2, diff.deleted());
     }
 
     @Test
@@ -303,6 +293,20 @@ public class ResourceCacheServiceTest {
         assertEquals(2, resourceDiff.getTotalDeleted());
     }
 
+    @Test
+    public void shouldCountRangesThatAreNotContainedInTheOtherSet() {
+        final ImmutableResourceSet registry = ImmutableResourceSet.parse("AS10-AS20, 10.0.0.0/8, 11.0.0.0/8, 192.168.0.0/24, 2001:db8::/32");
+        final ImmutableResourceSet local    = ImmutableResourceSet.parse("AS15, AS30, 10.0.0.0/8, 192.168.0.0/16, 2001:db8::/48");
+
+        ResourceCacheService.DelegationDiffStat resourceDiff = ResourceCacheService.delegationsDiff(registry, local);
+        assertEquals(5, resourceDiff.getLocalResourceCount());
+        assertEquals(4, resourceDiff.getRegistrySizeResourceCount());
+        // AS10-AS20, 10.0.0.0-11.255.255.255 and 2001:db8::/32 are not contained in a single local range
+        assertEquals(3, resourceDiff.getTotalAdded());
+        // AS30 and 192.168.0.0/16
+        assertEquals(2, resourceDiff.getTotalDeleted());
+    }
+
     private static class DataSamples {
         static MemberResources memberResources() {
             String caName = MEMBER_CA_1.getName().getName();
@@ -333,12 +337,12 @@ public class ResourceCacheServiceTest {
 
         static TotalResources totalResources() {
             final MemberResources allMembersResources = memberResources();
-            return new TotalResources(allMembersResources, ripeNccDelegations(allMembersResources));
+            return new TotalResources(allMembersResources.toCertifiableMemberResources(), ripeNccDelegations(allMembersResources));
         }
 
         static TotalResources emptyTotalResources() {
             return new TotalResources(
-                new MemberResources(emptyList(), emptyList(), emptyList(), emptyList(), emptyList(), emptyList()),
+                new MemberResources(emptyList(), emptyList(), emptyList(), emptyList(), emptyList(), emptyList()).toCertifiableMemberResources(),
                 new RipeNccDelegations(emptyList(), emptyList(), emptyList())
             );
         }
@@ -454,6 +458,23 @@ public class ResourceCacheServiceTest {
                     .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
         }
 
+        @Override
+        public Map<CaName, ImmutableResourceSet> changedMemberResources(Map<CaName, ImmutableResourceSet> certifiableResources) {
+            Map<CaName, ImmutableResourceSet> cached = allMemberResources();
+            Map<CaName, ImmutableResourceSet> result = new HashMap<>();
+            cached.forEach((name, resources) -> {
+                if (!resources.equals(certifiableResources.get(name))) {
+                    result.put(name, resources);
+                }
+            });
+            certifiableResources.keySet().forEach(name -> {
+                if (!cached.containsKey(name)) {
+                    result.put(name, ImmutableResourceSet.empty());
+                }
+            });
+            return result;
+        }
+
         @Override
         public List<X500Principal> getHostedCasWithDifferentResourcesOnCertificates() {
             return List.of();
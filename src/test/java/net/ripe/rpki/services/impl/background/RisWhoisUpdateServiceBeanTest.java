@@ -5,19 +5,27 @@ import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import net.ripe.rpki.bgpris.BgpRisEntryRepositoryBean;
 import net.ripe.rpki.bgpris.riswhois.RisWhoisFetcher;
 import net.ripe.rpki.core.services.background.BackgroundTaskRunner;
+import net.ripe.rpki.bgpris.riswhois.RisWhoisParser;
+import net.ripe.rpki.server.api.dto.BgpRisEntry;
 import net.ripe.rpki.server.api.services.system.ActiveNodeService;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 import org.apache.commons.lang3.tuple.Pair;
 
+import java.io.BufferedReader;
 import java.io.IOException;
-import java.util.Collection;
+import java.io.StringReader;
+import java.time.Instant;
 import java.util.Collections;
-import java.util.List;
+import java.util.function.Consumer;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -30,7 +38,6 @@ public class RisWhoisUpdateServiceBeanTest {
     @Mock
     ActiveNodeService activeNodeService;
 
-    @Mock
     BgpRisEntryRepositoryBean repository;
 
     @Mock
@@ -41,26 +48,26 @@ public class RisWhoisUpdateServiceBeanTest {
     @Before
     public void setUp() {
         MeterRegistry registry = new SimpleMeterRegistry();
+        repository = new BgpRisEntryRepositoryBean();
         subject = new RisWhoisUpdateServiceBean(new BackgroundTaskRunner(activeNodeService, registry), repository, BASE_URL, fetcher, registry);
     }
 
 
-    @SuppressWarnings({"unchecked"})
     @Test
     public void shouldUpdateRepositoryWhenMoreThan100kEntriesFound() throws IOException {
-        when(fetcher.fetch(IPV4_FILE_URL)).thenReturn(getTestLines(100001));
-        when(fetcher.fetch(IPV6_FILE_URL)).thenReturn(getTestLines(0));
+        when(fetcher.fetch(eq(IPV4_FILE_URL), any())).thenAnswer(getTestLines(100001));
+        when(fetcher.fetch(eq(IPV6_FILE_URL), any())).thenAnswer(getTestLines(0));
 
         subject.runService(Collections.emptyMap());
 
-        verify(repository).resetEntries(isA(List.class));
+        assertThat(repository.isEmpty()).isFalse();
+        assertThat(repository.getLastUpdated()).isEqualTo(Instant.ofEpochMilli(10L));
     }
 
-    @SuppressWarnings({"unchecked"})
     @Test
     public void shouldNotFailOnPartiallyBrokenFile() throws IOException {
-        when(fetcher.fetch(IPV4_FILE_URL)).thenReturn(getTestLines(100001));
-        when(fetcher.fetch(IPV6_FILE_URL)).thenReturn(Pair.of(
+        when(fetcher.fetch(eq(IPV4_FILE_URL), any())).thenAnswer(getTestLines(100001));
+        when(fetcher.fetch(eq(IPV6_FILE_URL), any())).thenAnswer(parse(
                 "207841\t::ffff:0.0.0.0/96\t1\n" +
                 "268624\t::ffff:45.164.124.0/120\t1\n" +
                 "268624\t::ffff:45.164.125.0/120\t1\n" +
@@ -71,34 +78,58 @@ public class RisWhoisUpdateServiceBeanTest {
 
         subject.runService(Collections.emptyMap());
 
-        verify(repository).resetEntries(isA(List.class));
+        assertThat(repository.isEmpty()).isFalse();
+        assertThat(repository.getLastUpdated()).isEqualTo(Instant.ofEpochMilli(11L));
     }
 
-    @SuppressWarnings({"unchecked"})
     @Test
     public void shouldNOTUpdateRepositoryWhenLessThan100kEntriesFound() throws IOException {
-        when(fetcher.fetch(IPV4_FILE_URL)).thenReturn(getTestLines(0));
-        when(fetcher.fetch(IPV6_FILE_URL)).thenReturn(getTestLines(99999));
+        when(fetcher.fetch(eq(IPV4_FILE_URL), any())).thenAnswer(getTestLines(0));
+        when(fetcher.fetch(eq(IPV6_FILE_URL), any())).thenAnswer(getTestLines(99999));
 
         subject.runService(Collections.emptyMap());
 
-        verify(repository, never()).resetEntries(isA(Collection.class));
+        assertThat(repository.isEmpty()).isTrue();
+        assertThat(repository.getLastUpdated()).isNull();
     }
 
     @Test
     public void shouldHandleExceptionsGracefully() throws IOException {
-        when(fetcher.fetch(IPV4_FILE_URL)).thenThrow(new IOException());
-        when(fetcher.fetch(IPV6_FILE_URL)).thenThrow(new IOException());
+        when(fetcher.fetch(eq(IPV4_FILE_URL), any())).thenThrow(new IOException());
+        when(fetcher.fetch(eq(IPV6_FILE_URL), any())).thenThrow(new IOException());
 
         // No uncaught exception
         subject.runService(Collections.emptyMap());
+
+        assertThat(repository.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void shouldDiscardUpdateWhenDumpFailsHalfway() throws IOException {
+        when(fetcher.fetch(eq(IPV4_FILE_URL), any())).thenAnswer(invocation -> {
+            getTestLines(10).answer(invocation);
+            throw new IOException("connection reset");
+        });
+
+        subject.runService(Collections.emptyMap());
+
+        verify(fetcher, never()).fetch(eq(IPV6_FILE_URL), any());
+        assertThat(repository.isEmpty()).isTrue();
+        assertThat(repository.getLastUpdated()).isNull();
     }
 
-    private Pair<String, Long> getTestLines(int lines) {
+    private Answer<Pair<Integer, Long>> getTestLines(int lines) {
         StringBuilder responseBuilder = new StringBuilder();
         for (int i = 0; i < lines; i++) {
             responseBuilder.append(i + 1).append("\t10.0.0.0/8\t10\n");
         }
-        return Pair.of(responseBuilder.toString(), 10L);
+        return parse(responseBuilder.toString(), 10L);
+    }
+
+    private Answer<Pair<Integer, Long>> parse(String dump, long lastModified) {
+        return invocation -> {
+            Consumer<BgpRisEntry> consumer = invocation.getArgument(1);
+            return Pair.of(RisWhoisParser.parse(new BufferedReader(new StringReader(dump)), consumer), lastModified);
+        };
     }
 }
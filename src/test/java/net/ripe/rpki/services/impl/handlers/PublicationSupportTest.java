@@ -3,7 +3,7 @@ package net.ripe.rpki.services.impl.handlers;
 import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import junit.framework.TestCase;
 import net.ripe.rpki.domain.PublishedObjectData;
-import net.ripe.rpki.domain.PublishedObjectRepository;
+import net.ripe.rpki.domain.PublishedObjectHash;
 import net.ripe.rpki.publication.server.PublishingServerClient;
 import org.junit.Before;
 import org.junit.Test;
@@ -12,21 +12,30 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
-import reactor.core.publisher.Mono;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.stream.Stream;
 
 import static net.ripe.rpki.domain.TestObjects.BASE_URI;
 import static net.ripe.rpki.services.impl.handlers.PublicationSupport.CORE_CLIENT_ID;
 import static net.ripe.rpki.util.Crypto.sha256;
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -39,14 +48,11 @@ public class PublicationSupportTest extends TestCase {
 
     private static final URI PUBLICATION_SERVER_URL = URI.create("https://localhost/publication-server");
 
-    @Mock
-    private PublishedObjectRepository publishedObjectRepository;
-
     @Mock
     private PublishingServerClient publishingServerClient;
 
     @Captor
-    private ArgumentCaptor<String> xmlCaptor;
+    private ArgumentCaptor<PublishingServerClient.RequestBody> xmlCaptor;
 
     private PublicationSupport subject;
     private PublishedObjectData published1;
@@ -59,10 +65,8 @@ public class PublicationSupportTest extends TestCase {
         published1 = new PublishedObjectData(now, BASE_URI.resolve("object.cer"), new byte[]{4, 5, 6});
         published2 = new PublishedObjectData(now, BASE_URI.resolve("manifest.mft"), new byte[]{1, 2, 3});
 
-        when(publishedObjectRepository.findCurrentlyPublishedObjects()).thenReturn(Arrays.asList(published1, published2));
-
         meterRegistry = new SimpleMeterRegistry();
-        subject = new PublicationSupport(publishingServerClient, new PublicationMetrics(meterRegistry), Collections.singletonList(PUBLICATION_SERVER_URL));
+        subject = new PublicationSupport(publishingServerClient, new PublicationMetrics(meterRegistry), Collections.singletonList(PUBLICATION_SERVER_URL), 10_000, 64 * 1024 * 1024, 2, 3, 60);
     }
 
     @Test
@@ -70,17 +74,17 @@ public class PublicationSupportTest extends TestCase {
         final String listResponse = "<msg type=\"reply\" version=\"3\" xmlns=\"http://www.hactrn.net/uris/rpki/publication-spec/\"></msg>";
         final String publishResponse = "<msg type=\"reply\" version=\"3\" xmlns=\"http://www.hactrn.net/uris/rpki/publication-spec/\"></msg>";
 
-        when(publishingServerClient.publish(PUBLICATION_SERVER_URL, LIST_REQUEST, CORE_CLIENT_ID)).thenReturn(Mono.just(listResponse));
-        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), anyString(), eq(CORE_CLIENT_ID))).thenReturn(Mono.just(publishResponse));
+        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), argThat(body -> body != null && LIST_REQUEST.equals(render(body))), eq(CORE_CLIENT_ID))).thenReturn(response(listResponse));
+        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), any(), eq(CORE_CLIENT_ID))).thenReturn(response(publishResponse));
 
-        subject.publishAllObjects(Arrays.asList(published1, published2));
+        publishAllObjects(Stream.of(published1, published2));
 
         verify(publishingServerClient, times(2)).publish(eq(PUBLICATION_SERVER_URL), xmlCaptor.capture(), eq(CORE_CLIENT_ID));
-        List<String> xmlRequests = xmlCaptor.getAllValues();
+        List<String> xmlRequests = xmlRequests();
         assertEquals(LIST_REQUEST, xmlRequests.get(0));
         assertEquals("<msg type=\"query\" version=\"3\" xmlns=\"http://www.hactrn.net/uris/rpki/publication-spec/\">" +
-            "<publish uri=\"rsync://localhost:20873/repository/manifest.mft\">AQID</publish>" +
             "<publish uri=\"rsync://localhost:20873/repository/object.cer\">BAUG</publish>" +
+            "<publish uri=\"rsync://localhost:20873/repository/manifest.mft\">AQID</publish>" +
             "</msg>", xmlRequests.get(1));
     }
 
@@ -91,12 +95,12 @@ public class PublicationSupportTest extends TestCase {
             "</msg>";
         final String publishResponse = "<msg type=\"reply\" version=\"3\" xmlns=\"http://www.hactrn.net/uris/rpki/publication-spec/\"></msg>";
 
-        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), anyString(), eq(CORE_CLIENT_ID))).thenReturn(Mono.just(listResponse)).thenReturn(Mono.just(publishResponse));
+        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), any(), eq(CORE_CLIENT_ID))).thenReturn(response(listResponse)).thenReturn(response(publishResponse));
 
-        subject.publishAllObjects(Collections.singletonList(published1));
+        publishAllObjects(Stream.of(published1));
 
         verify(publishingServerClient, times(2)).publish(eq(PUBLICATION_SERVER_URL), xmlCaptor.capture(), eq(CORE_CLIENT_ID));
-        List<String> xmlRequests = xmlCaptor.getAllValues();
+        List<String> xmlRequests = xmlRequests();
         assertEquals(LIST_REQUEST, xmlRequests.get(0));
         assertEquals("<msg type=\"query\" version=\"3\" xmlns=\"http://www.hactrn.net/uris/rpki/publication-spec/\">" +
             "<withdraw hash=\"039058C6F2C0CB492C533B0A4D14EF77CC0F78ABCCCED5287D84A1A2011CFB81\" uri=\"rsync://localhost:20873/repository/manifest.mft\"/>" +
@@ -111,12 +115,12 @@ public class PublicationSupportTest extends TestCase {
             "</msg>";
         final String publishResponse = "<msg type=\"reply\" version=\"3\" xmlns=\"http://www.hactrn.net/uris/rpki/publication-spec/\"></msg>";
 
-        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), anyString(), eq(CORE_CLIENT_ID))).thenReturn(Mono.just(listResponse)).thenReturn(Mono.just(publishResponse));
+        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), any(), eq(CORE_CLIENT_ID))).thenReturn(response(listResponse)).thenReturn(response(publishResponse));
 
-        subject.publishAllObjects(Arrays.asList(published1, published2));
+        publishAllObjects(Stream.of(published1, published2));
 
         verify(publishingServerClient, times(2)).publish(eq(PUBLICATION_SERVER_URL), xmlCaptor.capture(), eq(CORE_CLIENT_ID));
-        List<String> xmlRequests = xmlCaptor.getAllValues();
+        List<String> xmlRequests = xmlRequests();
         assertEquals(LIST_REQUEST, xmlRequests.get(0));
         assertEquals("<msg type=\"query\" version=\"3\" xmlns=\"http://www.hactrn.net/uris/rpki/publication-spec/\">" +
             "<publish uri=\"rsync://localhost:20873/repository/object.cer\">BAUG</publish>" +
@@ -131,18 +135,129 @@ public class PublicationSupportTest extends TestCase {
             "</msg>";
         final String publishResponse = "<msg type=\"reply\" version=\"3\" xmlns=\"http://www.hactrn.net/uris/rpki/publication-spec/\"></msg>";
 
-        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), anyString(), eq(CORE_CLIENT_ID))).thenReturn(Mono.just(listResponse)).thenReturn(Mono.just(publishResponse));
+        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), any(), eq(CORE_CLIENT_ID))).thenReturn(response(listResponse)).thenReturn(response(publishResponse));
 
-        subject.publishAllObjects(Arrays.asList(published1, published2));
+        publishAllObjects(Stream.of(published1, published2));
 
         verify(publishingServerClient, times(2)).publish(eq(PUBLICATION_SERVER_URL), xmlCaptor.capture(), eq(CORE_CLIENT_ID));
-        List<String> xmlRequests = xmlCaptor.getAllValues();
+        List<String> xmlRequests = xmlRequests();
         assertEquals(LIST_REQUEST, xmlRequests.get(0));
         assertEquals("<msg type=\"query\" version=\"3\" xmlns=\"http://www.hactrn.net/uris/rpki/publication-spec/\">" +
             "<publish uri=\"rsync://localhost:20873/repository/object.cer\">BAUG</publish>" +
             "</msg>", xmlRequests.get(1));
     }
 
+    @Test
+    public void should_only_load_content_of_objects_to_publish() {
+        final String listResponse = "<msg type=\"reply\" version=\"3\" xmlns=\"http://www.hactrn.net/uris/rpki/publication-spec/\">" +
+            "<list uri=\"" + published2.getUri() +"\" hash=\"" + sha256(published2.getContent()) + "\"/>" +
+            "</msg>";
+        final String publishResponse = "<msg type=\"reply\" version=\"3\" xmlns=\"http://www.hactrn.net/uris/rpki/publication-spec/\"></msg>";
+
+        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), any(), eq(CORE_CLIENT_ID))).thenReturn(response(listResponse)).thenReturn(response(publishResponse));
+
+        List<URI> loaded = new ArrayList<>();
+        subject.publishAllObjects(Stream.of(published1, published2).map(PublicationSupportTest::toHash), objects -> {
+            objects.forEach(object -> loaded.add(object.getUri()));
+            return loadContent(objects, published1, published2);
+        });
+
+        assertThat(loaded).containsExactly(published1.getUri());
+    }
+
+    @Test
+    public void should_send_messages_in_chunks() {
+        subject = new PublicationSupport(publishingServerClient, new PublicationMetrics(meterRegistry), Collections.singletonList(PUBLICATION_SERVER_URL), 1, 64 * 1024 * 1024, 1, 3, 60);
+        final String emptyResponse = "<msg type=\"reply\" version=\"3\" xmlns=\"http://www.hactrn.net/uris/rpki/publication-spec/\"></msg>";
+
+        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), any(), eq(CORE_CLIENT_ID))).thenReturn(response(emptyResponse));
+
+        publishAllObjects(Stream.of(published1, published2));
+
+        verify(publishingServerClient, times(3)).publish(eq(PUBLICATION_SERVER_URL), xmlCaptor.capture(), eq(CORE_CLIENT_ID));
+        assertThat(xmlRequests()).containsExactly(
+            LIST_REQUEST,
+            "<msg type=\"query\" version=\"3\" xmlns=\"http://www.hactrn.net/uris/rpki/publication-spec/\">" +
+                "<publish uri=\"rsync://localhost:20873/repository/object.cer\">BAUG</publish>" +
+                "</msg>",
+            "<msg type=\"query\" version=\"3\" xmlns=\"http://www.hactrn.net/uris/rpki/publication-spec/\">" +
+                "<publish uri=\"rsync://localhost:20873/repository/manifest.mft\">AQID</publish>" +
+                "</msg>"
+        );
+    }
+
+    @Test
+    public void should_retry_failed_chunks() {
+        final String emptyResponse = "<msg type=\"reply\" version=\"3\" xmlns=\"http://www.hactrn.net/uris/rpki/publication-spec/\"></msg>";
+
+        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), any(), eq(CORE_CLIENT_ID)))
+            .thenReturn(response(emptyResponse))
+            .thenReturn(Flux.error(new RuntimeException("unit testing")))
+            .thenReturn(response(emptyResponse));
+
+        publishAllObjects(Stream.of(published1));
+
+        verify(publishingServerClient, times(3)).publish(eq(PUBLICATION_SERVER_URL), any(), eq(CORE_CLIENT_ID));
+        assertThat(meterRegistry.get("rpkicore.publication.total").tag("status", "success").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void should_use_confirmed_remote_state_instead_of_listing_objects() {
+        final String emptyResponse = "<msg type=\"reply\" version=\"3\" xmlns=\"http://www.hactrn.net/uris/rpki/publication-spec/\"></msg>";
+        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), any(), eq(CORE_CLIENT_ID))).thenReturn(response(emptyResponse));
+
+        publishAllObjects(Stream.of(published1, published2));
+        // Nothing changed, so nothing is sent at all
+        publishAllObjects(Stream.of(published1, published2));
+        var updated2 = new PublishedObjectData(published2.getCreatedAt(), published2.getUri(), new byte[]{7, 8, 9});
+        publishAllObjects(Stream.of(updated2));
+
+        verify(publishingServerClient, times(3)).publish(eq(PUBLICATION_SERVER_URL), xmlCaptor.capture(), eq(CORE_CLIENT_ID));
+        List<String> xmlRequests = xmlRequests();
+        assertEquals(LIST_REQUEST, xmlRequests.get(0));
+        assertEquals("<msg type=\"query\" version=\"3\" xmlns=\"http://www.hactrn.net/uris/rpki/publication-spec/\">" +
+            "<withdraw hash=\"" + sha256(published1.getContent()) + "\" uri=\"rsync://localhost:20873/repository/object.cer\"/>" +
+            "<publish hash=\"" + sha256(published2.getContent()) + "\" uri=\"rsync://localhost:20873/repository/manifest.mft\">BwgJ</publish>" +
+            "</msg>", xmlRequests.get(2));
+    }
+
+    @Test
+    public void should_list_objects_when_full_list_interval_passed() {
+        subject = new PublicationSupport(publishingServerClient, new PublicationMetrics(meterRegistry), Collections.singletonList(PUBLICATION_SERVER_URL), 10_000, 64 * 1024 * 1024, 2, 3, 0);
+        final String emptyResponse = "<msg type=\"reply\" version=\"3\" xmlns=\"http://www.hactrn.net/uris/rpki/publication-spec/\"></msg>";
+        final String listResponse = "<msg type=\"reply\" version=\"3\" xmlns=\"http://www.hactrn.net/uris/rpki/publication-spec/\">" +
+            "<list uri=\"" + published1.getUri() + "\" hash=\"" + sha256(published1.getContent()) + "\"/>" +
+            "</msg>";
+        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), any(), eq(CORE_CLIENT_ID)))
+            .thenReturn(response(emptyResponse))
+            .thenReturn(response(emptyResponse))
+            .thenReturn(response(listResponse));
+
+        publishAllObjects(Stream.of(published1));
+        publishAllObjects(Stream.of(published1));
+
+        verify(publishingServerClient, times(3)).publish(eq(PUBLICATION_SERVER_URL), xmlCaptor.capture(), eq(CORE_CLIENT_ID));
+        assertEquals(LIST_REQUEST, xmlRequests().get(2));
+    }
+
+    @Test
+    public void should_list_objects_after_error_reply() {
+        final String emptyResponse = "<msg type=\"reply\" version=\"3\" xmlns=\"http://www.hactrn.net/uris/rpki/publication-spec/\"></msg>";
+        final String errorResponse = "<msg type=\"reply\" version=\"3\" xmlns=\"http://www.hactrn.net/uris/rpki/publication-spec/\">" +
+            "<report_error error_code=\"permission_failure\">Bla bla</report_error>" +
+            "</msg>";
+        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), any(), eq(CORE_CLIENT_ID)))
+            .thenReturn(response(emptyResponse))
+            .thenReturn(response(errorResponse))
+            .thenReturn(response(emptyResponse));
+
+        publishAllObjects(Stream.of(published1));
+        publishAllObjects(Stream.of(published1));
+
+        verify(publishingServerClient, times(4)).publish(eq(PUBLICATION_SERVER_URL), xmlCaptor.capture(), eq(CORE_CLIENT_ID));
+        assertEquals(LIST_REQUEST, xmlRequests().get(2));
+    }
+
     @Test
     public void should_compute_correct_hash() {
         final byte[] bytes = "sample text".getBytes(StandardCharsets.US_ASCII);
@@ -153,9 +268,9 @@ public class PublicationSupportTest extends TestCase {
     @Test
     public void should_count_successful_publications() {
         final String listResponse = "<msg type=\"reply\" version=\"3\" xmlns=\"http://www.hactrn.net/uris/rpki/publication-spec/\"></msg>";
-        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), anyString(), eq(CORE_CLIENT_ID))).thenReturn(Mono.just(listResponse));
+        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), any(), eq(CORE_CLIENT_ID))).thenReturn(response(listResponse));
 
-        subject.publishAllObjects(Collections.emptyList());
+        publishAllObjects(Stream.empty());
 
         assertThat(meterRegistry.get("rpkicore.publication.total").tag("status", "success").counter()).satisfies((counter) -> {
             assertThat(counter.count()).isEqualTo(1);
@@ -164,12 +279,49 @@ public class PublicationSupportTest extends TestCase {
 
     @Test
     public void should_count_failed_publications() {
-        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), anyString(), eq(CORE_CLIENT_ID))).thenThrow(new RuntimeException("unit testing"));
+        when(publishingServerClient.publish(eq(PUBLICATION_SERVER_URL), any(), eq(CORE_CLIENT_ID))).thenThrow(new RuntimeException("unit testing"));
 
-        subject.publishAllObjects(Collections.emptyList());
+        publishAllObjects(Stream.empty());
 
         assertThat(meterRegistry.get("rpkicore.publication.total").tag("status", "failed").counter()).satisfies((counter) -> {
             assertThat(counter.count()).isEqualTo(1);
         });
     }
+
+    private void publishAllObjects(Stream<PublishedObjectData> objects) {
+        List<PublishedObjectData> localObjects = objects.toList();
+        subject.publishAllObjects(
+            localObjects.stream().map(PublicationSupportTest::toHash),
+            toLoad -> loadContent(toLoad, localObjects.toArray(new PublishedObjectData[0]))
+        );
+    }
+
+    private static PublishedObjectHash toHash(PublishedObjectData object) {
+        return new PublishedObjectHash(object.getUri().hashCode(), object.getUri(), sha256(object.getContent()));
+    }
+
+    private static List<PublishedObjectData> loadContent(Collection<PublishedObjectHash> toLoad, PublishedObjectData... objects) {
+        return toLoad.stream()
+            .map(hash -> Arrays.stream(objects).filter(object -> object.getUri().equals(hash.getUri())).findFirst().orElseThrow())
+            .toList();
+    }
+
+    private List<String> xmlRequests() {
+        return xmlCaptor.getAllValues().stream().map(PublicationSupportTest::render).toList();
+    }
+
+    private static String render(PublishingServerClient.RequestBody body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            body.writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static Flux<DataBuffer> response(String xml) {
+        // A new buffer for every subscription, since reading the response consumes it
+        return Flux.defer(() -> Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(xml.getBytes(StandardCharsets.UTF_8))));
+    }
 }
@@ -7,6 +7,7 @@ import net.ripe.rpki.domain.CertificationDomainTestCase;
 import net.ripe.rpki.domain.HostedCertificateAuthority;
 import net.ripe.rpki.domain.NameNotUniqueException;
 import net.ripe.rpki.domain.NonHostedCertificateAuthority;
+import net.ripe.rpki.domain.PendingPublication;
 import net.ripe.rpki.domain.ProductionCertificateAuthority;
 import net.ripe.rpki.domain.manifest.ManifestEntity;
 import org.junit.Before;
@@ -30,17 +31,44 @@ public class JpaCertificateAuthorityRepositoryTest extends CertificationDomainTe
     }
 
     @Test
-    public void findAllWithOutdatedManifests() {
-        assertThat(certificateAuthorityRepository.findAllWithOutdatedManifests(
-            false,
-            UTC.dateTime().plus(ManifestEntity.TIME_TO_NEXT_UPDATE_SOFT_LIMIT),
-            Integer.MAX_VALUE
-        )).isEmpty();
-        assertThat(certificateAuthorityRepository.findAllWithOutdatedManifests(
-            true,
-            UTC.dateTime().plus(ManifestEntity.TIME_TO_NEXT_UPDATE_SOFT_LIMIT),
-            Integer.MAX_VALUE
-        )).isEmpty();
+    public void queuePendingPublicationsForManifestsAndCrlsExpiringBefore() {
+        assertThat(certificateAuthorityRepository.queuePendingPublicationsForManifestsAndCrlsExpiringBefore(
+            UTC.dateTime().plus(ManifestEntity.TIME_TO_NEXT_UPDATE_SOFT_LIMIT)
+        )).isZero();
+        assertThat(certificateAuthorityRepository.findPendingPublications()).isEmpty();
+    }
+
+    @Test
+    public void findPendingPublications_should_keep_certificate_authority_queued_again_while_processed() {
+        ProductionCertificateAuthority prodCa = createInitialisedProdCaWithRipeResources();
+        entityManager.flush();
+        updateConfiguration(prodCa);
+
+        PendingPublication claimed = certificateAuthorityRepository.findPendingPublications().stream()
+            .filter(pending -> pending.id() == prodCa.getId())
+            .findFirst().orElseThrow();
+
+        updateConfiguration(prodCa);
+        certificateAuthorityRepository.removePendingPublication(claimed);
+
+        assertThat(certificateAuthorityRepository.findPendingPublications())
+            .anySatisfy(pending -> {
+                assertThat(pending.id()).isEqualTo(prodCa.getId());
+                assertThat(pending.generation()).isGreaterThan(claimed.generation());
+            });
+    }
+
+    @Test
+    public void findPendingPublications_should_not_queue_non_hosted_certificate_authority() {
+        ProductionCertificateAuthority prodCa = createInitialisedProdCaWithRipeResources();
+        NonHostedCertificateAuthority nonHosted = new NonHostedCertificateAuthority(1001L, new X500Principal("CN=non-hosted"), ProvisioningIdentityCertificateBuilderTest.TEST_IDENTITY_CERT, prodCa);
+        certificateAuthorityRepository.add(nonHosted);
+        entityManager.flush();
+        updateConfiguration(nonHosted);
+
+        certificateAuthorityRepository.findPendingPublications().forEach(certificateAuthorityRepository::removePendingPublication);
+
+        assertThat(((Number) entityManager.createNativeQuery("SELECT COUNT(*) FROM pending_publication").getSingleResult()).longValue()).isZero();
     }
 
     @Test
@@ -73,6 +101,16 @@ public class JpaCertificateAuthorityRepositoryTest extends CertificationDomainTe
         );
     }
 
+    private void updateConfiguration(CertificateAuthority ca) {
+        entityManager.createNativeQuery("""
+                UPDATE certificateauthority
+                   SET configuration_applied_at = NOW(), configuration_updated_at = clock_timestamp() + INTERVAL '1 minute'
+                 WHERE id = :id
+                """)
+            .setParameter("id", ca.getId())
+            .executeUpdate();
+    }
+
     @Test
     public void findSmallestIntermediateCa() {
         assertThat(certificateAuthorityRepository.findSmallestIntermediateCA(PRODUCTION_CA_NAME)).isEmpty();
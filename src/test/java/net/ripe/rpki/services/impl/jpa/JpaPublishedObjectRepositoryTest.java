@@ -9,6 +9,7 @@ import net.ripe.rpki.domain.PublicationStatus;
 import net.ripe.rpki.domain.PublishedObject;
 import net.ripe.rpki.domain.PublishedObjectData;
 import net.ripe.rpki.domain.PublishedObjectEntry;
+import net.ripe.rpki.domain.PublishedObjectHash;
 import net.ripe.rpki.domain.TrustAnchorPublishedObject;
 import net.ripe.rpki.domain.TrustAnchorPublishedObjectRepository;
 import org.assertj.core.api.Condition;
@@ -127,15 +128,35 @@ public class JpaPublishedObjectRepositoryTest extends CertificationDomainTestCas
     }
 
     @Test
-    public void findCurrentlyPublishedObjects() {
-        List<PublishedObjectData> publishedObjects = publishedObjectRepository.findCurrentlyPublishedObjects();
+    public void streamCurrentlyPublishedObjects() {
+        List<PublishedObjectData> publishedObjects = findCurrentlyPublishedObjects();
         assertEquals(1, publishedObjects.size());
+        assertEquals(1, publishedObjectRepository.countCurrentlyPublishedObjects());
 
         PublishedObjectData published = publishedObjects.get(0);
         assertEquals(publishedObject.getUri(), published.getUri());
         assertArrayEquals(publishedObject.getContent(), published.getContent());
     }
 
+    @Test
+    public void streamCurrentlyPublishedObjectHashes() {
+        List<PublishedObjectHash> hashes;
+        try (var stream = publishedObjectRepository.streamCurrentlyPublishedObjectHashes(2)) {
+            hashes = stream.toList();
+        }
+        assertEquals(1, hashes.size());
+
+        PublishedObjectHash hash = hashes.get(0);
+        assertEquals(publishedObject.getId().longValue(), hash.getId());
+        assertEquals(publishedObject.getUri(), hash.getUri());
+        assertArrayEquals(hashContents(publishedObject.getContent()), HashCode.fromString(hash.getSha256()).asBytes());
+
+        List<PublishedObjectData> data = publishedObjectRepository.findPublishedObjectData(hashes);
+        assertEquals(1, data.size());
+        assertEquals(publishedObject.getUri(), data.get(0).getUri());
+        assertArrayEquals(publishedObject.getContent(), data.get(0).getContent());
+    }
+
     @Test
     public void publishObjects() {
         assertThat(publishedObjectRepository.publishObjects(issuingKeyPair)).isEqualTo(2);
@@ -151,7 +172,7 @@ public class JpaPublishedObjectRepositoryTest extends CertificationDomainTestCas
         assertEquals(PUBLISHED, toBePublishedObject.getStatus());
         entityManager.refresh(toBePublishedTaObject);
         assertEquals(PUBLISHED, toBePublishedTaObject.getStatus());
-        assertEquals(4, publishedObjectRepository.findCurrentlyPublishedObjects().size());
+        assertEquals(4, findCurrentlyPublishedObjects().size());
 
         // No pending objects so no updates required.
         assertEquals(0, publishedObjectRepository.findEntriesByPublicationStatus(PENDING_STATUSES).size());
@@ -162,7 +183,13 @@ public class JpaPublishedObjectRepositoryTest extends CertificationDomainTestCas
         assertEquals(1, publishedObjectRepository.findEntriesByPublicationStatus(PENDING_STATUSES).size());
         assertEquals(1, publishedObjectRepository.publishObjects(issuingKeyPair));
         assertEquals(0, trustAnchorPublishedObjectRepository.updatePublicationStatus());
-        assertEquals(3, publishedObjectRepository.findCurrentlyPublishedObjects().size());
+        assertEquals(3, findCurrentlyPublishedObjects().size());
+    }
+
+    private List<PublishedObjectData> findCurrentlyPublishedObjects() {
+        try (var stream = publishedObjectRepository.streamCurrentlyPublishedObjects(2)) {
+            return stream.toList();
+        }
     }
 
     @Test
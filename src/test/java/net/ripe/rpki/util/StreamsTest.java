@@ -10,6 +10,7 @@ import org.junit.jupiter.api.Test;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -33,6 +34,27 @@ public class StreamsTest {
         assertThat(s).isEqualTo(concatenated);
     }
 
+    @Property
+    public void shouldChunk(@ForAll List<Integer> s, @ForAll @Positive int chunk) {
+        final List<List<Integer>> chunked = Streams.chunked(s.stream(), chunk).toList();
+
+        assertThat(chunked).hasSize((int) Math.ceil(s.size() / (double)chunk));
+        chunked.stream().limit(Math.max(0, chunked.size() - 1)).forEach(g -> assertThat(g).hasSize(chunk));
+        chunked.forEach(g -> assertThat(g).isNotEmpty().hasSizeLessThanOrEqualTo(chunk));
+
+        final List<Integer> concatenated = chunked.stream().flatMap(Collection::stream).toList();
+        assertThat(s).isEqualTo(concatenated);
+    }
+
+    @Test
+    void shouldChunkLazily() {
+        var consumed = new AtomicInteger();
+        var firstChunk = Streams.chunked(IntStream.range(0, 1_000_000).boxed().peek(i -> consumed.incrementAndGet()), 10).findFirst();
+
+        assertThat(firstChunk).hasValue(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9));
+        assertThat(consumed.get()).isLessThanOrEqualTo(11);
+    }
+
     @Test
     void shouldFilterDistinctByKey_random() {
         var uniqueStrings = IntStream.range(0, 26).mapToObj(String::valueOf).collect(Collectors.toList());;